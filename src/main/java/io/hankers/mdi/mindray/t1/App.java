@@ -10,16 +10,25 @@ import io.hankers.mdi.mdi_utils.MDILog;
 public class App {
 	public static void main(String[] args) {
 		String ip = MDIConfig.getMonitorIp();
-		if (ip != null && !ip.isEmpty()) {
-			MDILog.i("Connecting " + ip);
-			try {
-				new DataReceiver(ip, 4601).start();
-			} catch (Exception e) {
-				MDILog.e(e);
+		try {
+			if (!StartupWarmup.run()) {
+				return;
 			}
-		} else {
-			MDILog.i("Sniffering ");
-			new MonitorSniffer().start();
+			GatewayEngine engine = new GatewayEngine();
+			if (ip != null && !ip.isEmpty()) {
+				MDILog.i("Connecting " + ip);
+				// monitor.ip may list several "host[:port]" targets separated by commas
+				engine.addTargets(ip);
+			} else {
+				MDILog.i("Sniffering ");
+				new MonitorSniffer(engine).start();
+			}
+			engine.start();
+			engine.join();
+		} catch (InterruptedException e) {
+			MDILog.w(e);
+		} catch (Exception e) {
+			MDILog.e(e);
 		}
 	}
 }
@@ -0,0 +1,269 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * Moves decoding off the reader threads: the reader only frames, and hands
+ * each frame to the monitor's {@link Shard}, which a pool of decode.threads
+ * workers runs. A shard is scheduled on a shared ready ring when it gets
+ * frames and runs on one worker at a time, so its frames are handled in order
+ * by a handler that needs no locking, e.g. a {@link MonitorSession} with its
+ * vital sign merging, while an idle worker takes whichever monitor is ready.
+ * A full shard refuses the frame, so its reader stops reading that monitor
+ * until there is room; nothing here waits on a reader's thread. Frames are
+ * copied into buffers the shard recycles.
+ */
+public class DecodePool {
+	private static DecodePool _default;
+	private static boolean _defaultResolved;
+	// frames a shard handles before it yields its worker
+	static final int BATCH = 64;
+	// between offers to a handler that refused a frame
+	static final long RETRY_NANOS = 100000L;
+
+	final Worker[] _workers;
+	final PublishQueue.Ring _ready;
+	// shards that found the ready ring full, at most one entry per shard
+	final Queue<Shard> _overflow = new ConcurrentLinkedQueue<Shard>();
+	final int _shardCapacity;
+	private volatile boolean _running = true;
+	final AtomicLong _refused = new AtomicLong();
+
+	/**
+	 * @return the configured pool, or null when frames are decoded on the
+	 *         reader thread
+	 */
+	public static synchronized DecodePool getDefault() {
+		if (!_defaultResolved) {
+			_defaultResolved = true;
+			int threads = T1Config.getInt("decode.threads", 0);
+			if (threads > 0) {
+				_default = new DecodePool(threads, T1Config.getInt("decode.shard.capacity", 1024));
+			}
+		}
+		return _default;
+	}
+
+	/**
+	 * Wraps the handler in a shard of the default pool, if there is one.
+	 */
+	static FrameHandler wrap(FrameHandler handler) {
+		DecodePool pool = getDefault();
+		return pool == null ? handler : pool.shard(handler);
+	}
+
+	/**
+	 * @param shardCapacity frames a monitor may have waiting
+	 */
+	public DecodePool(int threads, int shardCapacity) {
+		_shardCapacity = shardCapacity;
+		_workers = new Worker[Math.max(1, threads)];
+		_ready = new PublishQueue.Ring(4096);
+		for (int i = 0; i < _workers.length; i++) {
+			_workers[i] = new Worker("decode-" + i);
+			_workers[i].start();
+		}
+	}
+
+	/**
+	 * @return the handler to give the reader; one per monitor
+	 */
+	public Shard shard(FrameHandler handler) {
+		return new Shard(handler);
+	}
+
+	/**
+	 * A copy of a frame and the time it was read, recycled by its shard.
+	 */
+	static final class Frame {
+		byte[] _buf = new byte[256];
+		int _length;
+		long _readNanos;
+
+		void set(byte[] buf, int offset, int length, long readNanos) {
+			if (_buf.length < length) {
+				_buf = new byte[Math.max(length, _buf.length * 2)];
+			}
+			System.arraycopy(buf, offset, _buf, 0, length);
+			_length = length;
+			_readNanos = readNanos;
+		}
+	}
+
+	/**
+	 * One monitor's frames waiting to be handled.
+	 */
+	public class Shard implements FrameHandler {
+		final FrameHandler _handler;
+		final PublishQueue.Ring _frames = new PublishQueue.Ring(_shardCapacity);
+		// handled frames, taken back by the reader
+		final PublishQueue.Ring _free = new PublishQueue.Ring(_shardCapacity);
+		// queued on the ready ring, running or set aside by a worker
+		final AtomicBoolean _scheduled = new AtomicBoolean();
+		// refused by the handler, offered again before the others
+		Frame _stalled;
+
+		Shard(FrameHandler handler) {
+			_handler = handler;
+		}
+
+		/**
+		 * Copies the frame, the reader reuses its buffer.
+		 *
+		 * @return false when the shard is full
+		 */
+		public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+			Frame frame = (Frame) _free.poll();
+			if (frame == null) {
+				frame = new Frame();
+			}
+			frame.set(buf, offset, length, readNanos);
+			if (!_frames.offer(frame)) {
+				_free.offer(frame);
+				_refused.incrementAndGet();
+				wakeWorker();
+				return false;
+			}
+			schedule();
+			return true;
+		}
+
+		void schedule() {
+			if (_scheduled.compareAndSet(false, true)) {
+				if (!_ready.offer(this)) {
+					// more shards than ready slots
+					_overflow.add(this);
+				}
+				wakeWorker();
+			}
+		}
+
+		/**
+		 * @return false when the handler refused a frame, the shard stays
+		 *         scheduled and is to be run again
+		 */
+		boolean run() {
+			for (int i = 0; i < BATCH; i++) {
+				Frame frame = _stalled;
+				_stalled = null;
+				if (frame == null && (frame = (Frame) _frames.poll()) == null) {
+					break;
+				}
+				try {
+					if (!_handler.onFrame(frame._buf, 0, frame._length, frame._readNanos)) {
+						_stalled = frame;
+						return false;
+					}
+				} catch (RuntimeException e) {
+					MDILog.e(e);
+				}
+				_free.offer(frame);
+			}
+			_scheduled.set(false);
+			// frames added while running found it scheduled
+			if (!_frames.isEmpty()) {
+				schedule();
+			}
+			return true;
+		}
+
+		public int depth() {
+			return _frames.size() + (_stalled == null ? 0 : 1);
+		}
+	}
+
+	private void wakeWorker() {
+		for (Worker w : _workers) {
+			if (w._sleeping) {
+				LockSupport.unpark(w);
+				return;
+			}
+		}
+	}
+
+	class Worker extends Thread {
+		volatile boolean _sleeping;
+		// shards whose handler refused a frame, retried every RETRY_NANOS
+		final ArrayDeque<Shard> _stalled = new ArrayDeque<Shard>();
+		long _retryAt;
+
+		Worker(String name) {
+			super(name);
+			setDaemon(true);
+		}
+
+		public void run() {
+			while (true) {
+				if (!_stalled.isEmpty() && System.nanoTime() - _retryAt >= 0) {
+					retryStalled();
+				}
+				Object shard = _ready.poll();
+				if (shard == null) {
+					shard = _overflow.poll();
+				}
+				if (shard != null) {
+					if (!((Shard) shard).run()) {
+						setAside((Shard) shard);
+					}
+				} else if (!_running) {
+					return;
+				} else {
+					_sleeping = true;
+					if (_ready.isEmpty() && _overflow.isEmpty()) {
+						LockSupport.parkNanos(_stalled.isEmpty() ? 1000000L : RETRY_NANOS);
+					}
+					_sleeping = false;
+				}
+			}
+		}
+
+		private void setAside(Shard shard) {
+			if (_stalled.isEmpty()) {
+				_retryAt = System.nanoTime() + RETRY_NANOS;
+			}
+			_stalled.add(shard);
+		}
+
+		private void retryStalled() {
+			for (int n = _stalled.size(); n > 0; n--) {
+				Shard shard = _stalled.poll();
+				if (!shard.run()) {
+					_stalled.add(shard);
+				}
+			}
+			_retryAt = System.nanoTime() + RETRY_NANOS;
+		}
+	}
+
+	/**
+	 * Stops the workers once every waiting frame is handled.
+	 */
+	public void shutdown() {
+		_running = false;
+		for (Worker w : _workers) {
+			LockSupport.unpark(w);
+		}
+		for (Worker w : _workers) {
+			try {
+				w.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return how often a shard was full and refused a frame
+	 */
+	public long refused() {
+		return _refused.get();
+	}
+}
@@ -0,0 +1,15 @@
+package io.hankers.mdi.mindray.t1;
+
+/**
+ * Receives the payload of one MLLP frame (between 0x0B and 0x1C). The buffer
+ * is only valid for the duration of the call.
+ */
+public interface FrameHandler {
+	/**
+	 * @param readNanos System.nanoTime() of the socket read that completed
+	 *                  the frame, where its latency starts
+	 * @return false when the handler cannot take the frame now; the caller
+	 *         keeps it and offers it again later, without blocking
+	 */
+	boolean onFrame(byte[] buf, int offset, int length, long readNanos);
+}
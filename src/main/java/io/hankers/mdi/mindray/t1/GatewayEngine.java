@@ -0,0 +1,251 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * Runs many monitor connections on a small pool of selector threads. Each
+ * {@link MonitorConnection} is pinned to one {@link EventLoop} which does its
+ * reads, heartbeats and reconnect timers, so per-connection state needs no
+ * locking.
+ */
+public class GatewayEngine {
+	final EventLoop[] _loops;
+	final List<MonitorConnection> _connections = new ArrayList<MonitorConnection>();
+	final TimerWheel _wheel = TimerWheel.getDefault();
+	long _heartbeatInterval = T1Config.getLong("heartbeat.ms", 1000);
+	long _reconnectMin = T1Config.getLong("reconnect.min.ms", 100);
+	long _reconnectMax = T1Config.getLong("reconnect.max.ms", 30000);
+	long _connectTimeout = T1Config.getLong("connect.timeout.ms", 2000);
+	long _idleTimeout = T1Config.getLong("read.idle.ms", 5000);
+	int _next;
+
+	public GatewayEngine() throws IOException {
+		this(T1Config.getInt("gateway.loops", Math.min(4, Runtime.getRuntime().availableProcessors())));
+	}
+
+	public GatewayEngine(int loopCount) throws IOException {
+		_loops = new EventLoop[Math.max(1, loopCount)];
+		for (int i = 0; i < _loops.length; i++) {
+			_loops[i] = new EventLoop("gateway-loop-" + i);
+		}
+	}
+
+	public MonitorConnection addTarget(String ip, int port) {
+		MonitorMetrics metrics = MetricsRegistry.register(ip + ":" + port);
+		return addTarget(ip, port, DecodePool.wrap(new MonitorSession(metrics)), metrics);
+	}
+
+	public MonitorConnection addTarget(String ip, int port, FrameHandler handler) {
+		return addTarget(ip, port, handler, MetricsRegistry.register(ip + ":" + port));
+	}
+
+	synchronized MonitorConnection addTarget(String ip, int port, FrameHandler handler, MonitorMetrics metrics) {
+		EventLoop loop = _loops[_next++ % _loops.length];
+		// heartbeat.ms.<ip> sets the cadence of one monitor
+		long heartbeat = T1Config.getLong("heartbeat.ms." + ip, _heartbeatInterval);
+		final MonitorConnection conn = new MonitorConnection(ip, port, handler, metrics, loop, _wheel, heartbeat,
+				new ReconnectBackoff(_reconnectMin, _reconnectMax), _connectTimeout, _idleTimeout);
+		_connections.add(conn);
+		loop.execute(new Runnable() {
+			public void run() {
+				conn.connect();
+			}
+		});
+		return conn;
+	}
+
+	/**
+	 * Disconnects and forgets the target, on its loop, and drops its metrics.
+	 */
+	public void removeTarget(final MonitorConnection conn) {
+		synchronized (this) {
+			if (!_connections.remove(conn)) {
+				return;
+			}
+		}
+		MetricsRegistry.unregister(conn._metrics);
+		conn._loop.execute(new Runnable() {
+			public void run() {
+				conn.stop();
+			}
+		});
+	}
+
+	/**
+	 * Adds every target of a comma-separated "host[:port]" list, port defaults to
+	 * 4601.
+	 */
+	public void addTargets(String targets) {
+		for (String target : targets.split(",")) {
+			target = target.trim();
+			if (target.isEmpty()) {
+				continue;
+			}
+			int colon = target.lastIndexOf(':');
+			if (colon > 0) {
+				addTarget(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+			} else {
+				addTarget(target, 4601);
+			}
+		}
+	}
+
+	public synchronized List<MonitorConnection> getConnections() {
+		return new ArrayList<MonitorConnection>(_connections);
+	}
+
+	public void start() {
+		for (EventLoop loop : _loops) {
+			loop.start();
+		}
+	}
+
+	/**
+	 * Blocks until every loop has stopped, the loops are daemon threads.
+	 */
+	public void join() throws InterruptedException {
+		for (EventLoop loop : _loops) {
+			loop.join();
+		}
+	}
+
+	public void shutdown() {
+		for (EventLoop loop : _loops) {
+			loop.interrupt();
+			loop._selector.wakeup();
+		}
+		for (EventLoop loop : _loops) {
+			try {
+				loop.join(5000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	public static class Timer implements Comparable<Timer> {
+		final Runnable _task;
+		final long _period;
+		long _deadline;
+		boolean _cancelled;
+
+		Timer(Runnable task, long deadline, long period) {
+			_task = task;
+			_deadline = deadline;
+			_period = period;
+		}
+
+		public void cancel() {
+			_cancelled = true;
+		}
+
+		public int compareTo(Timer o) {
+			return _deadline < o._deadline ? -1 : (_deadline == o._deadline ? 0 : 1);
+		}
+	}
+
+	public static class EventLoop extends Thread {
+		final Selector _selector;
+		final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+		final PriorityQueue<Timer> _timers = new PriorityQueue<Timer>();
+
+		EventLoop(String name) throws IOException {
+			super(name);
+			setDaemon(true);
+			_selector = Selector.open();
+		}
+
+		public void execute(Runnable task) {
+			_tasks.add(task);
+			_selector.wakeup();
+		}
+
+		/**
+		 * Must be called on this loop. A period of 0 runs the task once.
+		 */
+		public Timer schedule(Runnable task, long delay, long period) {
+			Timer timer = new Timer(task, System.currentTimeMillis() + delay, period);
+			_timers.add(timer);
+			return timer;
+		}
+
+		public void run() {
+			while (!Thread.currentThread().isInterrupted()) {
+				try {
+					runTasks();
+					long timeout = runTimers();
+					_selector.select(timeout);
+
+					Iterator<SelectionKey> it = _selector.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						MonitorConnection conn = (MonitorConnection) key.attachment();
+						if (key.isValid()) {
+							conn.handle(key);
+						}
+					}
+				} catch (Exception e) {
+					MDILog.e(e);
+				}
+			}
+
+			for (SelectionKey key : _selector.keys()) {
+				((MonitorConnection) key.attachment()).close();
+			}
+			try {
+				_selector.close();
+			} catch (IOException e) {
+				MDILog.w(e);
+			}
+		}
+
+		private void runTasks() {
+			Runnable task;
+			while ((task = _tasks.poll()) != null) {
+				task.run();
+			}
+		}
+
+		/**
+		 * @return milliseconds until the next timer is due, 0 to block
+		 */
+		private long runTimers() {
+			long now = System.currentTimeMillis();
+			Timer timer;
+			while ((timer = _timers.peek()) != null) {
+				if (timer._cancelled) {
+					_timers.poll();
+				} else if (timer._deadline <= now) {
+					_timers.poll();
+					try {
+						timer._task.run();
+					} catch (Exception e) {
+						MDILog.e(e);
+					}
+					if (timer._period > 0 && !timer._cancelled) {
+						timer._deadline += timer._period;
+						if (timer._deadline <= now) {
+							timer._deadline = now + timer._period;
+						}
+						_timers.add(timer);
+					}
+				} else {
+					return timer._deadline - now;
+				}
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable cursor over one HL7 segment in a raw byte buffer. {@link #reset}
+ * indexes the '|' field boundaries once; components ('^') and subcomponents
+ * ('&') are located on demand. Positions are returned as a packed
+ * {@code long} span (start in the high word, end in the low word, -1 when
+ * absent) so that lookups and numeric parsing allocate nothing.
+ */
+public class HL7Segment {
+	public static final byte FIELD = '|';
+	public static final byte COMPONENT = '^';
+	public static final byte SUBCOMPONENT = '&';
+	public static final long NONE = -1;
+
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+			1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+	byte[] _buf;
+	int _end;
+	// field i spans [_fields[i], _fields[i + 1] - 1)
+	private int[] _fields = new int[32];
+	private int _fieldCount;
+	private HL7Time _time;
+
+	public HL7Segment reset(byte[] buf, int offset, int length) {
+		_buf = buf;
+		_end = offset + length;
+		_fieldCount = 0;
+		_fields[0] = offset;
+		for (int i = offset; i < _end; i++) {
+			if (buf[i] == FIELD) {
+				addField(i + 1);
+			}
+		}
+		addField(_end + 1);
+		return this;
+	}
+
+	private void addField(int nextStart) {
+		_fieldCount++;
+		if (_fieldCount == _fields.length) {
+			int[] grown = new int[_fields.length * 2];
+			System.arraycopy(_fields, 0, grown, 0, _fields.length);
+			_fields = grown;
+		}
+		_fields[_fieldCount] = nextStart;
+	}
+
+	public byte[] buffer() {
+		return _buf;
+	}
+
+	public int fieldCount() {
+		return _fieldCount;
+	}
+
+	public int fieldStart(int field) {
+		return _fields[field];
+	}
+
+	public int fieldEnd(int field) {
+		return _fields[field + 1] - 1;
+	}
+
+	/**
+	 * The end of the whole segment, e.g. for binary payloads that may contain
+	 * delimiters.
+	 */
+	public int segmentEnd() {
+		return _end;
+	}
+
+	public boolean isType(String type) {
+		return field(0) != NONE && equals(field(0), type);
+	}
+
+	public boolean isEmpty(int field) {
+		return field >= _fieldCount || fieldStart(field) == fieldEnd(field);
+	}
+
+	public long field(int field) {
+		if (field < 0 || field >= _fieldCount) {
+			return NONE;
+		}
+		return span(fieldStart(field), fieldEnd(field));
+	}
+
+	public long component(int field, int component) {
+		return split(field(field), COMPONENT, component);
+	}
+
+	public long subcomponent(int field, int component, int subcomponent) {
+		return split(component(field, component), SUBCOMPONENT, subcomponent);
+	}
+
+	/**
+	 * @return the number of delimited parts of the span, 0 if it is absent
+	 */
+	public int count(long span, byte delimiter) {
+		if (span == NONE) {
+			return 0;
+		}
+		int count = 1;
+		for (int i = start(span); i < end(span); i++) {
+			if (_buf[i] == delimiter) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public long split(long span, byte delimiter, int index) {
+		if (span == NONE || index < 0) {
+			return NONE;
+		}
+		int from = start(span);
+		int to = end(span);
+		int start = from;
+		for (int i = from; i < to; i++) {
+			if (_buf[i] == delimiter) {
+				if (index == 0) {
+					return span(start, i);
+				}
+				index--;
+				start = i + 1;
+			}
+		}
+		return index == 0 ? span(start, to) : NONE;
+	}
+
+	public static long span(int start, int end) {
+		return ((long) start << 32) | (end & 0xFFFFFFFFL);
+	}
+
+	public static int start(long span) {
+		return (int) (span >>> 32);
+	}
+
+	public static int end(long span) {
+		return (int) span;
+	}
+
+	public static int length(long span) {
+		return span == NONE ? 0 : end(span) - start(span);
+	}
+
+	public boolean equals(long span, String value) {
+		return span != NONE && length(span) == value.length() && startsWith(span, value);
+	}
+
+	public boolean startsWith(long span, String prefix) {
+		if (span == NONE || length(span) < prefix.length()) {
+			return false;
+		}
+		int start = start(span);
+		for (int i = 0; i < prefix.length(); i++) {
+			if (_buf[start + i] != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the span as a String, null if absent
+	 */
+	public String getString(long span) {
+		if (span == NONE) {
+			return null;
+		}
+		return new String(_buf, start(span), length(span), StandardCharsets.US_ASCII);
+	}
+
+	public String getString(int field) {
+		return getString(field(field));
+	}
+
+	public int parseInt(int field, int def) {
+		return (int) parseLong(field(field), def);
+	}
+
+	/**
+	 * Parses an optionally signed decimal integer.
+	 *
+	 * @return def if the span is absent, empty or not a number
+	 */
+	public long parseLong(long span, long def) {
+		if (span == NONE) {
+			return def;
+		}
+		int i = start(span);
+		int end = end(span);
+		boolean negative = false;
+		if (i < end && (_buf[i] == '-' || _buf[i] == '+')) {
+			negative = _buf[i] == '-';
+			i++;
+		}
+		if (i == end || end - i > 18) {
+			return def;
+		}
+		long val = 0;
+		for (; i < end; i++) {
+			int d = _buf[i] - '0';
+			if (d < 0 || d > 9) {
+				return def;
+			}
+			val = val * 10 + d;
+		}
+		return negative ? -val : val;
+	}
+
+	/**
+	 * Parses an HL7 TS, the DTM in its first component.
+	 *
+	 * @return epoch millis, def if the field is absent, empty or not a DTM
+	 */
+	public long parseTime(int field, long def) {
+		long span = component(field, 0);
+		if (length(span) == 0) {
+			return def;
+		}
+		if (_time == null) {
+			_time = new HL7Time();
+		}
+		long time = _time.parse(_buf, start(span), end(span));
+		return time == HL7Time.INVALID ? def : time;
+	}
+
+	public double parseDouble(int field, double def) {
+		return parseDouble(field(field), def);
+	}
+
+	/**
+	 * Parses an HL7 NM value: optional sign, digits and an optional fraction.
+	 *
+	 * @return def if the span is absent, empty or not a number
+	 */
+	public double parseDouble(long span, double def) {
+		if (span == NONE) {
+			return def;
+		}
+		int i = start(span);
+		int end = end(span);
+		boolean negative = false;
+		if (i < end && (_buf[i] == '-' || _buf[i] == '+')) {
+			negative = _buf[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = -1;
+		for (; i < end; i++) {
+			byte b = _buf[i];
+			if (b == '.' && scale < 0) {
+				scale = 0;
+				continue;
+			}
+			int d = b - '0';
+			if (d < 0 || d > 9) {
+				return def;
+			}
+			if (++digits > 18) {
+				// beyond exact long range, rare enough to take the slow path
+				try {
+					return Double.parseDouble(getString(span));
+				} catch (NumberFormatException e) {
+					return def;
+				}
+			}
+			mantissa = mantissa * 10 + d;
+			if (scale >= 0) {
+				scale++;
+			}
+		}
+		if (digits == 0) {
+			return def;
+		}
+		double val = scale > 0 ? mantissa / POW10[scale] : mantissa;
+		return negative ? -val : val;
+	}
+}
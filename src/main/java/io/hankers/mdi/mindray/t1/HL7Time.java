@@ -0,0 +1,200 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.TimeZone;
+
+/**
+ * Parses HL7 DTM values, YYYY[MM[DD[HH[MM[SS[.S[S[S[S]]]]]]]]][+/-ZZZZ], from
+ * bytes into epoch millis without allocating, and formats them back. Values
+ * without a zone are local to the gateway, as the monitors send them. The UTC
+ * start of the last day seen is cached while the day has a single zone
+ * offset, so that the usual run of timestamps from the same day costs a few
+ * multiplications each. Not thread-safe, one per reader.
+ */
+public class HL7Time {
+	public static final long INVALID = Long.MIN_VALUE;
+	static final long DAY_MILLIS = 24 * 3600 * 1000L;
+
+	final TimeZone _zone;
+	private int _cachedDay = -1;
+	private long _cachedDayStart;
+
+	public HL7Time() {
+		this(TimeZone.getDefault());
+	}
+
+	public HL7Time(TimeZone zone) {
+		_zone = zone;
+	}
+
+	/**
+	 * @return epoch millis, {@link #INVALID} if the value is not a DTM
+	 */
+	public long parse(byte[] buf, int start, int end) {
+		int i = start;
+		int digits = 0;
+		// up to YYYYMMDDHHMMSS, missing parts default to their first value
+		int year = 0, month = 1, day = 1, hour = 0, minute = 0, second = 0;
+		while (i < end && digits < 14) {
+			int d = buf[i] - '0';
+			if (d < 0 || d > 9) {
+				break;
+			}
+			switch (digits) {
+			case 0: case 1: case 2: case 3:
+				year = year * 10 + d;
+				break;
+			case 4:
+				month = d;
+				break;
+			case 5:
+				month = month * 10 + d;
+				break;
+			case 6:
+				day = d;
+				break;
+			case 7:
+				day = day * 10 + d;
+				break;
+			case 8:
+				hour = d;
+				break;
+			case 9:
+				hour = hour * 10 + d;
+				break;
+			case 10:
+				minute = d;
+				break;
+			case 11:
+				minute = minute * 10 + d;
+				break;
+			case 12:
+				second = d;
+				break;
+			default:
+				second = second * 10 + d;
+			}
+			digits++;
+			i++;
+		}
+		if (digits < 4 || (digits & 1) != 0) {
+			return INVALID;
+		}
+		int millis = 0;
+		if (i < end && buf[i] == '.' && digits == 14) {
+			i++;
+			int scale = 100;
+			int fractionStart = i;
+			while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+				millis += (buf[i] - '0') * scale;
+				scale /= 10;
+				i++;
+			}
+			if (i == fractionStart || i - fractionStart > 4) {
+				return INVALID;
+			}
+		}
+		if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59) {
+			return INVALID;
+		}
+		long time = hour * 3600000L + minute * 60000L + second * 1000L + millis;
+		if (i < end) {
+			// an explicit offset, +HHMM or -HHMM
+			if (end - i != 5 || (buf[i] != '+' && buf[i] != '-')) {
+				return INVALID;
+			}
+			int offset = 0;
+			for (int k = i + 1; k < end; k++) {
+				int d = buf[k] - '0';
+				if (d < 0 || d > 9) {
+					return INVALID;
+				}
+				offset = offset * 10 + d;
+			}
+			long offsetMillis = (offset / 100 * 60 + offset % 100) * 60000L;
+			return daysFromCivil(year, month, day) * DAY_MILLIS + time
+					- (buf[i] == '-' ? -offsetMillis : offsetMillis);
+		}
+		long dayStart = localDayStart(year, month, day);
+		if (dayStart != INVALID) {
+			return dayStart + time;
+		}
+		// a daylight saving change during the day, the offset at the time
+		long local = daysFromCivil(year, month, day) * DAY_MILLIS + time;
+		return local - _zone.getOffset(local - _zone.getRawOffset());
+	}
+
+	/**
+	 * @return the UTC millis of local midnight, {@link #INVALID} on days the
+	 *         zone offset changes
+	 */
+	private long localDayStart(int year, int month, int day) {
+		int key = (year * 100 + month) * 100 + day;
+		if (key == _cachedDay) {
+			return _cachedDayStart;
+		}
+		long utcMidnight = daysFromCivil(year, month, day) * DAY_MILLIS;
+		int atStart = _zone.getOffset(utcMidnight - _zone.getRawOffset());
+		int atEnd = _zone.getOffset(utcMidnight + DAY_MILLIS - 1 - _zone.getRawOffset());
+		if (atStart != atEnd) {
+			return INVALID;
+		}
+		_cachedDay = key;
+		_cachedDayStart = utcMidnight - atStart;
+		return _cachedDayStart;
+	}
+
+	/**
+	 * Writes the local time of the millis as the 17 digits of
+	 * YYYYMMDDHHMMSSsss, the form the monitors take in a query.
+	 *
+	 * @return the offset after the digits
+	 */
+	public int format(long millis, byte[] dst, int off) {
+		long local = millis + _zone.getOffset(millis);
+		long days = Math.floorDiv(local, DAY_MILLIS);
+		int time = (int) (local - days * DAY_MILLIS);
+		// civil_from_days, the inverse of daysFromCivil
+		long z = days + 719468;
+		long era = Math.floorDiv(z, 146097);
+		int doe = (int) (z - era * 146097);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		int year = (int) (yoe + era * 400) + (month <= 2 ? 1 : 0);
+		off = digits(year, 4, dst, off);
+		off = digits(month, 2, dst, off);
+		off = digits(day, 2, dst, off);
+		off = digits(time / 3600000, 2, dst, off);
+		off = digits(time / 60000 % 60, 2, dst, off);
+		off = digits(time / 1000 % 60, 2, dst, off);
+		return digits(time % 1000, 3, dst, off);
+	}
+
+	/**
+	 * Writes the value zero-padded to width digits, keeping the low ones.
+	 *
+	 * @return the offset after the digits
+	 */
+	static int digits(long value, int width, byte[] dst, int off) {
+		for (int i = off + width - 1; i >= off; i--) {
+			dst[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return off + width;
+	}
+
+	/**
+	 * Days since 1970-01-01 of a proleptic Gregorian date, from Howard
+	 * Hinnant's days_from_civil.
+	 */
+	static long daysFromCivil(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yoe = y - era * 400;
+		int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097L + doe - 719468;
+	}
+}
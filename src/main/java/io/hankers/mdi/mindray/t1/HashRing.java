@@ -0,0 +1,88 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Consistent hash ring of gateway processes: each member owns the keys that
+ * hash up to each of its points on the ring, so a member that leaves hands its
+ * keys to the others and nothing else moves. Points per member even out the
+ * share of each. Immutable.
+ */
+public class HashRing {
+	static final int POINTS = 128;
+
+	final String[] _members;
+	// sorted hashes and the member index of each
+	final long[] _points;
+	final int[] _owners;
+
+	public HashRing(Collection<String> members) {
+		this(members, POINTS);
+	}
+
+	public HashRing(Collection<String> members, int pointsPerMember) {
+		_members = members.toArray(new String[0]);
+		Arrays.sort(_members);
+		int n = _members.length * pointsPerMember;
+		final long[] entries = new long[n];
+		for (int m = 0; m < _members.length; m++) {
+			for (int p = 0; p < pointsPerMember; p++) {
+				entries[m * pointsPerMember + p] = hash(_members[m] + "#" + p);
+			}
+		}
+		// sort by hash, carrying the member along
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Long.compare(entries[a], entries[b]);
+			}
+		});
+		_points = new long[n];
+		_owners = new int[n];
+		for (int i = 0; i < n; i++) {
+			_points[i] = entries[order[i]];
+			_owners[i] = order[i] / pointsPerMember;
+		}
+	}
+
+	/**
+	 * @return the member owning the key, null when there are none
+	 */
+	public String owner(String key) {
+		if (_points.length == 0) {
+			return null;
+		}
+		int i = Arrays.binarySearch(_points, hash(key));
+		if (i < 0) {
+			i = -i - 1;
+		}
+		return _members[_owners[i == _points.length ? 0 : i]];
+	}
+
+	public int size() {
+		return _members.length;
+	}
+
+	/**
+	 * 64-bit FNV-1a of the chars, through the MurmurHash3 finalizer so that
+	 * similar keys spread over the ring.
+	 */
+	static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
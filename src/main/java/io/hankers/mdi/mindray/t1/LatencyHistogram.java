@@ -0,0 +1,86 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of nanosecond values in the style of HdrHistogram:
+ * exact below 64, then 32 buckets per power of two, about 3% relative error.
+ * Recording is a couple of atomic increments and never allocates; values
+ * above MAX (about 18 minutes) count as MAX.
+ */
+public class LatencyHistogram {
+	static final int SUB_BITS = 6;
+	static final int SUB = 1 << SUB_BITS;
+	static final int HALF = SUB >> 1;
+	static final long MAX = (1L << 40) - 1;
+
+	private final AtomicLongArray _counts = new AtomicLongArray(index(MAX) + 1);
+	private final AtomicLong _count = new AtomicLong();
+	private final AtomicLong _sum = new AtomicLong();
+	private final AtomicLong _max = new AtomicLong();
+
+	static int index(long v) {
+		if (v < SUB) {
+			return (int) v;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(v) - (SUB_BITS - 1);
+		int sub = (int) (v >>> shift);
+		return SUB + (shift - 1) * HALF + (sub - HALF);
+	}
+
+	/**
+	 * @return the highest value counted in the bucket
+	 */
+	static long highestValue(int index) {
+		if (index < SUB) {
+			return index;
+		}
+		int k = index - SUB;
+		int shift = k / HALF + 1;
+		long sub = k % HALF + HALF;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	public void record(long nanos) {
+		long v = Math.min(Math.max(nanos, 0), MAX);
+		_counts.incrementAndGet(index(v));
+		_count.incrementAndGet();
+		_sum.addAndGet(v);
+		long max;
+		while (v > (max = _max.get()) && !_max.compareAndSet(max, v)) {
+		}
+	}
+
+	public long count() {
+		return _count.get();
+	}
+
+	public long sum() {
+		return _sum.get();
+	}
+
+	public long max() {
+		return _max.get();
+	}
+
+	/**
+	 * @param percentile 0 to 100
+	 * @return an upper bound of the value at the percentile, 0 when empty
+	 */
+	public long valueAtPercentile(double percentile) {
+		long total = _count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < _counts.length(); i++) {
+			seen += _counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValue(i), _max.get());
+			}
+		}
+		return _max.get();
+	}
+}
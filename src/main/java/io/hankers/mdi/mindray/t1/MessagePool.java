@@ -0,0 +1,72 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.hankers.mdi.mindray.t1.Models.HL7Message;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+
+/**
+ * Recycles the messages of one monitor. {@link Models.HL7Utils#create} takes
+ * them from here, and they come back through {@link HL7Message#release()}
+ * once published, merged into another or dropped, so a steady stream reuses
+ * a few VitalSign and Wave objects with their sample arrays. Taken on the
+ * decoding thread and released on the publishing thread; a message that finds
+ * the pool full is left to the GC.
+ */
+public class MessagePool {
+	final PublishQueue.Ring _vitals;
+	final PublishQueue.Ring _waves;
+	final AtomicLong _allocated = new AtomicLong();
+
+	public MessagePool() {
+		this(T1Config.getInt("message.pool.capacity", 256));
+	}
+
+	/**
+	 * @param capacity messages of each type kept for reuse
+	 */
+	public MessagePool(int capacity) {
+		_vitals = new PublishQueue.Ring(capacity);
+		_waves = new PublishQueue.Ring(capacity);
+	}
+
+	public VitalSign vitalSign() {
+		VitalSign vs = (VitalSign) _vitals.poll();
+		if (vs == null) {
+			vs = new VitalSign();
+			_allocated.incrementAndGet();
+		} else {
+			vs.reset();
+		}
+		vs._pool = this;
+		return vs;
+	}
+
+	public Wave wave() {
+		Wave wave = (Wave) _waves.poll();
+		if (wave == null) {
+			wave = new Wave();
+			_allocated.incrementAndGet();
+		} else {
+			wave.reset();
+		}
+		wave._pool = this;
+		return wave;
+	}
+
+	void release(HL7Message msg) {
+		if (msg instanceof Wave) {
+			_waves.offer(msg);
+		} else if (msg instanceof VitalSign) {
+			_vitals.offer(msg);
+		}
+	}
+
+	/**
+	 * @return messages created because the pool was empty
+	 */
+	public long allocated() {
+		return _allocated.get();
+	}
+}
@@ -0,0 +1,247 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.ObjectName;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * All {@link MonitorMetrics} of the process. Each is registered as an MXBean
+ * and listed in a Prometheus-style text page served on metrics.port (off by
+ * default), bound to metrics.host (127.0.0.1 by default).
+ */
+public class MetricsRegistry {
+	static final String DOMAIN = "io.hankers.mdi.mindray.t1";
+	private static final List<MonitorMetrics> _monitors = new CopyOnWriteArrayList<MonitorMetrics>();
+	private static ScrapeServer _server;
+
+	/**
+	 * @return the metrics of the monitor, shared by connections to the same
+	 *         address
+	 */
+	public static synchronized MonitorMetrics register(String name) {
+		for (MonitorMetrics m : _monitors) {
+			if (m.getName().equals(name)) {
+				m._references++;
+				return m;
+			}
+		}
+		MonitorMetrics metrics = new MonitorMetrics(name);
+		metrics._references = 1;
+		_monitors.add(metrics);
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName(name));
+		} catch (Exception e) {
+			MDILog.w(e);
+		}
+		startServer();
+		return metrics;
+	}
+
+	/**
+	 * Drops one registration of the metrics, and the MXBean and scrape entry
+	 * with the last. Metrics not from {@link #register(String)} are ignored.
+	 */
+	public static synchronized void unregister(MonitorMetrics metrics) {
+		if (!_monitors.contains(metrics) || --metrics._references > 0) {
+			return;
+		}
+		_monitors.remove(metrics);
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(metrics.getName()));
+		} catch (Exception e) {
+			MDILog.w(e);
+		}
+	}
+
+	static ObjectName objectName(String name) throws Exception {
+		return new ObjectName(DOMAIN + ":type=Monitor,name=" + ObjectName.quote(name));
+	}
+
+	public static List<MonitorMetrics> getMonitors() {
+		return _monitors;
+	}
+
+	static synchronized void startServer() {
+		int port = T1Config.getInt("metrics.port", 0);
+		if (_server != null || port <= 0) {
+			return;
+		}
+		try {
+			_server = new ScrapeServer(T1Config.getString("metrics.host", "127.0.0.1"), port);
+			_server.start();
+		} catch (IOException e) {
+			MDILog.e(e);
+		}
+	}
+
+	/**
+	 * The scrape page, Prometheus text exposition format.
+	 */
+	public static String scrape() {
+		StringBuilder sb = new StringBuilder(4096);
+		counter(sb, "bytes_read_total", "Bytes read from the monitor");
+		for (MonitorMetrics m : _monitors) {
+			sample(sb, "bytes_read_total", m, null, m.getBytesRead());
+		}
+		counter(sb, "frames_total", "MLLP frames received");
+		for (MonitorMetrics m : _monitors) {
+			sample(sb, "frames_total", m, null, m.getFrames());
+		}
+		counter(sb, "messages_total", "Parsed messages by type");
+		for (MonitorMetrics m : _monitors) {
+			sample(sb, "messages_total", m, "type=\"ConnectIndication\"", m.getConnectIndications());
+			sample(sb, "messages_total", m, "type=\"VitalSign\"", m.getVitalSigns());
+			sample(sb, "messages_total", m, "type=\"Wave\"", m.getWaves());
+		}
+		counter(sb, "parse_failures_total", "Frames that did not parse as a message");
+		for (MonitorMetrics m : _monitors) {
+			sample(sb, "parse_failures_total", m, null, m.getParseFailures());
+		}
+		counter(sb, "reconnects_total", "Connection losses and failed connects");
+		for (MonitorMetrics m : _monitors) {
+			sample(sb, "reconnects_total", m, null, m.getReconnects());
+		}
+		counter(sb, "connects_total", "Connections established");
+		for (MonitorMetrics m : _monitors) {
+			sample(sb, "connects_total", m, null, m.getConnects());
+		}
+		counter(sb, "connect_timeouts_total", "Connects not done within connect.timeout.ms");
+		for (MonitorMetrics m : _monitors) {
+			sample(sb, "connect_timeouts_total", m, null, m.getConnectTimeouts());
+		}
+		counter(sb, "idle_timeouts_total", "Connections dropped after read.idle.ms without data");
+		for (MonitorMetrics m : _monitors) {
+			sample(sb, "idle_timeouts_total", m, null, m.getIdleTimeouts());
+		}
+		counter(sb, "heartbeat_failures_total", "Heartbeat writes that failed");
+		for (MonitorMetrics m : _monitors) {
+			sample(sb, "heartbeat_failures_total", m, null, m.getHeartbeatFailures());
+		}
+		counter(sb, "read_pauses_total", "Reads paused as the frames could not be queued");
+		for (MonitorMetrics m : _monitors) {
+			sample(sb, "read_pauses_total", m, null, m.getReadPauses());
+		}
+		sb.append("# HELP mindray_t1_publish_latency_seconds Socket read to publish\n");
+		sb.append("# TYPE mindray_t1_publish_latency_seconds summary\n");
+		for (MonitorMetrics m : _monitors) {
+			LatencyHistogram h = m._publishLatency;
+			for (String q : new String[] { "0.5", "0.9", "0.99", "0.999" }) {
+				sample(sb, "publish_latency_seconds", m, "quantile=\"" + q + "\"",
+						h.valueAtPercentile(Double.parseDouble(q) * 100) / 1e9);
+			}
+			sample(sb, "publish_latency_seconds_sum", m, null, h.sum() / 1e9);
+			sample(sb, "publish_latency_seconds_count", m, null, h.count());
+		}
+		sb.append("# HELP mindray_t1_reconnect_latency_seconds Connection lost to connected again\n");
+		sb.append("# TYPE mindray_t1_reconnect_latency_seconds summary\n");
+		for (MonitorMetrics m : _monitors) {
+			LatencyHistogram h = m._reconnectLatency;
+			for (String q : new String[] { "0.5", "0.99" }) {
+				sample(sb, "reconnect_latency_seconds", m, "quantile=\"" + q + "\"",
+						h.valueAtPercentile(Double.parseDouble(q) * 100) / 1e9);
+			}
+			sample(sb, "reconnect_latency_seconds_sum", m, null, h.sum() / 1e9);
+			sample(sb, "reconnect_latency_seconds_count", m, null, h.count());
+		}
+		return sb.toString();
+	}
+
+	private static void counter(StringBuilder sb, String name, String help) {
+		sb.append("# HELP mindray_t1_").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE mindray_t1_").append(name).append(" counter\n");
+	}
+
+	private static void sample(StringBuilder sb, String name, MonitorMetrics m, String label, Object value) {
+		sb.append("mindray_t1_").append(name).append("{monitor=\"").append(m.getName()).append('"');
+		if (label != null) {
+			sb.append(',').append(label);
+		}
+		sb.append("} ").append(value).append('\n');
+	}
+
+	/**
+	 * Answers every HTTP request on the port with the scrape page.
+	 */
+	static class ScrapeServer extends Thread {
+		final ServerSocket _socket;
+
+		ScrapeServer(String host, int port) throws IOException {
+			super("metrics-http");
+			setDaemon(true);
+			_socket = new ServerSocket(port, 16, InetAddress.getByName(host));
+		}
+
+		int getPort() {
+			return _socket.getLocalPort();
+		}
+
+		public void run() {
+			while (!_socket.isClosed()) {
+				Socket client = null;
+				try {
+					client = _socket.accept();
+					client.setSoTimeout(2000);
+					readRequest(client.getInputStream());
+					byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+					OutputStream os = client.getOutputStream();
+					os.write(("HTTP/1.0 200 OK\r\nContent-Type: text/plain; version=0.0.4\r\nContent-Length: "
+							+ body.length + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+					os.write(body);
+					os.flush();
+				} catch (IOException e) {
+					if (!_socket.isClosed()) {
+						MDILog.w(e);
+					}
+				} finally {
+					if (client != null) {
+						try {
+							client.close();
+						} catch (IOException e) {
+							MDILog.w(e);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Skips the request up to the blank line, whatever it asked for.
+		 */
+		private static void readRequest(InputStream in) throws IOException {
+			boolean lineStart = false;
+			int b;
+			while ((b = in.read()) >= 0) {
+				if (b == '\r') {
+					continue;
+				}
+				if (b == '\n') {
+					if (lineStart) {
+						return;
+					}
+					lineStart = true;
+				} else {
+					lineStart = false;
+				}
+			}
+		}
+
+		void shutdown() {
+			try {
+				_socket.close();
+			} catch (IOException e) {
+				MDILog.w(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * Splits an MLLP byte stream (0x0B payload 0x1C 0x0D) into frames. Bytes are
+ * read straight into one growable buffer and every complete frame is handed
+ * to a {@link FrameHandler} as a slice of that buffer, nothing is copied per
+ * frame. Consumed bytes are only compacted away when the buffer needs room,
+ * and a partial frame is never rescanned, so frames of any size up to the
+ * configured maximum cost O(n). A frame the handler refuses stays buffered,
+ * with the rest, until the next drain.
+ */
+public class MllpFramer {
+	static final byte SB = 0x0B;
+	static final byte EB = 0x1C;
+	static final byte CR = 0x0D;
+	static final int MIN_READ = 1024;
+	static final byte[] HEARTBEAT = "MSH|^~\\&|||||||ORU^R01|106|P|2.3.1|\r".getBytes(StandardCharsets.US_ASCII);
+	// the keep-alive every connection sends with its wave query, duplicate to write
+	static final ByteBuffer HEARTBEAT_FRAME = ByteBuffer.wrap(frame(HEARTBEAT)).asReadOnlyBuffer();
+
+	private byte[] _buf;
+	private ByteBuffer _wrapper;
+	private final int _maxFrameSize;
+	private int _head; // first byte not yet consumed
+	private int _scan; // next byte to look at
+	private int _tail; // end of valid data
+	private int _frameStart = -1; // first payload byte of the open frame, -1 if none
+	private long _readNanos; // when the last bytes came in
+	private boolean _refused; // the open frame is complete but was not taken
+	long _droppedFrames;
+	StreamCapture _capture;
+
+	public MllpFramer() {
+		this(4096, T1Config.getInt("mllp.max.frame", 1 << 20));
+	}
+
+	public MllpFramer(int initialCapacity, int maxFrameSize) {
+		_buf = new byte[Math.max(initialCapacity, MIN_READ)];
+		_wrapper = ByteBuffer.wrap(_buf);
+		_maxFrameSize = maxFrameSize;
+	}
+
+	/**
+	 * @return the payload wrapped in the MLLP start and end blocks
+	 */
+	static byte[] frame(byte[] payload) {
+		byte[] ret = new byte[payload.length + 3];
+		ret[0] = SB;
+		System.arraycopy(payload, 0, ret, 1, payload.length);
+		ret[ret.length - 2] = EB;
+		ret[ret.length - 1] = CR;
+		return ret;
+	}
+
+	/**
+	 * Reads once from the channel into the buffer.
+	 *
+	 * @return the count read, -1 at end of stream
+	 */
+	public int read(ReadableByteChannel ch) throws IOException {
+		ensureWritable(MIN_READ);
+		_wrapper.limit(_buf.length);
+		_wrapper.position(_tail);
+		int readCount = ch.read(_wrapper);
+		if (readCount > 0) {
+			captured(readCount);
+		}
+		return readCount;
+	}
+
+	private void captured(int readCount) {
+		_readNanos = System.nanoTime();
+		if (_capture != null) {
+			_capture.write(_buf, _tail, readCount);
+		}
+		_tail += readCount;
+	}
+
+	/**
+	 * Copies every read from now on to the capture, null stops.
+	 */
+	public void setCapture(StreamCapture capture) {
+		_capture = capture;
+	}
+
+	public void feed(byte[] src, int offset, int length) {
+		ensureWritable(length);
+		System.arraycopy(src, offset, _buf, _tail, length);
+		_tail += length;
+		_readNanos = System.nanoTime();
+	}
+
+	/**
+	 * Passes every complete frame received so far to the handler, with the
+	 * time of the read that completed it, up to the first one it refuses. The
+	 * slices are only valid during the callback.
+	 *
+	 * @return the number of frames taken
+	 */
+	public int drain(FrameHandler handler) {
+		int count = 0;
+		final byte[] buf = _buf;
+		int frameStart = _frameStart;
+		int i = _scan;
+		_refused = false;
+		for (; i < _tail; i++) {
+			byte b = buf[i];
+			if (b == SB) {
+				// a new start block discards any unterminated frame
+				frameStart = i + 1;
+			} else if (b == EB && frameStart >= 0) {
+				if (!handler.onFrame(buf, frameStart, i - frameStart, _readNanos)) {
+					// scanned again from its end block next time
+					_refused = true;
+					break;
+				}
+				count++;
+				frameStart = -1;
+			}
+		}
+		_frameStart = frameStart;
+		_scan = i;
+		// everything outside the open frame is consumed
+		_head = frameStart < 0 ? _tail : frameStart - 1;
+
+		if (!_refused && _frameStart >= 0 && _tail - _frameStart > _maxFrameSize) {
+			_droppedFrames++;
+			MDILog.w("MLLP frame exceeds {} bytes, dropped", _maxFrameSize);
+			_frameStart = -1;
+			_head = _tail;
+		}
+		if (_head == _tail) {
+			_head = _scan = _tail = 0;
+		}
+		return count;
+	}
+
+	/**
+	 * @return whether the last drain stopped at a frame the handler refused
+	 */
+	public boolean isRefused() {
+		return _refused;
+	}
+
+	public int buffered() {
+		return _tail - _head;
+	}
+
+	public int capacity() {
+		return _buf.length;
+	}
+
+	public long droppedFrames() {
+		return _droppedFrames;
+	}
+
+	public void reset() {
+		_head = _scan = _tail = 0;
+		_frameStart = -1;
+		_refused = false;
+	}
+
+	private void ensureWritable(int minFree) {
+		if (_buf.length - _tail >= minFree) {
+			return;
+		}
+		if (_head > 0) {
+			System.arraycopy(_buf, _head, _buf, 0, _tail - _head);
+			_tail -= _head;
+			_scan -= _head;
+			if (_frameStart >= 0) {
+				_frameStart -= _head;
+			}
+			_head = 0;
+		}
+		if (_buf.length - _tail < minFree) {
+			int size = _buf.length;
+			while (size - _tail < minFree) {
+				size <<= 1;
+			}
+			byte[] grown = new byte[size];
+			System.arraycopy(_buf, 0, grown, 0, _tail);
+			_buf = grown;
+			_wrapper = ByteBuffer.wrap(_buf);
+		}
+	}
+}
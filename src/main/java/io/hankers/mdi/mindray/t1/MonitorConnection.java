@@ -0,0 +1,329 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+import io.hankers.mdi.mindray.t1.GatewayEngine.EventLoop;
+
+/**
+ * One non-blocking TCP connection to a monitor, driven entirely by its
+ * {@link EventLoop}. It sends a heartbeat and wave query every second, which
+ * the shared {@link TimerWheel} triggers and the loop runs, so a peer that
+ * stops reading never holds up the wheel.
+ *
+ * The connection moves from CONNECTING to CONNECTED, and on any failure
+ * releases its socket, heartbeat and timers and WAITs a
+ * {@link ReconnectBackoff} delay before CONNECTING again, until STOPPED. A
+ * connect not done within the connect timeout fails, and so does a connected
+ * monitor that sends nothing for the idle timeout, checked by the heartbeat.
+ *
+ * While the handler refuses frames, the connection stops reading and offers
+ * the refused frame again every millisecond on the loop, so a full queue
+ * pushes back on this monitor's socket without holding up the others.
+ */
+public class MonitorConnection {
+	static final int WAITING = 0;
+	static final int CONNECTING = 1;
+	static final int CONNECTED = 2;
+	static final int STOPPED = 3;
+
+	final String _ip;
+	final int _port;
+	final FrameHandler _handler;
+	final MonitorMetrics _metrics;
+	final EventLoop _loop;
+	final TimerWheel _wheel;
+	final long _heartbeatInterval;
+	final ReconnectBackoff _backoff;
+	final long _connectTimeout;
+	final long _idleTimeout;
+	SocketChannel _channel;
+	SelectionKey _key;
+	TimerWheel.Timeout _heartbeat;
+	// the connect timeout or the wait before the next attempt
+	GatewayEngine.Timer _timer;
+	// retries the refused frame while reads are paused, null when reading
+	GatewayEngine.Timer _paused;
+	volatile int _state = WAITING;
+	long _lastRead;
+	boolean _received;
+	// System.nanoTime() when an established connection was lost, 0 if none
+	long _lostAt;
+	private final MllpFramer _framer = new MllpFramer();
+	// heartbeat and wave query, written with one gathering write
+	private final ByteBuffer[] _writeBufs = { MllpFramer.HEARTBEAT_FRAME.duplicate(), null };
+	private final QueryFrame _query;
+	private final Runnable _beat = new Runnable() {
+		public void run() {
+			heartbeat();
+		}
+	};
+	private final Runnable _beatOnLoop = new Runnable() {
+		public void run() {
+			_loop.execute(_beat);
+		}
+	};
+	private final Runnable _connect = new Runnable() {
+		public void run() {
+			connect();
+		}
+	};
+	private final Runnable _resume = new Runnable() {
+		public void run() {
+			resume();
+		}
+	};
+	private final Runnable _connectTimedOut = new Runnable() {
+		public void run() {
+			if (_state == CONNECTING) {
+				MDILog.w("Connect to {}:{} timed out after {} ms", _ip, _port, _connectTimeout);
+				_metrics.onConnectTimeout();
+				reconnect();
+			}
+		}
+	};
+
+	MonitorConnection(String ip, int port, FrameHandler handler, MonitorMetrics metrics, EventLoop loop,
+			TimerWheel wheel, long heartbeatInterval, ReconnectBackoff backoff, long connectTimeout,
+			long idleTimeout) {
+		_ip = ip;
+		_port = port;
+		_handler = handler;
+		_metrics = metrics;
+		_loop = loop;
+		_wheel = wheel;
+		_heartbeatInterval = heartbeatInterval;
+		_backoff = backoff;
+		_connectTimeout = connectTimeout;
+		_idleTimeout = idleTimeout;
+		_query = QueryFrame.forMonitor(ip);
+		_framer.setCapture(StreamCapture.open(ip + ":" + port));
+	}
+
+	public String getIp() {
+		return _ip;
+	}
+
+	public int getPort() {
+		return _port;
+	}
+
+	public boolean isConnected() {
+		return _state == CONNECTED;
+	}
+
+	void connect() {
+		if (_state == STOPPED) {
+			return;
+		}
+		_state = CONNECTING;
+		try {
+			_channel = SocketChannel.open();
+			_channel.configureBlocking(false);
+			_channel.socket().setTcpNoDelay(true);
+			if (_channel.connect(new InetSocketAddress(_ip, _port))) {
+				_key = _channel.register(_loop._selector, SelectionKey.OP_READ, this);
+				onConnected();
+			} else {
+				_key = _channel.register(_loop._selector, SelectionKey.OP_CONNECT, this);
+				_timer = _loop.schedule(_connectTimedOut, _connectTimeout, 0);
+			}
+		} catch (IOException e) {
+			MDILog.w(e);
+			reconnect();
+		}
+	}
+
+	void handle(SelectionKey key) {
+		try {
+			if (key.isConnectable()) {
+				_channel.finishConnect();
+				key.interestOps(SelectionKey.OP_READ);
+				onConnected();
+			}
+			if (key.isValid() && key.isReadable()) {
+				read();
+			}
+			if (key.isValid() && key.isWritable()) {
+				flush();
+			}
+		} catch (IOException e) {
+			MDILog.w(e);
+			reconnect();
+		}
+	}
+
+	private void onConnected() {
+		MDILog.i("Connected {}:{}", _ip, _port);
+		cancelTimer();
+		_state = CONNECTED;
+		_lastRead = System.currentTimeMillis();
+		_received = false;
+		_metrics.onConnected(_lostAt == 0 ? -1 : System.nanoTime() - _lostAt);
+		_lostAt = 0;
+		_framer.reset();
+		_writeBufs[1] = null;
+		_heartbeat = _wheel.schedule(_beatOnLoop, 0, _heartbeatInterval);
+	}
+
+	private void read() throws IOException {
+		int readCount;
+		while ((readCount = _framer.read(_channel)) > 0) {
+			_metrics.onBytesRead(readCount);
+			_framer.drain(_handler);
+			_lastRead = System.currentTimeMillis();
+			if (!_received) {
+				// the monitor is talking, start the next outage from the shortest delay
+				_received = true;
+				_backoff.reset();
+			}
+			if (_framer.isRefused()) {
+				pause();
+				return;
+			}
+		}
+		if (readCount < 0) {
+			throw new IOException("Connection closed by " + _ip + ":" + _port);
+		}
+	}
+
+	private void pause() {
+		_metrics.onReadPaused();
+		_paused = _loop.schedule(_resume, 1, 1);
+		updateInterest();
+	}
+
+	private void resume() {
+		if (_state != CONNECTED) {
+			return;
+		}
+		_framer.drain(_handler);
+		if (_framer.isRefused()) {
+			return;
+		}
+		_paused.cancel();
+		_paused = null;
+		try {
+			updateInterest();
+			// what came in while paused is buffered by the socket
+			read();
+		} catch (IOException e) {
+			MDILog.w(e);
+			reconnect();
+		}
+	}
+
+	private boolean writePending() {
+		return _writeBufs[1] != null && _writeBufs[1].hasRemaining();
+	}
+
+	private void heartbeat() {
+		if (_state != CONNECTED) {
+			// handed to the loop before the connection was lost
+			return;
+		}
+		long idle = System.currentTimeMillis() - _lastRead;
+		// not reading while paused, the monitor may well be talking
+		if (_idleTimeout > 0 && idle > _idleTimeout && _paused == null) {
+			MDILog.w("Nothing from {}:{} for {} ms", _ip, _port, idle);
+			_metrics.onIdleTimeout();
+			reconnect();
+			return;
+		}
+		if (writePending()) {
+			// previous beat still pending, the peer is not reading
+			return;
+		}
+		_writeBufs[0].rewind();
+		_writeBufs[1] = _query.encode(System.currentTimeMillis());
+		try {
+			flush();
+		} catch (IOException e) {
+			MDILog.e(e);
+			_metrics.onHeartbeatFailure();
+			reconnect();
+		}
+	}
+
+	private void flush() throws IOException {
+		if (writePending()) {
+			_channel.write(_writeBufs);
+		}
+		updateInterest();
+	}
+
+	private void updateInterest() {
+		if (_key.isValid()) {
+			_key.interestOps((_paused == null ? SelectionKey.OP_READ : 0)
+					| (writePending() ? SelectionKey.OP_WRITE : 0));
+		}
+	}
+
+	private void reconnect() {
+		_metrics.onReconnect();
+		if (_state == CONNECTED) {
+			_lostAt = System.nanoTime();
+		}
+		close();
+		if (_state == STOPPED) {
+			return;
+		}
+		_timer = _loop.schedule(_connect, _backoff.next(), 0);
+	}
+
+	private void cancelTimer() {
+		if (_timer != null) {
+			_timer.cancel();
+			_timer = null;
+		}
+	}
+
+	/**
+	 * Closes for good, a pending reconnect does nothing.
+	 */
+	void stop() {
+		_state = STOPPED;
+		close();
+		if (_framer._capture != null) {
+			_framer._capture.close();
+			_framer.setCapture(null);
+		}
+	}
+
+	/**
+	 * Releases the socket, heartbeat and timers, does not reconnect.
+	 */
+	void close() {
+		if (_state != STOPPED) {
+			_state = WAITING;
+		}
+		cancelTimer();
+		if (_paused != null) {
+			_paused.cancel();
+			_paused = null;
+		}
+		if (_framer._capture != null) {
+			_framer._capture.flush();
+		}
+		if (_heartbeat != null) {
+			_heartbeat.cancel();
+			_heartbeat = null;
+		}
+		if (_key != null) {
+			_key.cancel();
+			_key = null;
+		}
+		if (_channel != null) {
+			try {
+				_channel.close();
+			} catch (IOException e) {
+				MDILog.w(e);
+			}
+			_channel = null;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.hankers.mdi.mindray.t1.Models.ConnectIndication;
+import io.hankers.mdi.mindray.t1.Models.HL7Message;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+
+/**
+ * Counters of one monitor connection, updated on the hot path without
+ * allocating, and the latency from socket read to publish. Registered with
+ * {@link MetricsRegistry}, which exposes them through JMX and the scrape port.
+ */
+public class MonitorMetrics implements MonitorMetricsMXBean {
+	final String _name;
+	final AtomicLong _bytesRead = new AtomicLong();
+	final AtomicLong _frames = new AtomicLong();
+	final AtomicLong _connectIndications = new AtomicLong();
+	final AtomicLong _vitalSigns = new AtomicLong();
+	final AtomicLong _waves = new AtomicLong();
+	final AtomicLong _parseFailures = new AtomicLong();
+	final AtomicLong _reconnects = new AtomicLong();
+	final AtomicLong _connects = new AtomicLong();
+	final AtomicLong _connectTimeouts = new AtomicLong();
+	final AtomicLong _idleTimeouts = new AtomicLong();
+	final AtomicLong _heartbeatFailures = new AtomicLong();
+	final AtomicLong _readPauses = new AtomicLong();
+	final LatencyHistogram _publishLatency = new LatencyHistogram();
+	// from losing an established connection to the next one
+	final LatencyHistogram _reconnectLatency = new LatencyHistogram();
+	// registrations of the name, guarded by MetricsRegistry
+	int _references;
+
+	public MonitorMetrics(String name) {
+		_name = name;
+	}
+
+	public void onBytesRead(int n) {
+		if (n > 0) {
+			_bytesRead.addAndGet(n);
+		}
+	}
+
+	public void onFrame() {
+		_frames.incrementAndGet();
+	}
+
+	/**
+	 * Counts a parsed message by type and stamps it for the publish latency.
+	 */
+	public void onMessage(HL7Message msg, long receivedNanos) {
+		if (msg instanceof Wave) {
+			_waves.incrementAndGet();
+		} else if (msg instanceof VitalSign) {
+			_vitalSigns.incrementAndGet();
+		} else if (msg instanceof ConnectIndication) {
+			_connectIndications.incrementAndGet();
+		}
+		msg._metrics = this;
+		msg._receivedNanos = receivedNanos;
+	}
+
+	public void onParseFailure() {
+		_parseFailures.incrementAndGet();
+	}
+
+	public void onReconnect() {
+		_reconnects.incrementAndGet();
+	}
+
+	/**
+	 * @param downNanos since the previous connection was lost, -1 for the
+	 *                  first connection
+	 */
+	public void onConnected(long downNanos) {
+		_connects.incrementAndGet();
+		if (downNanos >= 0) {
+			_reconnectLatency.record(downNanos);
+		}
+	}
+
+	public void onConnectTimeout() {
+		_connectTimeouts.incrementAndGet();
+	}
+
+	public void onIdleTimeout() {
+		_idleTimeouts.incrementAndGet();
+	}
+
+	public void onHeartbeatFailure() {
+		_heartbeatFailures.incrementAndGet();
+	}
+
+	public void onReadPaused() {
+		_readPauses.incrementAndGet();
+	}
+
+	public void onPublished(long receivedNanos) {
+		_publishLatency.record(System.nanoTime() - receivedNanos);
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	public long getBytesRead() {
+		return _bytesRead.get();
+	}
+
+	public long getFrames() {
+		return _frames.get();
+	}
+
+	public long getConnectIndications() {
+		return _connectIndications.get();
+	}
+
+	public long getVitalSigns() {
+		return _vitalSigns.get();
+	}
+
+	public long getWaves() {
+		return _waves.get();
+	}
+
+	public long getParseFailures() {
+		return _parseFailures.get();
+	}
+
+	public long getReconnects() {
+		return _reconnects.get();
+	}
+
+	public long getConnects() {
+		return _connects.get();
+	}
+
+	public long getConnectTimeouts() {
+		return _connectTimeouts.get();
+	}
+
+	public long getIdleTimeouts() {
+		return _idleTimeouts.get();
+	}
+
+	public long getReconnectLatencyP50Millis() {
+		return _reconnectLatency.valueAtPercentile(50) / 1000000;
+	}
+
+	public long getReconnectLatencyMaxMillis() {
+		return _reconnectLatency.max() / 1000000;
+	}
+
+	public long getHeartbeatFailures() {
+		return _heartbeatFailures.get();
+	}
+
+	public long getReadPauses() {
+		return _readPauses.get();
+	}
+
+	public long getPublished() {
+		return _publishLatency.count();
+	}
+
+	public long getPublishLatencyP50Micros() {
+		return _publishLatency.valueAtPercentile(50) / 1000;
+	}
+
+	public long getPublishLatencyP99Micros() {
+		return _publishLatency.valueAtPercentile(99) / 1000;
+	}
+
+	public long getPublishLatencyMaxMicros() {
+		return _publishLatency.max() / 1000;
+	}
+}
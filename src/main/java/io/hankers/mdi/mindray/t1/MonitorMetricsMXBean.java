@@ -0,0 +1,45 @@
+package io.hankers.mdi.mindray.t1;
+
+/**
+ * JMX view of {@link MonitorMetrics}, one bean per monitor under
+ * io.hankers.mdi.mindray.t1:type=Monitor.
+ */
+public interface MonitorMetricsMXBean {
+	String getName();
+
+	long getBytesRead();
+
+	long getFrames();
+
+	long getConnectIndications();
+
+	long getVitalSigns();
+
+	long getWaves();
+
+	long getParseFailures();
+
+	long getReconnects();
+
+	long getConnects();
+
+	long getConnectTimeouts();
+
+	long getIdleTimeouts();
+
+	long getReconnectLatencyP50Millis();
+
+	long getReconnectLatencyMaxMillis();
+
+	long getHeartbeatFailures();
+
+	long getReadPauses();
+
+	long getPublished();
+
+	long getPublishLatencyP50Micros();
+
+	long getPublishLatencyP99Micros();
+
+	long getPublishLatencyMaxMicros();
+}
@@ -0,0 +1,153 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.ArrayDeque;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+import io.hankers.mdi.mindray.t1.Models.HL7Message;
+import io.hankers.mdi.mindray.t1.Models.HL7Utils;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+
+/**
+ * Per-monitor message state: decodes frames, merges vital signs sharing a
+ * timestamp and hands them to the {@link PublishQueue}, or publishes them
+ * directly when there is none. Waves are kept in the {@link WaveStore} and
+ * run through the bed's {@link WaveAnalytics}, whose results are stamped with
+ * and merged into the vital signs being collected. Vital signs are kept in
+ * the {@link VitalStore} and, with vitals.delta, published through the
+ * {@link VitalDeadband}; waves are resampled where they are serialized.
+ * Messages come from the session's {@link MessagePool} and are released once
+ * merged or published. Messages a blocking queue refuses are held, and
+ * frames refused, until the queue takes them. Not thread-safe, owned by one
+ * reader.
+ */
+public class MonitorSession implements FrameHandler {
+	HL7Message _cachedMsg;
+	final HL7Segment _segment = new HL7Segment();
+	final MessagePool _pool = new MessagePool();
+	final WaveResampling _resampling = new WaveResampling();
+	final PublishQueue _queue;
+	final PublishQueue.Coalescer _coalescer = new PublishQueue.Coalescer();
+	final MonitorMetrics _metrics;
+	final WaveStore.Bed _bed;
+	final VitalStore _vitals;
+	final WaveAnalytics _analytics = WaveAnalytics.create();
+	final VitalDeadband _deadband = VitalDeadband.create();
+	// filtered and ready, waiting for the queue to take them in order
+	final ArrayDeque<HL7Message> _stalled = new ArrayDeque<HL7Message>();
+
+	public MonitorSession() {
+		this(PublishQueue.getDefault(), null);
+	}
+
+	public MonitorSession(MonitorMetrics metrics) {
+		this(PublishQueue.getDefault(), metrics);
+	}
+
+	public MonitorSession(PublishQueue queue, MonitorMetrics metrics) {
+		_queue = queue;
+		_metrics = metrics;
+		WaveStore store = WaveStore.getDefault();
+		_bed = store == null || metrics == null ? null : store.bed(metrics.getName());
+		_vitals = metrics == null ? null : VitalStore.getDefault();
+	}
+
+	public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+		if (!offerStalled()) {
+			return false;
+		}
+		HL7Message newMsg;
+		try {
+			newMsg = HL7Utils.create(_segment, _pool, buf, offset, length);
+		} catch (RuntimeException e) {
+			MDILog.w(e);
+			newMsg = null;
+		}
+		if (_metrics != null) {
+			_metrics.onFrame();
+			if (newMsg == null) {
+				_metrics.onParseFailure();
+			} else {
+				_metrics.onMessage(newMsg, readNanos);
+			}
+		}
+
+		if (newMsg == null) {
+			// do nothing
+		} else if (newMsg.isEmpty()) {
+			newMsg.release();
+		} else if (newMsg instanceof Wave) {
+			Wave wave = (Wave) newMsg;
+			if (_bed != null) {
+				_bed.append(wave);
+			}
+			// on the full-rate samples, before the wave is handed on, and
+			// stamped to merge with the vital signs being collected
+			VitalSign derived = _analytics == null ? null
+					: _analytics.process(wave, _cachedMsg == null ? -1 : _cachedMsg._timestamp, _pool);
+			wave._resampling = _resampling;
+			publish(wave);
+			if (derived != null) {
+				merge(derived);
+			}
+		} else {
+			merge(newMsg);
+		}
+		return true;
+	}
+
+	/**
+	 * @return whether every held message is queued
+	 */
+	private boolean offerStalled() {
+		HL7Message msg;
+		while ((msg = _stalled.peek()) != null) {
+			if (!offer(msg)) {
+				return false;
+			}
+			_stalled.poll();
+		}
+		return true;
+	}
+
+	/**
+	 * Holds the vital sign until one with another timestamp comes.
+	 */
+	private void merge(HL7Message newMsg) {
+		if (_cachedMsg == null) {
+			_cachedMsg = newMsg;
+		} else if (_cachedMsg._timestamp == newMsg._timestamp) {
+			((VitalSign) _cachedMsg).merge((VitalSign) newMsg);
+			newMsg.release();
+		} else {
+			// MDILog.d("publishing {}, {}", _cachedMsg, newMsg);
+			publish(_cachedMsg);
+			_cachedMsg = newMsg;
+		}
+	}
+
+	void publish(HL7Message msg) {
+		if (_vitals != null && msg instanceof VitalSign) {
+			_vitals.series(_metrics.getName()).add((VitalSign) msg);
+		}
+		if (_deadband != null && msg instanceof VitalSign && !_deadband.filter((VitalSign) msg)) {
+			// nothing changed enough
+			msg.release();
+			return;
+		}
+		if (_queue == null) {
+			msg.publish();
+		} else if (!_stalled.isEmpty() || !offer(msg)) {
+			_stalled.add(msg);
+		}
+	}
+
+	private boolean offer(HL7Message msg) {
+		if (msg instanceof Wave) {
+			return _queue.offer((Wave) msg);
+		} else if (msg instanceof VitalSign) {
+			return _queue.offer(_coalescer, (VitalSign) msg);
+		}
+		return true;
+	}
+}
@@ -1,57 +1,338 @@
 package io.hankers.mdi.mindray.t1;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.SocketException;
-import java.util.Arrays;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.hankers.mdi.mdi_utils.MDILog;
 import io.hankers.mdi.mindray.t1.Models.ConnectIndication;
+import io.hankers.mdi.mindray.t1.Models.HL7Message;
 import io.hankers.mdi.mindray.t1.Models.HL7Utils;
 
+/**
+ * Discovers monitors from their UDP connect indications (ADT^A01) and keeps
+ * the {@link GatewayEngine} connected to every one of them. Listens on
+ * discovery.ports, 4600 for monitors and 4679 for central stations and
+ * gateways, with one non-blocking channel per port on a single selector and
+ * receive buffer. Announcements are deduplicated by ip:port and patient GUID:
+ * a new ip:port is connected, a new patient at a known one restarts its
+ * connection, and a patient announced at another ip:port stops the old one.
+ * A monitor not announced for discovery.silence.ms whose connection is down
+ * is dropped. A port that fails to bind is retried with backoff.
+ * <p>
+ * With shard.dir set, several gateway processes split the monitors: each one
+ * hears every announcement but connects only the monitors the
+ * {@link ShardMembership} gives it, by monitor address or, with
+ * shard.key=patient, by patient GUID. When the members change the monitors
+ * are rebalanced, a process connecting the ones it gained and stopping the
+ * ones it lost.
+ */
 public class MonitorSniffer extends Thread {
-	private DatagramSocket _udp;
-	private byte[] _cbuf = new byte[2048];
-	final int PORT = 4600; // 4679 for center or gateway
+	static final int MONITOR_PORT = 4600;
+	static final long MIN_BIND_RETRY = 1000;
+	static final long MAX_BIND_RETRY = 30000;
 
-	public MonitorSniffer() {
+	final GatewayEngine _engine;
+	final int[] _ports;
+	final long _silence;
+	final long _sweepInterval;
+	final ShardMembership _membership;
+	final boolean _byPatientKey;
+	private final Selector _selector;
+	private final DatagramChannel[] _channels;
+	private final long[] _bindRetry;
+	private final long[] _bindAt;
+	private final ByteBuffer _buf = ByteBuffer.allocate(2048);
+	private final HL7Segment _segment = new HL7Segment();
+	// ip:port, and patient GUID where there is one
+	private final Map<String, Monitor> _monitors = new HashMap<String, Monitor>();
+	private final Map<String, Monitor> _byPatient = new HashMap<String, Monitor>();
+	final AtomicLong _announcements = new AtomicLong();
+
+	/**
+	 * One announced monitor and its connection.
+	 */
+	static class Monitor {
+		final String _key;
+		final String _ip;
+		final int _port;
+		String _guid;
+		long _lastSeen;
+		// null while another process has it
+		MonitorConnection _conn;
+
+		Monitor(String ip, int port) {
+			_key = ip + ":" + port;
+			_ip = ip;
+			_port = port;
+		}
+	}
+
+	public MonitorSniffer(GatewayEngine engine) throws IOException {
+		this(engine, ports(T1Config.getString("discovery.ports", String.valueOf(MONITOR_PORT))),
+				T1Config.getLong("discovery.silence.ms", 60000), ShardMembership.getDefault());
+	}
+
+	MonitorSniffer(GatewayEngine engine, int[] ports, long silence) throws IOException {
+		this(engine, ports, silence, null);
+	}
+
+	/**
+	 * @param ports   to listen on, 0 for an ephemeral one
+	 * @param silence millis without an announcement before a disconnected
+	 *                monitor is dropped
+	 * @param membership the processes sharing the monitors, null to connect
+	 *                   them all
+	 */
+	MonitorSniffer(GatewayEngine engine, int[] ports, long silence, ShardMembership membership)
+			throws IOException {
+		super("monitor-sniffer");
+		setDaemon(true);
+		_engine = engine;
+		_ports = ports;
+		_silence = silence;
+		_membership = membership;
+		_byPatientKey = "patient".equals(T1Config.getString("shard.key", "monitor"));
+		long sweep = Math.min(1000, silence / 2);
+		if (membership != null) {
+			sweep = Math.min(sweep, membership._interval);
+		}
+		_sweepInterval = Math.max(10, sweep);
+		_selector = Selector.open();
+		_channels = new DatagramChannel[ports.length];
+		_bindRetry = new long[ports.length];
+		_bindAt = new long[ports.length];
+	}
+
+	static int[] ports(String list) {
+		String[] parts = list.split(",");
+		int[] ports = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			ports[i] = Integer.parseInt(parts[i].trim());
+		}
+		return ports;
+	}
+
+	/**
+	 * @return the bound port of ports[i], -1 while unbound
+	 */
+	public int getLocalPort(int i) {
+		DatagramChannel ch = _channels[i];
+		return ch == null ? -1 : ch.socket().getLocalPort();
 	}
 
 	public void run() {
-		DatagramPacket packet = new DatagramPacket(_cbuf, _cbuf.length);
-		while (!Thread.currentThread().isInterrupted()) {
+		try {
+			long nextSweep = 0;
+			while (!isInterrupted()) {
+				long now = System.currentTimeMillis();
+				if (now >= nextSweep) {
+					bind(now);
+					if (_membership != null && _membership.refresh(now)) {
+						rebalance();
+					}
+					sweep(now);
+					nextSweep = now + _sweepInterval;
+				}
+				_selector.select(Math.max(1, nextSweep - now));
+				Iterator<SelectionKey> it = _selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					receive((DatagramChannel) key.channel());
+				}
+			}
+		} catch (IOException e) {
+			MDILog.e(e);
+		} finally {
+			for (DatagramChannel ch : _channels) {
+				close(ch);
+			}
 			try {
-				_udp = new DatagramSocket(PORT);
-			} catch (SocketException e1) {
-				MDILog.w(e1);
+				_selector.close();
+			} catch (IOException e) {
+				MDILog.w(e);
 			}
+			if (_membership != null) {
+				_membership.leave();
+			}
+		}
+	}
+
+	public void shutdown() throws InterruptedException {
+		interrupt();
+		_selector.wakeup();
+		join(5000);
+	}
+
+	/**
+	 * Binds the ports that are not bound yet and due for another attempt.
+	 */
+	private void bind(long now) {
+		for (int i = 0; i < _ports.length; i++) {
+			if (_channels[i] != null || now < _bindAt[i]) {
+				continue;
+			}
+			DatagramChannel ch = null;
+			try {
+				ch = DatagramChannel.open();
+				ch.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+				// room for a burst of announcements from a whole ward
+				ch.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20);
+				ch.bind(new InetSocketAddress(_ports[i]));
+				ch.configureBlocking(false);
+				ch.register(_selector, SelectionKey.OP_READ);
+				_channels[i] = ch;
+				_bindRetry[i] = 0;
+				MDILog.i("Listening for monitors on UDP {}", ch.socket().getLocalPort());
+			} catch (IOException e) {
+				close(ch);
+				_bindRetry[i] = Math.min(MAX_BIND_RETRY, Math.max(MIN_BIND_RETRY, _bindRetry[i] * 2));
+				_bindAt[i] = now + _bindRetry[i];
+				MDILog.w("Cannot bind UDP {}, retrying in {} ms: {}", _ports[i], _bindRetry[i], e);
+			}
+		}
+	}
 
-			while (!Thread.currentThread().isInterrupted()) {
-				try {
-					Arrays.fill(_cbuf, (byte) 0);
-					_udp.receive(packet);
+	private static void close(DatagramChannel ch) {
+		if (ch != null) {
+			try {
+				ch.close();
+			} catch (IOException e) {
+				MDILog.w(e);
+			}
+		}
+	}
 
-					InetAddress address = packet.getAddress();
-					int port = packet.getPort();
+	/**
+	 * Handles every datagram waiting on the channel.
+	 */
+	private void receive(DatagramChannel ch) throws IOException {
+		while (true) {
+			_buf.clear();
+			if (ch.receive(_buf) == null) {
+				return;
+			}
+			HL7Message msg;
+			try {
+				msg = HL7Utils.create(_segment, _buf.array(), 0, _buf.position());
+			} catch (RuntimeException e) {
+				MDILog.w(e);
+				continue;
+			}
+			if (msg instanceof ConnectIndication) {
+				ConnectIndication ci = (ConnectIndication) msg;
+				if (ci._ip != null && !ci._ip.isEmpty()) {
+					announced(ci._ip, ci._port, ci._pGuid == null ? "" : ci._pGuid, System.currentTimeMillis());
+					_announcements.incrementAndGet();
+				}
+			}
+		}
+	}
 
-					System.out.format("Connection Indication from %s:%d", address.getHostAddress(), port);
+	void announced(String ip, int port, String guid, long now) {
+		String key = ip + ":" + port;
+		Monitor m = _monitors.get(key);
+		if (m != null && m._guid.equals(guid)) {
+			m._lastSeen = now;
+			return;
+		}
+		Monitor previous = guid.isEmpty() ? null : _byPatient.get(guid);
+		if (previous != null && previous != m) {
+			MDILog.i("Patient {} moved from {} to {}", guid, previous._key, key);
+			drop(previous);
+		}
+		if (m == null) {
+			MDILog.i("Discovered monitor {}", key);
+			m = new Monitor(ip, port);
+			_monitors.put(key, m);
+		} else {
+			MDILog.i("New patient {} at {}", guid, key);
+			if (_byPatient.get(m._guid) == m) {
+				_byPatient.remove(m._guid);
+			}
+			if (m._conn != null) {
+				_engine.removeTarget(m._conn);
+			}
+			m._conn = null;
+		}
+		m._guid = guid;
+		m._lastSeen = now;
+		if (!guid.isEmpty()) {
+			_byPatient.put(guid, m);
+		}
+		if (owns(m)) {
+			m._conn = _engine.addTarget(ip, port);
+		}
+	}
 
-					ConnectIndication conn = (ConnectIndication) HL7Utils.create(_cbuf, 0, packet.getLength());
+	/**
+	 * @return whether this process connects the monitor
+	 */
+	private boolean owns(Monitor m) {
+		if (_membership == null) {
+			return true;
+		}
+		// a patient keeps its process when moved to another bed
+		return _membership.owns(_byPatientKey && !m._guid.isEmpty() ? m._guid : m._key);
+	}
 
-					if (conn._ip != null && !conn._ip.isEmpty()) {
-						new DataReceiver(conn._ip, conn._port).start();
+	/**
+	 * Connects the monitors this process gained and stops the ones it lost.
+	 */
+	private void rebalance() {
+		for (Monitor m : _monitors.values()) {
+			boolean owned = owns(m);
+			if (owned && m._conn == null) {
+				MDILog.i("Taking over monitor {}", m._key);
+				m._conn = _engine.addTarget(m._ip, m._port);
+			} else if (!owned && m._conn != null) {
+				MDILog.i("Handing over monitor {}", m._key);
+				_engine.removeTarget(m._conn);
+				m._conn = null;
+			}
+		}
+	}
 
-						_udp.close();
+	private void drop(Monitor m) {
+		_monitors.remove(m._key);
+		if (_byPatient.get(m._guid) == m) {
+			_byPatient.remove(m._guid);
+		}
+		if (m._conn != null) {
+			_engine.removeTarget(m._conn);
+		}
+	}
 
-						return;
-					}
-				} catch (IOException e) {
-					MDILog.d("Sniffering", e);
+	/**
+	 * Drops the monitors that went silent and lost their connection, or that
+	 * another process has.
+	 */
+	private void sweep(long now) {
+		List<Monitor> silent = null;
+		for (Monitor m : _monitors.values()) {
+			if (now - m._lastSeen > _silence && (m._conn == null || !m._conn.isConnected())) {
+				if (silent == null) {
+					silent = new ArrayList<Monitor>();
 				}
+				silent.add(m);
+			}
+		}
+		if (silent != null) {
+			for (Monitor m : silent) {
+				MDILog.i("Monitor {} went silent", m._key);
+				drop(m);
 			}
 		}
 	}
-
-}
\ No newline at end of file
+}
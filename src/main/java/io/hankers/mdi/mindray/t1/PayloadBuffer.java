@@ -0,0 +1,170 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer that serializers append to. Multi-byte numbers are
+ * little-endian; text helpers write ASCII and JSON without intermediate
+ * Strings.
+ */
+public class PayloadBuffer {
+	private byte[] _buf;
+	private int _pos;
+
+	public PayloadBuffer() {
+		this(4096);
+	}
+
+	public PayloadBuffer(int initialCapacity) {
+		_buf = new byte[Math.max(16, initialCapacity)];
+	}
+
+	public byte[] array() {
+		return _buf;
+	}
+
+	public int position() {
+		return _pos;
+	}
+
+	public void position(int pos) {
+		_pos = pos;
+	}
+
+	public void clear() {
+		_pos = 0;
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(_buf, _pos);
+	}
+
+	public String toString() {
+		return new String(_buf, 0, _pos, StandardCharsets.UTF_8);
+	}
+
+	private void ensure(int more) {
+		if (_pos + more > _buf.length) {
+			_buf = Arrays.copyOf(_buf, Math.max(_buf.length * 2, _pos + more));
+		}
+	}
+
+	public PayloadBuffer put(byte b) {
+		ensure(1);
+		_buf[_pos++] = b;
+		return this;
+	}
+
+	public PayloadBuffer put(byte[] src, int offset, int length) {
+		ensure(length);
+		System.arraycopy(src, offset, _buf, _pos, length);
+		_pos += length;
+		return this;
+	}
+
+	/**
+	 * Copies length bytes from the position of src, advancing it.
+	 */
+	public PayloadBuffer put(ByteBuffer src, int length) {
+		ensure(length);
+		src.get(_buf, _pos, length);
+		_pos += length;
+		return this;
+	}
+
+	public PayloadBuffer putShortLE(int v) {
+		ensure(2);
+		_buf[_pos++] = (byte) v;
+		_buf[_pos++] = (byte) (v >> 8);
+		return this;
+	}
+
+	public PayloadBuffer putIntLE(int v) {
+		ensure(4);
+		_buf[_pos++] = (byte) v;
+		_buf[_pos++] = (byte) (v >> 8);
+		_buf[_pos++] = (byte) (v >> 16);
+		_buf[_pos++] = (byte) (v >> 24);
+		return this;
+	}
+
+	public PayloadBuffer putLongLE(long v) {
+		putIntLE((int) v);
+		return putIntLE((int) (v >> 32));
+	}
+
+	public PayloadBuffer putFloatLE(float v) {
+		return putIntLE(Float.floatToIntBits(v));
+	}
+
+	/**
+	 * Zigzag varint, small magnitudes of either sign take one byte.
+	 */
+	public PayloadBuffer putVarint(int v) {
+		ensure(5);
+		int zz = (v << 1) ^ (v >> 31);
+		while ((zz & ~0x7F) != 0) {
+			_buf[_pos++] = (byte) ((zz & 0x7F) | 0x80);
+			zz >>>= 7;
+		}
+		_buf[_pos++] = (byte) zz;
+		return this;
+	}
+
+	public PayloadBuffer putAscii(String s) {
+		int n = s.length();
+		ensure(n);
+		for (int i = 0; i < n; i++) {
+			_buf[_pos++] = (byte) s.charAt(i);
+		}
+		return this;
+	}
+
+	public PayloadBuffer putDecimal(long v) {
+		if (v == Long.MIN_VALUE) {
+			return putAscii(Long.toString(v));
+		}
+		ensure(20);
+		if (v < 0) {
+			_buf[_pos++] = '-';
+			v = -v;
+		}
+		int start = _pos;
+		do {
+			_buf[_pos++] = (byte) ('0' + v % 10);
+			v /= 10;
+		} while (v != 0);
+		for (int i = start, j = _pos - 1; i < j; i++, j--) {
+			byte t = _buf[i];
+			_buf[i] = _buf[j];
+			_buf[j] = t;
+		}
+		return this;
+	}
+
+	/**
+	 * A decimal the way vital sign values are published: integral values
+	 * without a fraction.
+	 */
+	public PayloadBuffer putDecimal(double v) {
+		long l = (long) v;
+		return l == v ? putDecimal(l) : putAscii(Double.toString(v));
+	}
+
+	public PayloadBuffer putJsonString(String s) {
+		put((byte) '"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				put((byte) '\\').put((byte) c);
+			} else if (c < 0x20 || c > 0x7E) {
+				putAscii(String.format("\\u%04x", (int) c));
+			} else {
+				put((byte) c);
+			}
+		}
+		return put((byte) '"');
+	}
+}
@@ -0,0 +1,216 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+import io.hankers.mdi.mdi_utils.MqttPublisher;
+import io.hankers.mdi.mindray.t1.Models.HL7Message;
+
+/**
+ * Serializes messages and hands them to a {@link PayloadSink}. With
+ * publish.batch.bytes or publish.batch.ms set, messages are collected into one
+ * payload that is published when it reaches the size or when the window
+ * expires, whichever comes first. Without them every message is published on
+ * its own, exactly as before.
+ */
+public class PayloadPublisher {
+	private static PayloadPublisher _default;
+	private static PayloadSink _defaultSink;
+
+	final PayloadSerializer _serializer;
+	final PayloadSink _sink;
+	final int _batchBytes;
+	final long _batchMillis;
+	private final PayloadBuffer _buf = new PayloadBuffer();
+	private int _count;
+	private ScheduledExecutorService _timer;
+
+	/**
+	 * Called by every publisher thread, see publish.threads.
+	 */
+	public interface PayloadSink {
+		void publish(byte[] buf, int offset, int length, boolean text);
+	}
+
+	/**
+	 * A sink that can tell whether publishing now would reach the broker.
+	 */
+	public interface ConnectedSink extends PayloadSink {
+		boolean isConnected();
+	}
+
+	/**
+	 * mdi_utils publishes Strings: text goes as is, binary as Base64. It is
+	 * connected as far as MqttPublisher.isConnected() says, where the
+	 * mdi_utils version has it, and always otherwise.
+	 */
+	public static class MqttSink implements ConnectedSink {
+		private static final Method IS_CONNECTED = connectedProbe();
+
+		static Method connectedProbe() {
+			try {
+				Method m = MqttPublisher.class.getMethod("isConnected");
+				if (Modifier.isStatic(m.getModifiers()) && m.getReturnType() == boolean.class) {
+					return m;
+				}
+			} catch (NoSuchMethodException e) {
+				// older mdi_utils
+			}
+			return null;
+		}
+
+		public boolean isConnected() {
+			if (IS_CONNECTED == null) {
+				return true;
+			}
+			try {
+				return (Boolean) IS_CONNECTED.invoke(null);
+			} catch (Exception e) {
+				return true;
+			}
+		}
+
+		public void publish(byte[] buf, int offset, int length, boolean text) {
+			if (text) {
+				MqttPublisher.addMessage(new String(buf, offset, length, StandardCharsets.UTF_8));
+			} else {
+				byte[] bytes = new byte[length];
+				System.arraycopy(buf, offset, bytes, 0, length);
+				MqttPublisher.addMessage(Base64.getEncoder().encodeToString(bytes));
+			}
+		}
+	}
+
+	public static synchronized PayloadPublisher getDefault() {
+		if (_default == null) {
+			_default = create();
+		}
+		return _default;
+	}
+
+	/**
+	 * @return a configured publisher with a serializer and batch of its own,
+	 *         on the one sink of the process
+	 */
+	static synchronized PayloadPublisher create() {
+		if (_defaultSink == null) {
+			_defaultSink = createSink();
+		}
+		return new PayloadPublisher(createSerializer(T1Config.getString("publish.format", "json")), _defaultSink,
+				T1Config.getInt("publish.batch.bytes", 0), T1Config.getLong("publish.batch.ms", 0));
+	}
+
+	public static void publish(HL7Message msg) {
+		getDefault().add(msg);
+	}
+
+	static PayloadSink createSink() {
+		PayloadSink sink = new MqttSink();
+		String walDir = T1Config.getString("wal.dir", null);
+		if (walDir != null && !walDir.isEmpty()) {
+			try {
+				return WriteAheadSink.create(walDir, sink);
+			} catch (IOException e) {
+				MDILog.e(e);
+			}
+		}
+		return sink;
+	}
+
+	static PayloadSerializer createSerializer(String format) {
+		if ("json".equalsIgnoreCase(format)) {
+			return new PayloadSerializer.Json();
+		} else if ("binary".equalsIgnoreCase(format)) {
+			return new PayloadSerializer.Binary();
+		}
+		try {
+			return Class.forName(format).asSubclass(PayloadSerializer.class).getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			MDILog.e(e);
+			return new PayloadSerializer.Json();
+		}
+	}
+
+	public PayloadPublisher(PayloadSerializer serializer, PayloadSink sink, int batchBytes, long batchMillis) {
+		_serializer = serializer;
+		_sink = sink;
+		_batchBytes = batchBytes;
+		_batchMillis = batchMillis;
+		if (batchMillis > 0) {
+			_timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "publish-batch");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			_timer.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					flush();
+				}
+			}, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	boolean isBatching() {
+		return _batchBytes > 0 || _batchMillis > 0;
+	}
+
+	/**
+	 * Serializes the message, which is then released to its pool.
+	 */
+	public synchronized void add(HL7Message msg) {
+		int mark = _buf.position();
+		if (isBatching()) {
+			if (_count == 0) {
+				_serializer.beginBatch(_buf);
+			} else {
+				_serializer.separator(_buf);
+			}
+		}
+		if (!_serializer.write(msg, _buf)) {
+			_buf.position(mark);
+			msg.release();
+			return;
+		}
+		if (msg._metrics != null) {
+			msg._metrics.onPublished(msg._receivedNanos);
+		}
+		msg.release();
+		_count++;
+		if (!isBatching() || (_batchBytes > 0 && _buf.position() >= _batchBytes)) {
+			flush();
+		}
+	}
+
+	public synchronized void flush() {
+		if (_count == 0) {
+			return;
+		}
+		if (isBatching()) {
+			_serializer.endBatch(_buf);
+		}
+		try {
+			_sink.publish(_buf.array(), 0, _buf.position(), _serializer.isText());
+		} catch (Exception e) {
+			MDILog.e(e);
+		}
+		_buf.clear();
+		_count = 0;
+	}
+
+	public void close() {
+		if (_timer != null) {
+			_timer.shutdown();
+		}
+		flush();
+	}
+}
@@ -0,0 +1,208 @@
+package io.hankers.mdi.mindray.t1;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+import io.hankers.mdi.mindray.t1.Models.HL7Message;
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+
+/**
+ * Encodes messages for publishing. Implementations append to a
+ * {@link PayloadBuffer}; several messages may share one buffer as a batch,
+ * framed by {@link #beginBatch}, {@link #separator} and {@link #endBatch}.
+ * Select one with publish.format: "json", "binary" or a class name.
+ */
+public interface PayloadSerializer {
+
+	/**
+	 * @return whether the payload is text (UTF-8) rather than binary
+	 */
+	boolean isText();
+
+	void beginBatch(PayloadBuffer out);
+
+	void separator(PayloadBuffer out);
+
+	void endBatch(PayloadBuffer out);
+
+	/**
+	 * Appends one message.
+	 *
+	 * @return false if the message had nothing to publish, the caller then
+	 *         discards whatever was appended
+	 */
+	boolean write(HL7Message msg, PayloadBuffer out);
+
+	/**
+	 * The JSON published so far, written without building a DOM. A batch is a
+	 * JSON array of the single-message objects.
+	 */
+	public static class Json implements PayloadSerializer {
+
+		public boolean isText() {
+			return true;
+		}
+
+		public void beginBatch(PayloadBuffer out) {
+			out.put((byte) '[');
+		}
+
+		public void separator(PayloadBuffer out) {
+			out.put((byte) ',');
+		}
+
+		public void endBatch(PayloadBuffer out) {
+			out.put((byte) ']');
+		}
+
+		public boolean write(HL7Message msg, PayloadBuffer out) {
+			if (msg instanceof VitalSign) {
+				return writeVitals((VitalSign) msg, out);
+			} else if (msg instanceof Wave) {
+				return writeWave((Wave) msg, out);
+			}
+			return false;
+		}
+
+		boolean writeVitals(VitalSign vs, PayloadBuffer out) {
+			long published = vs._valid & VitalParams.PUBLISHED_MASK;
+			if (published == 0) {
+				return false;
+			}
+			out.put((byte) '{');
+			while (published != 0) {
+				int slot = Long.numberOfTrailingZeros(published);
+				out.putJsonString(VitalParams.nameOf(slot)).put((byte) ':').put((byte) '"');
+				out.putDecimal(vs._values[slot]).put((byte) '"').put((byte) ',');
+				published &= published - 1;
+			}
+			return endObject(vs, out);
+		}
+
+		boolean writeWave(Wave wave, PayloadBuffer out) {
+			int start = out.position();
+			out.put((byte) '{');
+			WaveChannels channels = wave._values;
+			for (int c = 0; c < channels.size(); c++) {
+				int waveId = channels.id(c);
+				String waveName = Wave.getWaveName(waveId);
+				if (waveName == null || waveName.isEmpty()) {
+					MDILog.i("Unregistered wave id {}", waveId);
+				} else if (channels.count(c) > 0) {
+					WaveResampler r = wave.published(waveId);
+					int[] samples = r.output();
+					int n = r.count();
+					out.putJsonString(waveName).put((byte) ':').put((byte) '[');
+					for (int i = 0; i < n; i++) {
+						if (i > 0) {
+							out.put((byte) ',');
+						}
+						out.putDecimal(samples[i]);
+					}
+					out.put((byte) ']').put((byte) ',');
+				}
+			}
+			if (out.position() == start + 1) {
+				return false;
+			}
+			return endObject(wave, out);
+		}
+
+		private boolean endObject(HL7Message msg, PayloadBuffer out) {
+			if (msg._timestamp > 0) {
+				out.putAscii("\"timestamp\":").putDecimal(msg._timestamp);
+			} else {
+				// drop the trailing comma
+				out.position(out.position() - 1);
+			}
+			out.put((byte) '}');
+			return true;
+		}
+	}
+
+	/**
+	 * Compact little-endian layout. A batch is a 'T' byte, a version byte and the
+	 * records back to back; a record is
+	 *
+	 * <pre>
+	 * u8  type          1 vital signs, 2 wave
+	 * i64 timestamp     ms since epoch, 0 if unknown
+	 * vital signs: u8 count, then count x (u16 OBX parameter id, f32 value)
+	 * wave:        u8 count, then count x (u16 wave id, u16 n, i32 first sample,
+	 *              n - 1 zigzag varint deltas)
+	 * </pre>
+	 *
+	 * Waves are the published (resampled) samples; the deltas of a smooth
+	 * waveform mostly fit one byte.
+	 */
+	public static class Binary implements PayloadSerializer {
+		public static final byte MAGIC = 'T';
+		public static final byte VERSION = 1;
+		public static final byte TYPE_VITALS = 1;
+		public static final byte TYPE_WAVE = 2;
+
+		public boolean isText() {
+			return false;
+		}
+
+		public void beginBatch(PayloadBuffer out) {
+			out.put(MAGIC).put(VERSION);
+		}
+
+		public void separator(PayloadBuffer out) {
+		}
+
+		public void endBatch(PayloadBuffer out) {
+		}
+
+		public boolean write(HL7Message msg, PayloadBuffer out) {
+			if (msg instanceof VitalSign) {
+				return writeVitals((VitalSign) msg, out);
+			} else if (msg instanceof Wave) {
+				return writeWave((Wave) msg, out);
+			}
+			return false;
+		}
+
+		boolean writeVitals(VitalSign vs, PayloadBuffer out) {
+			long published = vs._valid & VitalParams.PUBLISHED_MASK;
+			if (published == 0) {
+				return false;
+			}
+			out.put(TYPE_VITALS).putLongLE(vs._timestamp).put((byte) Long.bitCount(published));
+			while (published != 0) {
+				int slot = Long.numberOfTrailingZeros(published);
+				out.putShortLE(VitalParams.codeOf(slot)).putFloatLE((float) vs._values[slot]);
+				published &= published - 1;
+			}
+			return true;
+		}
+
+		boolean writeWave(Wave wave, PayloadBuffer out) {
+			out.put(TYPE_WAVE).putLongLE(wave._timestamp);
+			int countPos = out.position();
+			out.put((byte) 0);
+			int count = 0;
+			WaveChannels channels = wave._values;
+			for (int c = 0; c < channels.size(); c++) {
+				if (channels.count(c) == 0) {
+					continue;
+				}
+				int waveId = channels.id(c);
+				WaveResampler r = wave.published(waveId);
+				int[] samples = r.output();
+				int n = r.count();
+				if (n == 0) {
+					continue;
+				}
+				out.putShortLE(waveId).putShortLE(n).putIntLE(samples[0]);
+				for (int i = 1; i < n; i++) {
+					out.putVarint(samples[i] - samples[i - 1]);
+				}
+				count++;
+			}
+			out.array()[countPos] = (byte) count;
+			return count > 0;
+		}
+	}
+}
@@ -0,0 +1,319 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+
+/**
+ * Hands decoded messages from the reader threads to one publishing thread, so
+ * a slow broker does not stall capture. There are publish.threads queues (by
+ * default one, or decode.threads), each with its own thread and
+ * {@link PayloadPublisher}, so resampling and serialization scale with the
+ * decoding; a session keeps the queue it was given, which keeps its messages
+ * in order. Waves and vital signs have separate bounded rings with their own
+ * overflow policy:
+ * <ul>
+ * <li>publish.queue.waves: drop-oldest (default) discards the oldest queued
+ * wave, block refuses the wave while the ring is full</li>
+ * <li>publish.queue.vitals: coalesce (default) merges vital signs the
+ * publisher has not picked up yet into one per monitor, latest value per
+ * parameter; block queues every message and refuses it while the ring is
+ * full</li>
+ * </ul>
+ * A refused message stays with the reader, which stops reading its monitor
+ * until the message is taken, the offer never waits on the reader's thread.
+ * publish.queue.capacity=0 publishes on the reader thread as before.
+ */
+public class PublishQueue {
+	private static PublishQueue[] _defaults;
+	private static boolean _defaultResolved;
+	private static int _next;
+
+	final PayloadPublisher _publisher;
+	final boolean _dropOldestWave;
+	final boolean _coalesceVitals;
+	final Ring _waves;
+	// VitalSign, or a Coalescer with vital signs waiting when coalescing
+	final Ring _vitals;
+	// coalescers that found the ring full, at most one entry per monitor
+	final Queue<Coalescer> _overflow = new ConcurrentLinkedQueue<Coalescer>();
+	private final Thread _consumer;
+	private volatile boolean _sleeping;
+	private volatile boolean _running = true;
+
+	final AtomicLong _droppedWaves = new AtomicLong();
+	final AtomicLong _coalescedVitals = new AtomicLong();
+	final AtomicLong _blocked = new AtomicLong();
+	final AtomicLong _published = new AtomicLong();
+
+	/**
+	 * The vital signs of one monitor waiting for the publisher.
+	 */
+	public static class Coalescer {
+		final AtomicReference<VitalSign> _pending = new AtomicReference<VitalSign>();
+		final AtomicBoolean _queued = new AtomicBoolean();
+	}
+
+	/**
+	 * @return the next of the configured queues in turn, or null when messages
+	 *         are published on the reader thread
+	 */
+	public static synchronized PublishQueue getDefault() {
+		if (!_defaultResolved) {
+			_defaultResolved = true;
+			int capacity = T1Config.getInt("publish.queue.capacity", 1024);
+			if (capacity > 0) {
+				int threads = T1Config.getInt("publish.threads", T1Config.getInt("decode.threads", 0));
+				_defaults = new PublishQueue[Math.max(1, threads)];
+				for (int i = 0; i < _defaults.length; i++) {
+					_defaults[i] = new PublishQueue(i == 0 ? PayloadPublisher.getDefault() : PayloadPublisher.create(),
+							capacity, !"block".equals(T1Config.getString("publish.queue.waves", "drop-oldest")),
+							!"block".equals(T1Config.getString("publish.queue.vitals", "coalesce")));
+				}
+			}
+		}
+		return _defaults == null ? null : _defaults[_next++ % _defaults.length];
+	}
+
+	public PublishQueue(PayloadPublisher publisher, int capacity, boolean dropOldestWave, boolean coalesceVitals) {
+		_publisher = publisher;
+		_dropOldestWave = dropOldestWave;
+		_coalesceVitals = coalesceVitals;
+		_waves = new Ring(capacity);
+		_vitals = new Ring(capacity);
+		_consumer = new Thread("publish-queue") {
+			public void run() {
+				consume();
+			}
+		};
+		_consumer.setDaemon(true);
+		_consumer.start();
+	}
+
+	/**
+	 * @return false when the queue blocks and is full, the wave is not taken
+	 *         and is to be offered again
+	 */
+	public boolean offer(Wave wave) {
+		while (!_waves.offer(wave)) {
+			if (!_dropOldestWave) {
+				return refuse();
+			}
+			Object dropped = _waves.poll();
+			if (dropped != null) {
+				((Wave) dropped).release();
+				_droppedWaves.incrementAndGet();
+			}
+		}
+		wakeConsumer();
+		return true;
+	}
+
+	/**
+	 * @param coalescer the monitor's, used only when coalescing; one producer
+	 *                  per coalescer
+	 * @return false when the queue blocks and is full, the vital sign is not
+	 *         taken and is to be offered again; always true when coalescing
+	 */
+	public boolean offer(Coalescer coalescer, VitalSign vs) {
+		if (!_coalesceVitals) {
+			if (!_vitals.offer(vs)) {
+				return refuse();
+			}
+			wakeConsumer();
+			return true;
+		}
+		VitalSign older = coalescer._pending.getAndSet(null);
+		if (older != null) {
+			// the publisher has not taken it yet, the newer values win
+			older.merge(vs);
+			older._timestamp = vs._timestamp;
+			vs.release();
+			vs = older;
+			_coalescedVitals.incrementAndGet();
+		}
+		coalescer._pending.set(vs);
+		// at most one token per coalescer is queued, the consumer clears the
+		// flag before it takes the pending value
+		if (coalescer._queued.compareAndSet(false, true)) {
+			if (!_vitals.offer(coalescer)) {
+				// more monitors than ring slots
+				_overflow.add(coalescer);
+			}
+			wakeConsumer();
+		}
+		return true;
+	}
+
+	private boolean refuse() {
+		_blocked.incrementAndGet();
+		wakeConsumer();
+		return false;
+	}
+
+	private void wakeConsumer() {
+		if (_sleeping) {
+			LockSupport.unpark(_consumer);
+		}
+	}
+
+	void consume() {
+		while (_running) {
+			if (drainOnce() == 0) {
+				_sleeping = true;
+				if (_waves.isEmpty() && _vitals.isEmpty() && _overflow.isEmpty()) {
+					LockSupport.parkNanos(10000000L);
+				}
+				_sleeping = false;
+			}
+		}
+		drainOnce();
+		_publisher.flush();
+	}
+
+	private int drainOnce() {
+		int n = 0;
+		Object o;
+		while ((o = _vitals.poll()) != null || (o = _overflow.poll()) != null) {
+			if (o instanceof Coalescer) {
+				Coalescer c = (Coalescer) o;
+				c._queued.set(false);
+				o = c._pending.getAndSet(null);
+				if (o == null) {
+					continue;
+				}
+			}
+			publish((VitalSign) o);
+			n++;
+		}
+		// interleave, so a wave backlog does not hold vital signs back
+		for (int i = 0; i < 64 && (o = _waves.poll()) != null; i++) {
+			publish((Wave) o);
+			n++;
+		}
+		return n;
+	}
+
+	private void publish(Models.HL7Message msg) {
+		try {
+			_publisher.add(msg);
+			_published.incrementAndGet();
+		} catch (Exception e) {
+			MDILog.e(e);
+		}
+	}
+
+	public void shutdown() {
+		_running = false;
+		LockSupport.unpark(_consumer);
+		try {
+			_consumer.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public int depth() {
+		return _waves.size() + _vitals.size() + _overflow.size();
+	}
+
+	public long droppedWaves() {
+		return _droppedWaves.get();
+	}
+
+	public long coalescedVitals() {
+		return _coalescedVitals.get();
+	}
+
+	/**
+	 * @return how often a message was refused as the queue was full
+	 */
+	public long blocked() {
+		return _blocked.get();
+	}
+
+	public long published() {
+		return _published.get();
+	}
+
+	/**
+	 * Bounded lock-free multi-producer multi-consumer ring (Vyukov): each cell
+	 * carries a sequence that tells whose turn it is. Producers also poll, to
+	 * drop the oldest entry.
+	 */
+	static final class Ring {
+		final Object[] _items;
+		final AtomicLongArray _seq;
+		final int _mask;
+		final AtomicLong _tail = new AtomicLong();
+		final AtomicLong _head = new AtomicLong();
+
+		Ring(int capacity) {
+			int size = 2;
+			while (size < capacity) {
+				size <<= 1;
+			}
+			_items = new Object[size];
+			_seq = new AtomicLongArray(size);
+			_mask = size - 1;
+			for (int i = 0; i < size; i++) {
+				_seq.set(i, i);
+			}
+		}
+
+		boolean offer(Object item) {
+			while (true) {
+				long tail = _tail.get();
+				int index = (int) tail & _mask;
+				long diff = _seq.get(index) - tail;
+				if (diff == 0) {
+					if (_tail.compareAndSet(tail, tail + 1)) {
+						_items[index] = item;
+						_seq.lazySet(index, tail + 1);
+						return true;
+					}
+				} else if (diff < 0) {
+					return false;
+				}
+			}
+		}
+
+		Object poll() {
+			while (true) {
+				long head = _head.get();
+				int index = (int) head & _mask;
+				long diff = _seq.get(index) - (head + 1);
+				if (diff == 0) {
+					if (_head.compareAndSet(head, head + 1)) {
+						Object item = _items[index];
+						_items[index] = null;
+						_seq.lazySet(index, head + _mask + 1);
+						return item;
+					}
+				} else if (diff < 0) {
+					return null;
+				}
+			}
+		}
+
+		boolean isEmpty() {
+			return _head.get() >= _tail.get();
+		}
+
+		int size() {
+			return (int) Math.max(0, _tail.get() - _head.get());
+		}
+
+		int capacity() {
+			return _items.length;
+		}
+	}
+}
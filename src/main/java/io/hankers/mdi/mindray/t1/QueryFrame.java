@@ -0,0 +1,122 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.TimeZone;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * The QRY^R02 wave query a connection sends with every heartbeat, encoded
+ * once as an MLLP frame. By default it is the query the gateway always sent,
+ * byte for byte: all waves, and the QRD-2 time and QRD-4 id left as the
+ * literal {} they always went out as. Two switches change it:
+ * <ul>
+ * <li>query.stamp: each send patches the query time (QRD-2, 17 digits) and
+ * id (QRD-4, Q and a 10-digit sequence) in place, in the same buffer, so a
+ * beat still allocates nothing</li>
+ * <li>query.waves.select: the first QRF-5 component, 0&amp;0 (all waves), is
+ * replaced by the ids of query.waves.&lt;ip&gt; or query.waves, a comma list
+ * of {@link WaveRegistry} names or ids joined by &amp;; none resolving asks
+ * for all</li>
+ * </ul>
+ * Not thread-safe, one per connection.
+ */
+public class QueryFrame {
+	static final String ALL_WAVES = "0&0";
+	// what String.format left of the {} placeholders the query was built with
+	static final String UNSTAMPED = "{}";
+	static final int TIME_DIGITS = 17;
+	static final int ID_DIGITS = 10;
+
+	private final byte[] _bytes;
+	private final ByteBuffer _frame;
+	private final boolean _stamp;
+	private final int _timeAt;
+	private final int _idAt;
+	private final HL7Time _time;
+	private long _sequence;
+
+	/**
+	 * @return the query of the monitor at the ip
+	 */
+	static QueryFrame forMonitor(String ip) {
+		String waves = ALL_WAVES;
+		if (T1Config.getBoolean("query.waves.select", false)) {
+			waves = waves(T1Config.getString("query.waves." + ip, T1Config.getString("query.waves", "")));
+		}
+		return new QueryFrame(waves, TimeZone.getDefault(), T1Config.getBoolean("query.stamp", false));
+	}
+
+	/**
+	 * @param waves the first QRF-5 component, {@link #ALL_WAVES} or ids
+	 *              joined by &amp;
+	 * @param zone  of the query time, the monitor's
+	 * @param stamp whether to fill in the query time and id
+	 */
+	public QueryFrame(String waves, TimeZone zone, boolean stamp) {
+		_stamp = stamp;
+		_time = stamp ? new HL7Time(zone) : null;
+		String head = "\u000BMSH|^~\\&|||||||QRY^R02|1203|P|2.3.1\rQRD|";
+		String time = stamp ? "00000000000000000" : UNSTAMPED;
+		String middle = "|R|I|Q";
+		String id = stamp ? "0000000000" : UNSTAMPED;
+		String tail = "|||||RES\rQRF|MON||||" + waves + "^1^1^1^\r\u001C\r";
+		_bytes = (head + time + middle + id + tail).getBytes(StandardCharsets.US_ASCII);
+		_timeAt = head.length();
+		_idAt = _timeAt + time.length() + middle.length();
+		_frame = ByteBuffer.wrap(_bytes);
+	}
+
+	/**
+	 * Resolves a comma list of wave names or ids, skipping with a warning
+	 * what does not resolve.
+	 *
+	 * @return the first QRF-5 component, {@link #ALL_WAVES} when none resolve
+	 */
+	static String waves(String list) {
+		WaveRegistry registry = WaveRegistry.getDefault();
+		StringBuilder sb = new StringBuilder();
+		for (String part : list.split(",")) {
+			part = part.trim();
+			if (part.isEmpty()) {
+				continue;
+			}
+			int id;
+			if (Character.isDigit(part.charAt(0))) {
+				try {
+					id = Integer.parseInt(part);
+				} catch (NumberFormatException e) {
+					MDILog.w("Invalid wave id {} in query.waves", part);
+					continue;
+				}
+			} else {
+				id = registry.id(part);
+				if (id < 0) {
+					MDILog.w("Unknown wave {} in query.waves", part);
+					continue;
+				}
+			}
+			if (sb.length() > 0) {
+				sb.append('&');
+			}
+			sb.append(id);
+		}
+		return sb.length() == 0 ? ALL_WAVES : sb.toString();
+	}
+
+	/**
+	 * Stamps the query with the time and the next id, when stamping. The
+	 * previous frame must be written out, as this is the same buffer.
+	 *
+	 * @return the frame, positioned at its start
+	 */
+	public ByteBuffer encode(long millis) {
+		if (_stamp) {
+			_time.format(millis, _bytes, _timeAt);
+			HL7Time.digits(++_sequence, ID_DIGITS, _bytes, _idAt);
+		}
+		_frame.clear();
+		return _frame;
+	}
+}
@@ -0,0 +1,39 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delays between connection attempts to one monitor: doubling from
+ * reconnect.min.ms (100) up to reconnect.max.ms (30000), each drawn between
+ * half the ceiling and the ceiling, so that monitors lost together do not
+ * retry in lockstep. Reset once a connection delivers data rather than when
+ * it is accepted, so a monitor that accepts and drops is not hammered. Used
+ * by one thread.
+ */
+public class ReconnectBackoff {
+	final long _min;
+	final long _max;
+	private long _ceiling;
+
+	public ReconnectBackoff() {
+		this(T1Config.getLong("reconnect.min.ms", 100), T1Config.getLong("reconnect.max.ms", 30000));
+	}
+
+	public ReconnectBackoff(long min, long max) {
+		_min = Math.max(1, min);
+		_max = Math.max(_min, max);
+	}
+
+	/**
+	 * @return millis to wait before the next attempt
+	 */
+	public long next() {
+		_ceiling = _ceiling == 0 ? _min : Math.min(_max, _ceiling * 2);
+		long half = _ceiling / 2;
+		return half + ThreadLocalRandom.current().nextLong(_ceiling - half + 1);
+	}
+
+	public void reset() {
+		_ceiling = 0;
+	}
+}
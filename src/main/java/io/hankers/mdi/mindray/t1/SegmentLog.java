@@ -0,0 +1,393 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * Append-only log of encoded payloads in memory-mapped segment files, read
+ * back in order through a persistent cursor. A record is
+ *
+ * <pre>
+ * i32 length    payload bytes, 0 or less ends the segment
+ * i32 crc32     of the payload
+ * u8  flags     1 text
+ * payload
+ * </pre>
+ *
+ * Segments are named after the log offset of their first byte. Appends only
+ * write to the mapping; {@link #sync()} forces it to disk, writes the cursor
+ * and deletes segments that are read, older than maxAgeMillis or beyond
+ * maxBytes. A reopened log scans the last segment to its first bad record and
+ * continues in a new segment, so a torn tail is never read.
+ */
+public class SegmentLog implements Closeable {
+	static final int HEADER = 9;
+	static final int FLAG_TEXT = 1;
+	static final String SUFFIX = ".log";
+	static final String CURSOR = "cursor";
+
+	final File _dir;
+	final int _segmentBytes;
+	final long _maxBytes;
+	final long _maxAgeMillis;
+	final TreeMap<Long, Segment> _segments = new TreeMap<Long, Segment>();
+	Segment _active;
+	// the segment at the cursor
+	private Segment _reading;
+	long _cursor;
+	private long _peekNext = -1;
+	private long _syncedCursor = -1;
+	private final FileChannel _cursorFile;
+	private final ByteBuffer _cursorBuf = ByteBuffer.allocate(8);
+	private final CRC32 _crc = new CRC32();
+	private final Object _syncLock = new Object();
+	private long _evictedBytes;
+	private boolean _closed;
+
+	static class Segment {
+		final long _base;
+		final File _file;
+		MappedByteBuffer _map;
+		// readable end, the write position while active
+		int _end;
+		long _modified;
+		// sealed but not forced yet
+		boolean _dirty;
+
+		Segment(long base, File file) {
+			_base = base;
+			_file = file;
+		}
+	}
+
+	public SegmentLog(File dir, int segmentBytes, long maxBytes, long maxAgeMillis) throws IOException {
+		_dir = dir;
+		_segmentBytes = segmentBytes;
+		_maxBytes = maxBytes;
+		_maxAgeMillis = maxAgeMillis;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				String name = f.getName();
+				if (name.endsWith(SUFFIX)) {
+					try {
+						long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+						_segments.put(base, new Segment(base, f));
+					} catch (NumberFormatException e) {
+						MDILog.w("Ignoring {}", f);
+					}
+				}
+			}
+		}
+		long next = 0;
+		Iterator<Segment> it = _segments.values().iterator();
+		while (it.hasNext()) {
+			Segment s = it.next();
+			s._modified = s._file.lastModified();
+			s._map = map(s._file, FileChannel.MapMode.READ_ONLY, s._file.length());
+			s._end = scan(s._map);
+			if (s._end == 0) {
+				unmap(s._map);
+				s._file.delete();
+				it.remove();
+				continue;
+			}
+			next = s._base + s._end;
+		}
+
+		_cursorFile = new RandomAccessFile(new File(dir, CURSOR), "rw").getChannel();
+		if (_cursorFile.read(_cursorBuf, 0) == 8) {
+			_cursor = _cursorBuf.getLong(0);
+		}
+		if (_segments.isEmpty() || _cursor < _segments.firstKey()) {
+			_cursor = _segments.isEmpty() ? next : _segments.firstKey();
+		}
+		_cursor = Math.min(_cursor, next);
+		roll(next);
+	}
+
+	/**
+	 * @return the end of the valid records
+	 */
+	private int scan(ByteBuffer map) {
+		int pos = 0;
+		int limit = map.limit();
+		ByteBuffer payload = map.duplicate();
+		while (pos + HEADER <= limit) {
+			int length = map.getInt(pos);
+			if (length <= 0 || pos + HEADER + length > limit) {
+				break;
+			}
+			payload.limit(pos + HEADER + length).position(pos + HEADER);
+			_crc.reset();
+			_crc.update(payload);
+			if ((int) _crc.getValue() != map.getInt(pos + 4)) {
+				break;
+			}
+			pos += HEADER + length;
+		}
+		return pos;
+	}
+
+	private void roll(long base) throws IOException {
+		if (_active != null) {
+			if (_active._end + 4 <= _segmentBytes) {
+				_active._map.putInt(_active._end, -1);
+			}
+			_active._dirty = true;
+			_active._modified = System.currentTimeMillis();
+		}
+		Segment s = new Segment(base, new File(_dir, String.format("%020d%s", base, SUFFIX)));
+		s._map = map(s._file, FileChannel.MapMode.READ_WRITE, _segmentBytes);
+		s._modified = System.currentTimeMillis();
+		_segments.put(base, s);
+		_active = s;
+	}
+
+	private static MappedByteBuffer map(File file, FileChannel.MapMode mode, long size) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+		try {
+			return raf.getChannel().map(mode, 0, size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return false if the record can never fit a segment or the disk failed
+	 */
+	public synchronized boolean append(byte[] buf, int offset, int length, boolean text) {
+		if (_closed) {
+			return false;
+		}
+		if (length <= 0 || HEADER + length + 4 > _segmentBytes) {
+			MDILog.w("Record of {} bytes does not fit a segment", length);
+			return false;
+		}
+		try {
+			if (_active._end + HEADER + length + 4 > _segmentBytes) {
+				roll(_active._base + _active._end);
+			}
+		} catch (IOException e) {
+			MDILog.e(e);
+			return false;
+		}
+		_crc.reset();
+		_crc.update(buf, offset, length);
+		MappedByteBuffer map = _active._map;
+		int pos = _active._end;
+		map.putInt(pos + 4, (int) _crc.getValue());
+		map.put(pos + 8, (byte) (text ? FLAG_TEXT : 0));
+		map.position(pos + HEADER);
+		map.put(buf, offset, length);
+		// the length goes last, a record is complete once it is set
+		map.putInt(pos, length);
+		_active._end = pos + HEADER + length;
+		return true;
+	}
+
+	/**
+	 * Copies the record at the cursor into out without consuming it.
+	 *
+	 * @return the record flags, or -1 if everything has been read
+	 */
+	public synchronized int peek(PayloadBuffer out) {
+		if (_closed) {
+			return -1;
+		}
+		Segment s = _reading;
+		if (s == null || _cursor < s._base || _cursor > s._base + s._end) {
+			Map.Entry<Long, Segment> entry = _segments.floorEntry(_cursor);
+			s = entry == null ? null : entry.getValue();
+		}
+		while (s != null) {
+			_reading = s;
+			int pos = (int) (_cursor - s._base);
+			if (pos + HEADER <= s._end) {
+				int length = s._map.getInt(pos);
+				s._map.position(pos + HEADER);
+				out.clear();
+				out.put(s._map, length);
+				_peekNext = _cursor + HEADER + length;
+				return s._map.get(pos + 8);
+			}
+			if (s == _active) {
+				return -1;
+			}
+			Map.Entry<Long, Segment> entry = _segments.higherEntry(s._base);
+			s = entry == null ? null : entry.getValue();
+			if (s != null) {
+				_cursor = s._base;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Consumes the record returned by the last {@link #peek}.
+	 */
+	public synchronized void advance() {
+		if (_peekNext >= 0) {
+			_cursor = _peekNext;
+			_peekNext = -1;
+		}
+	}
+
+	/**
+	 * @return bytes appended but not read yet, record headers included
+	 */
+	public synchronized long backlog() {
+		if (_closed) {
+			return 0;
+		}
+		return _active._base + _active._end - _cursor;
+	}
+
+	/**
+	 * @return unread bytes deleted by size or age eviction
+	 */
+	public synchronized long evictedBytes() {
+		return _evictedBytes;
+	}
+
+	public synchronized int segmentCount() {
+		return _segments.size();
+	}
+
+	/**
+	 * Group commit: forces appended records to disk, persists the cursor and
+	 * applies retention. Called periodically rather than per append.
+	 */
+	public void sync() throws IOException {
+		// appends go on while the mapping is forced; only sync and close unmap
+		synchronized (_syncLock) {
+			if (_closed) {
+				return;
+			}
+			List<MappedByteBuffer> maps = new ArrayList<MappedByteBuffer>(2);
+			synchronized (this) {
+				for (Segment s : _segments.values()) {
+					if (s._dirty) {
+						s._dirty = false;
+						maps.add(s._map);
+					}
+				}
+				maps.add(_active._map);
+			}
+			for (MappedByteBuffer map : maps) {
+				map.force();
+			}
+			synchronized (this) {
+				if (_cursor != _syncedCursor) {
+					_cursorBuf.clear();
+					_cursorBuf.putLong(0, _cursor);
+					_cursorFile.write(_cursorBuf, 0);
+					_cursorFile.force(false);
+					_syncedCursor = _cursor;
+				}
+				evict();
+			}
+		}
+	}
+
+	private void evict() {
+		long now = System.currentTimeMillis();
+		long total = 0;
+		for (Segment s : _segments.values()) {
+			total += s._map.capacity();
+		}
+		Iterator<Segment> it = _segments.values().iterator();
+		while (it.hasNext()) {
+			Segment s = it.next();
+			if (s == _active) {
+				break;
+			}
+			long end = s._base + s._end;
+			boolean read = end <= _cursor;
+			if (!read && total <= _maxBytes && now - s._modified <= _maxAgeMillis) {
+				break;
+			}
+			if (!read) {
+				long lost = end - Math.max(_cursor, s._base);
+				_evictedBytes += lost;
+				MDILog.w("Evicting {} unsent bytes in {}", lost, s._file);
+				_cursor = end;
+				_peekNext = -1;
+			}
+			total -= s._map.capacity();
+			if (s == _reading) {
+				_reading = null;
+			}
+			unmap(s._map);
+			s._map = null;
+			if (!s._file.delete()) {
+				MDILog.w("Cannot delete {}", s._file);
+			}
+			it.remove();
+		}
+		if (_cursor < _segments.firstKey()) {
+			_cursor = _segments.firstKey();
+		}
+	}
+
+	public void close() throws IOException {
+		synchronized (_syncLock) {
+			sync();
+			synchronized (this) {
+				for (Segment s : _segments.values()) {
+					unmap(s._map);
+				}
+				_segments.clear();
+				_reading = null;
+				_cursorFile.close();
+				_closed = true;
+			}
+		}
+	}
+
+	/**
+	 * Releases a mapping now instead of at garbage collection, best effort on
+	 * both Java 8 and later.
+	 */
+	static void unmap(MappedByteBuffer map) {
+		if (map == null) {
+			return;
+		}
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), map);
+		} catch (NoSuchMethodException e) {
+			try {
+				Method cleaner = map.getClass().getMethod("cleaner");
+				cleaner.setAccessible(true);
+				Object c = cleaner.invoke(map);
+				c.getClass().getMethod("clean").invoke(c);
+			} catch (Exception e2) {
+				// left to the garbage collector
+			}
+		} catch (Exception e) {
+			// left to the garbage collector
+		}
+	}
+}
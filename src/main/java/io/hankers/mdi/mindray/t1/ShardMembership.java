@@ -0,0 +1,154 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.TreeSet;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * The gateway processes sharing the monitors, found through shard.dir: each
+ * writes &lt;shard.id&gt;.member there every shard.heartbeat.ms (1000) with
+ * the time, and counts the members whose time is within shard.timeout.ms
+ * (5000). A process that stops, or leaves on shutdown, drops out and its
+ * monitors go to the others by the {@link HashRing}. The directory may be
+ * local, for processes on one host, or shared between hosts with synchronized
+ * clocks. Used from one thread.
+ */
+public class ShardMembership {
+	static final String SUFFIX = ".member";
+
+	final File _dir;
+	final String _self;
+	final long _interval;
+	final long _timeout;
+	private long _beatAt;
+	private volatile Set<String> _members = new TreeSet<String>();
+	private HashRing _ring;
+
+	/**
+	 * @return the configured membership, null when shard.dir is not set
+	 */
+	public static ShardMembership getDefault() {
+		String dir = T1Config.getString("shard.dir", null);
+		if (dir == null) {
+			return null;
+		}
+		return new ShardMembership(new File(dir), T1Config.getString("shard.id", defaultId()),
+				T1Config.getLong("shard.heartbeat.ms", 1000), T1Config.getLong("shard.timeout.ms", 5000));
+	}
+
+	/**
+	 * @return host-pid, unique per process
+	 */
+	static String defaultId() {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (IOException e) {
+			host = "localhost";
+		}
+		// pid@host on the usual JVMs
+		String name = ManagementFactory.getRuntimeMXBean().getName();
+		int at = name.indexOf('@');
+		return host + "-" + (at > 0 ? name.substring(0, at) : name);
+	}
+
+	public ShardMembership(File dir, String self, long interval, long timeout) {
+		_dir = dir;
+		_self = self;
+		_interval = interval;
+		_timeout = timeout;
+		_members.add(self);
+		_ring = new HashRing(_members);
+	}
+
+	public String getSelf() {
+		return _self;
+	}
+
+	/**
+	 * Writes this member's time and reads the others' when due.
+	 *
+	 * @return true when the members changed
+	 */
+	public boolean refresh(long now) {
+		if (now < _beatAt) {
+			return false;
+		}
+		_beatAt = now + _interval;
+		beat(now);
+		Set<String> members = new TreeSet<String>();
+		members.add(_self);
+		File[] files = _dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				String name = f.getName();
+				if (name.endsWith(SUFFIX) && alive(f, now)) {
+					members.add(name.substring(0, name.length() - SUFFIX.length()));
+				}
+			}
+		}
+		if (members.equals(_members)) {
+			return false;
+		}
+		MDILog.i("Shard members {}", members);
+		_members = members;
+		_ring = new HashRing(members);
+		return true;
+	}
+
+	private void beat(long now) {
+		// written aside and renamed, so readers never see half a file
+		File tmp = new File(_dir, _self + ".tmp");
+		try {
+			_dir.mkdirs();
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				out.write(Long.toString(now).getBytes(StandardCharsets.US_ASCII));
+			} finally {
+				out.close();
+			}
+			Files.move(tmp.toPath(), new File(_dir, _self + SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			MDILog.w("Cannot write shard member file in {}: {}", _dir, e);
+		}
+	}
+
+	private boolean alive(File f, long now) {
+		try {
+			long time = Long.parseLong(new String(Files.readAllBytes(f.toPath()), StandardCharsets.US_ASCII).trim());
+			return now - time <= _timeout;
+		} catch (IOException | NumberFormatException e) {
+			// gone or being replaced
+			return false;
+		}
+	}
+
+	/**
+	 * Removes this member's file, so the others take over its monitors at
+	 * their next refresh rather than after the timeout.
+	 */
+	public void leave() {
+		new File(_dir, _self + SUFFIX).delete();
+	}
+
+	public Set<String> getMembers() {
+		return _members;
+	}
+
+	/**
+	 * @return whether this process handles the key
+	 */
+	public boolean owns(String key) {
+		return _self.equals(_ring.owner(key));
+	}
+}
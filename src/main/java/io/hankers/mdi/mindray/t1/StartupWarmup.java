@@ -0,0 +1,154 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.nio.charset.StandardCharsets;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * Runs built-in frames through a {@link MonitorSession}, as a monitor's would
+ * go: HL7Utils.create, the wave decode, analytics, resampling and the
+ * configured serializer, into a sink that discards them. Done before the
+ * first connection, with startup.warmup.seconds (0, off) seconds of a bed
+ * with twelve leads, it loads the classes and compiles the hot paths so the
+ * first monitors do not pay for them.
+ * <p>
+ * The same run records a class data sharing archive for faster starts:
+ * with startup.warmup.exit the process exits after it, e.g.
+ *
+ * java -XX:ArchiveClassesAtExit=t1.jsa -Dstartup.warmup.seconds=10
+ * -Dstartup.warmup.exit=true -jar t1.jar
+ *
+ * and later starts add -XX:SharedArchiveFile=t1.jsa (JDK 13 and later).
+ */
+public class StartupWarmup {
+	static final int[] LEADS = { 1101, 1102, 1103, 1104, 1105, 1106, 1107, 1108, 1109, 1110, 1111, 1112 };
+	static final int PLETH = 1152;
+	static final int ECG_RATE = 250;
+	static final int PLETH_RATE = 60;
+
+	/**
+	 * Runs the configured warm-up.
+	 *
+	 * @return false when the process is to exit after it
+	 */
+	static boolean run() {
+		int seconds = T1Config.getInt("startup.warmup.seconds", 0);
+		if (seconds > 0) {
+			long start = System.nanoTime();
+			run(seconds);
+			MDILog.i("Warmed up with {} s of frames in {} ms", seconds, (System.nanoTime() - start) / 1000000);
+		}
+		return !T1Config.getBoolean("startup.warmup.exit", false);
+	}
+
+	/**
+	 * Runs the seconds of one bed's frames through a session of its own.
+	 *
+	 * @return the payloads serialized
+	 */
+	public static long run(int seconds) {
+		final long[] payloads = new long[1];
+		PayloadPublisher publisher = new PayloadPublisher(
+				PayloadPublisher.createSerializer(T1Config.getString("publish.format", "json")),
+				new PayloadPublisher.PayloadSink() {
+					public void publish(byte[] buf, int offset, int length, boolean text) {
+						payloads[0]++;
+					}
+				}, 0, 0);
+		PublishQueue queue = new PublishQueue(publisher, 1024, false, false);
+		try {
+			MonitorSession session = new MonitorSession(queue, null);
+			byte[][] waves = new byte[LEADS.length + 1][];
+			for (int i = 0; i < LEADS.length; i++) {
+				waves[i] = wave(LEADS[i], ECG_RATE);
+			}
+			waves[LEADS.length] = wave(PLETH, PLETH_RATE);
+			// a second's data apart, stamped by the monitor
+			long base = 1539137410000L;
+			HL7Time time = new HL7Time();
+			byte[] stamp = new byte[17];
+			for (int s = 0; s < seconds; s++) {
+				time.format(base + s * 1000L, stamp, 0);
+				byte[] vitals = vitals(new String(stamp, 0, 14, StandardCharsets.US_ASCII), s);
+				offer(session, vitals);
+				for (byte[] wave : waves) {
+					offer(session, wave);
+				}
+			}
+			// drains the queue
+			while (queue.depth() > 0) {
+				Thread.yield();
+			}
+		} finally {
+			queue.shutdown();
+		}
+		return payloads[0];
+	}
+
+	/**
+	 * Hands the frame over, waiting while the queue refuses it.
+	 */
+	private static void offer(MonitorSession session, byte[] frame) {
+		while (!session.onFrame(frame, 1, frame.length - 3, System.nanoTime())) {
+			Thread.yield();
+		}
+	}
+
+	static byte[] vitals(String time, int second) {
+		StringBuilder sb = new StringBuilder(256).append("MSH|^~\\&|||||||ORU^R01|204|P|2.3.1|\r");
+		obx(sb, 101, "HR", 70 + second % 5, time);
+		obx(sb, 151, "RR", 16, time);
+		obx(sb, 160, "SpO2", 97 + second % 2, time);
+		obx(sb, 200, "T1", "36.5", time);
+		return frame(sb.toString());
+	}
+
+	private static void obx(StringBuilder sb, int id, String name, Object value, String time) {
+		sb.append("OBX||NM|").append(id).append('^').append(name).append("|2101|").append(value)
+				.append("||||||F|||").append(time).append('\r');
+	}
+
+	private static byte[] frame(String payload) {
+		return MllpFramer.frame(payload.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * A ZMW message of one second of a beat on a 2048 baseline, with 2-byte
+	 * samples whose bytes are all plain ASCII, so the packed payload carries
+	 * no MLLP or segment delimiter.
+	 */
+	static byte[] wave(int waveId, int rate) {
+		int[] unpacked = new int[WaveDecoder.HEADER + rate * 2];
+		unpacked[2] = waveId >> 8;
+		unpacked[3] = waveId & 0xFF;
+		unpacked[4] = 2;
+		unpacked[5] = rate >> 8;
+		unpacked[6] = rate & 0xFF;
+		for (int i = 0; i < rate; i++) {
+			double t = (double) i / rate;
+			int low = 0x20 + (int) (0x5F * Math.exp(-Math.pow((t - 0.3) * 40, 2)));
+			unpacked[WaveDecoder.HEADER + i * 2] = 0x08;
+			unpacked[WaveDecoder.HEADER + i * 2 + 1] = Math.min(0x7E, low);
+		}
+		// 7 bytes with the high bits cleared, then their high bits
+		int groups = (unpacked.length + 6) / 7;
+		int rem = unpacked.length % 7;
+		byte[] packed = new byte[rem == 0 ? groups * 8 : (groups - 1) * 8 + rem + 1];
+		for (int g = 0; g < groups; g++) {
+			int n = Math.min(7, unpacked.length - g * 7);
+			int hi = 0;
+			for (int i = 0; i < n; i++) {
+				int b = unpacked[g * 7 + i];
+				packed[g * 8 + i] = (byte) (b & 0x7F);
+				hi |= ((b >> 7) & 1) << i;
+			}
+			packed[g * 8 + n] = (byte) hi;
+		}
+		String head = "MSH|^~\\&|||||||ORU^R01|157|P|2.3.1|\rZMW|";
+		byte[] payload = new byte[head.length() + packed.length + 1];
+		System.arraycopy(head.getBytes(StandardCharsets.US_ASCII), 0, payload, 0, head.length());
+		System.arraycopy(packed, 0, payload, head.length(), packed.length);
+		payload[payload.length - 1] = '\r';
+		return MllpFramer.frame(payload);
+	}
+}
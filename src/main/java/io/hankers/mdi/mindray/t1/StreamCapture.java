@@ -0,0 +1,200 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * Records the raw byte stream of one monitor connection to a file, as read
+ * from the socket, with the time of every read so that it can be replayed at
+ * its original pace. Enabled by capture.dir, one file per connection named
+ * after the monitor and the start time. The file is a header followed by
+ * records of i64 nanos since the start, i32 length and the bytes, big-endian.
+ * Written on the reader thread through a buffer, flushed every second and
+ * when the connection closes. Not thread-safe.
+ */
+public class StreamCapture {
+	static final byte[] MAGIC = "MLLPCAP1".getBytes(StandardCharsets.US_ASCII);
+	static final int RECORD_HEADER = 12;
+	static final long FLUSH_NANOS = 1000000000L;
+
+	final File _file;
+	// a stream rather than its channel, which closes when the event loop
+	// thread is interrupted at shutdown
+	private final FileOutputStream _out;
+	private final ByteBuffer _buf = ByteBuffer.allocate(64 << 10);
+	private final long _start = System.nanoTime();
+	private long _lastFlush = _start;
+	private boolean _failed;
+
+	/**
+	 * @param name the monitor, e.g. ip:port
+	 * @return a capture in capture.dir, null when capture is off or the file
+	 *         cannot be created
+	 */
+	public static StreamCapture open(String name) {
+		String dir = T1Config.getString("capture.dir", null);
+		if (dir == null) {
+			return null;
+		}
+		File file = new File(dir, name.replace(':', '_') + "-" + System.currentTimeMillis() + ".mllp");
+		try {
+			file.getParentFile().mkdirs();
+			return new StreamCapture(file);
+		} catch (IOException e) {
+			MDILog.e(e);
+			return null;
+		}
+	}
+
+	public StreamCapture(File file) throws IOException {
+		_file = file;
+		_out = new FileOutputStream(file);
+		_buf.put(MAGIC);
+	}
+
+	public File getFile() {
+		return _file;
+	}
+
+	/**
+	 * Appends one read. A failed write is logged once and stops the capture,
+	 * the connection carries on.
+	 */
+	public void write(byte[] src, int offset, int length) {
+		if (_failed) {
+			return;
+		}
+		long now = System.nanoTime();
+		try {
+			if (_buf.remaining() < RECORD_HEADER) {
+				drain();
+			}
+			_buf.putLong(now - _start).putInt(length);
+			while (length > 0) {
+				if (!_buf.hasRemaining()) {
+					drain();
+				}
+				int n = Math.min(length, _buf.remaining());
+				_buf.put(src, offset, n);
+				offset += n;
+				length -= n;
+			}
+			if (now - _lastFlush > FLUSH_NANOS) {
+				flush();
+			}
+		} catch (IOException e) {
+			MDILog.e(e);
+			_failed = true;
+		}
+	}
+
+	private void drain() throws IOException {
+		_out.write(_buf.array(), 0, _buf.position());
+		_buf.clear();
+	}
+
+	public void flush() {
+		if (_failed) {
+			return;
+		}
+		try {
+			drain();
+			_lastFlush = System.nanoTime();
+		} catch (IOException e) {
+			MDILog.e(e);
+			_failed = true;
+		}
+	}
+
+	public void close() {
+		flush();
+		try {
+			_out.close();
+		} catch (IOException e) {
+			MDILog.w(e);
+		}
+	}
+
+	/**
+	 * Reads a capture back one record at a time, reusing its buffer.
+	 */
+	public static class Reader {
+		private final FileInputStream _in;
+		private final FileChannel _channel;
+		private final ByteBuffer _header = ByteBuffer.allocate(RECORD_HEADER);
+		private byte[] _data = new byte[4096];
+		private long _nanos;
+		private int _length;
+
+		public Reader(File file) throws IOException {
+			_in = new FileInputStream(file);
+			_channel = _in.getChannel();
+			ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+			if (!readFully(magic) || !ByteBuffer.wrap(MAGIC).equals(magic.flip())) {
+				_in.close();
+				throw new IOException("Not a capture: " + file);
+			}
+		}
+
+		/**
+		 * @return false at the end of the capture
+		 */
+		public boolean next() throws IOException {
+			_header.clear();
+			if (!readFully(_header)) {
+				return false;
+			}
+			_nanos = _header.getLong(0);
+			_length = _header.getInt(8);
+			if (_length < 0) {
+				throw new IOException("Corrupt record length " + _length);
+			}
+			if (_data.length < _length) {
+				_data = new byte[Math.max(_length, _data.length * 2)];
+			}
+			if (!readFully(ByteBuffer.wrap(_data, 0, _length))) {
+				throw new EOFException("Capture ends within a record");
+			}
+			return true;
+		}
+
+		private boolean readFully(ByteBuffer dst) throws IOException {
+			while (dst.hasRemaining()) {
+				if (_channel.read(dst) < 0) {
+					if (dst.position() == 0) {
+						return false;
+					}
+					throw new EOFException("Capture ends within a record");
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return when the bytes were read, in nanos since the capture started
+		 */
+		public long nanos() {
+			return _nanos;
+		}
+
+		public byte[] data() {
+			return _data;
+		}
+
+		public int length() {
+			return _length;
+		}
+
+		public void close() throws IOException {
+			_in.close();
+		}
+	}
+}
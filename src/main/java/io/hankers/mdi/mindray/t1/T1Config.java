@@ -0,0 +1,69 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.InputStream;
+import java.util.Properties;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * Module settings read from config.properties, overridable by -D system
+ * properties of the same name.
+ */
+public class T1Config {
+	private static final Properties _props = new Properties();
+
+	static {
+		InputStream ins = T1Config.class.getResourceAsStream("/config.properties");
+		if (ins != null) {
+			try {
+				_props.load(ins);
+				ins.close();
+			} catch (Exception e) {
+				MDILog.w(e);
+			}
+		}
+	}
+
+	public static String getString(String key, String def) {
+		String val = System.getProperty(key);
+		if (val == null) {
+			val = _props.getProperty(key);
+		}
+		return val == null || val.trim().isEmpty() ? def : val.trim();
+	}
+
+	public static int getInt(String key, int def) {
+		String val = getString(key, null);
+		try {
+			return val == null ? def : Integer.parseInt(val);
+		} catch (NumberFormatException e) {
+			MDILog.w("Invalid {}={}", key, val);
+			return def;
+		}
+	}
+
+	public static long getLong(String key, long def) {
+		String val = getString(key, null);
+		try {
+			return val == null ? def : Long.parseLong(val);
+		} catch (NumberFormatException e) {
+			MDILog.w("Invalid {}={}", key, val);
+			return def;
+		}
+	}
+
+	public static double getDouble(String key, double def) {
+		String val = getString(key, null);
+		try {
+			return val == null ? def : Double.parseDouble(val);
+		} catch (NumberFormatException e) {
+			MDILog.w("Invalid {}={}", key, val);
+			return def;
+		}
+	}
+
+	public static boolean getBoolean(String key, boolean def) {
+		String val = getString(key, null);
+		return val == null ? def : Boolean.parseBoolean(val);
+	}
+}
@@ -0,0 +1,157 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * Hashed timer wheel on one daemon thread, shared by the heartbeats of every
+ * connection. Scheduling and cancelling are O(1) and thread-safe; tasks run on
+ * the wheel thread and must not block for long, the event loop connections
+ * only hand their beat to their loop.
+ */
+public class TimerWheel {
+	private static TimerWheel _default;
+
+	final long _tickMillis;
+	final Timeout[] _slots;
+	final int _mask;
+	private final Queue<Timeout> _pending = new ConcurrentLinkedQueue<Timeout>();
+	private final Thread _thread;
+	private long _tick;
+	private volatile boolean _running = true;
+
+	/**
+	 * A scheduled task, returned so its owner can cancel it.
+	 */
+	public static class Timeout {
+		final Runnable _task;
+		final long _period;
+		long _deadlineTick;
+		long _rounds;
+		Timeout _next;
+		volatile boolean _cancelled;
+
+		Timeout(Runnable task, long period) {
+			_task = task;
+			_period = period;
+		}
+
+		public void cancel() {
+			_cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return _cancelled;
+		}
+	}
+
+	public static synchronized TimerWheel getDefault() {
+		if (_default == null) {
+			_default = new TimerWheel(10, 512);
+		}
+		return _default;
+	}
+
+	/**
+	 * @param wheelSize rounded up to a power of two
+	 */
+	public TimerWheel(long tickMillis, int wheelSize) {
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		_tickMillis = tickMillis;
+		_slots = new Timeout[size];
+		_mask = size - 1;
+		_thread = new Thread("timer-wheel") {
+			public void run() {
+				turn();
+			}
+		};
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * @param period milliseconds between runs, 0 runs the task once
+	 */
+	public Timeout schedule(Runnable task, long delay, long period) {
+		Timeout t = new Timeout(task, period);
+		// relative until the wheel thread places it, delays round up to a tick
+		t._deadlineTick = (delay + _tickMillis - 1) / _tickMillis;
+		_pending.add(t);
+		return t;
+	}
+
+	void turn() {
+		long start = System.nanoTime();
+		while (_running) {
+			long deadline = start + (_tick + 1) * _tickMillis * 1000000L;
+			long sleep = deadline - System.nanoTime();
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep / 1000000L, (int) (sleep % 1000000L));
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+			_tick++;
+			transferPending();
+			expire(_slots[(int) (_tick & _mask)], (int) (_tick & _mask));
+		}
+	}
+
+	private void transferPending() {
+		Timeout t;
+		while ((t = _pending.poll()) != null) {
+			if (!t._cancelled) {
+				place(t, t._deadlineTick);
+			}
+		}
+	}
+
+	/**
+	 * Wheel thread only. A task due now runs on the next tick.
+	 */
+	private void place(Timeout t, long ticks) {
+		ticks = Math.max(1, ticks);
+		t._deadlineTick = _tick + ticks;
+		t._rounds = (ticks - 1) / _slots.length;
+		int slot = (int) (t._deadlineTick & _mask);
+		t._next = _slots[slot];
+		_slots[slot] = t;
+	}
+
+	private void expire(Timeout head, int slot) {
+		_slots[slot] = null;
+		Timeout t = head;
+		while (t != null) {
+			Timeout next = t._next;
+			t._next = null;
+			if (t._cancelled) {
+				// dropped
+			} else if (t._rounds > 0) {
+				t._rounds--;
+				t._next = _slots[slot];
+				_slots[slot] = t;
+			} else {
+				try {
+					t._task.run();
+				} catch (Exception e) {
+					MDILog.e(e);
+				}
+				if (t._period > 0 && !t._cancelled) {
+					place(t, t._period / _tickMillis);
+				}
+			}
+			t = next;
+		}
+	}
+
+	public void shutdown() {
+		_running = false;
+		_thread.interrupt();
+	}
+}
@@ -0,0 +1,86 @@
+package io.hankers.mdi.mindray.t1;
+
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+
+/**
+ * Change-only publishing of one monitor's vital signs, with vitals.delta set:
+ * a parameter is published only when it moved more than its deadband,
+ * vitals.deadband.&lt;NAME&gt; or vitals.deadband (0, any change), away from
+ * the value last published, and every parameter is published again at least
+ * every vitals.keyframe.ms (60000) of message time. A negative deadband
+ * publishes every value, the default for NIBP, where each one is a new
+ * measurement. The last published values
+ * are a primitive table by {@link VitalParams} slot. Owned by the session.
+ */
+public class VitalDeadband {
+	// the values are decimals, 36.7 - 36.5 is a little over 0.2
+	static final double EPSILON = 1e-9;
+
+	final double[] _deadbands;
+	final long _keyframeInterval;
+	final double[] _last = new double[VitalParams.COUNT];
+	// slots with a value in _last
+	long _published;
+	long _keyframeAt;
+
+	public VitalDeadband() {
+		this(deadbands(), T1Config.getLong("vitals.keyframe.ms", 60000));
+	}
+
+	/**
+	 * @param deadbands by slot
+	 */
+	public VitalDeadband(double[] deadbands, long keyframeInterval) {
+		_deadbands = deadbands;
+		_keyframeInterval = keyframeInterval;
+	}
+
+	/**
+	 * @return the session's filter, null unless vitals.delta is set
+	 */
+	static VitalDeadband create() {
+		return T1Config.getBoolean("vitals.delta", false) ? new VitalDeadband() : null;
+	}
+
+	static double[] deadbands() {
+		double def = T1Config.getDouble("vitals.deadband", 0);
+		double[] ret = new double[VitalParams.COUNT];
+		for (int slot = 0; slot < ret.length; slot++) {
+			String name = VitalParams.nameOf(slot);
+			boolean nibp = slot == VitalParams.SYS || slot == VitalParams.DIA || slot == VitalParams.MEAN;
+			ret[slot] = name == null ? def : T1Config.getDouble("vitals.deadband." + name, nibp ? -1 : def);
+		}
+		return ret;
+	}
+
+	/**
+	 * Clears the parameters that did not change enough, unless a keyframe is
+	 * due, and remembers the ones left as published.
+	 *
+	 * @return false when nothing is left to publish
+	 */
+	public boolean filter(VitalSign vs) {
+		long valid = vs._valid & VitalParams.PUBLISHED_MASK;
+		boolean keyframe = _published == 0 || vs._timestamp - _keyframeAt >= _keyframeInterval
+				|| vs._timestamp < _keyframeAt;
+		if (keyframe) {
+			_keyframeAt = vs._timestamp;
+		}
+		long left = valid;
+		while (valid != 0) {
+			int slot = Long.numberOfTrailingZeros(valid);
+			long bit = 1L << slot;
+			double value = vs._values[slot];
+			if (!keyframe && (_published & bit) != 0 && Math.abs(value - _last[slot]) <= _deadbands[slot] + EPSILON) {
+				vs.clear(slot);
+				left &= ~bit;
+			} else {
+				_last[slot] = value;
+				_published |= bit;
+			}
+			valid &= valid - 1;
+		}
+		return left != 0;
+	}
+}
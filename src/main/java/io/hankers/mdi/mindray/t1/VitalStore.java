@@ -0,0 +1,330 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+
+/**
+ * Recent vital signs of every monitor for trend views, by
+ * {@link VitalParams} slot: the last value of every second and the min, max,
+ * average and last value of every minute and quarter of an hour, kept for
+ * vital.store.raw.seconds (3600), vital.store.minute.hours (24) and
+ * vital.store.quarter.days (7). Rollups are updated as messages arrive, a
+ * query only copies. Monitors that sent nothing for longer than the longest
+ * of these are dropped once a minute.
+ */
+public class VitalStore {
+	public static final int RAW = 0;
+	public static final int MINUTE = 1;
+	public static final int QUARTER = 2;
+	static final long[] RESOLUTION_MILLIS = { 1000, 60 * 1000, 15 * 60 * 1000 };
+
+	private static VitalStore _default;
+	private static boolean _defaultCreated;
+
+	final long[] _retentionMillis;
+	private final ConcurrentHashMap<String, Series> _beds = new ConcurrentHashMap<String, Series>();
+
+	/**
+	 * Buckets of one resolution in a ring, columnar: one array per statistic,
+	 * each parameter's buckets contiguous.
+	 */
+	static class Tier {
+		final long _resolution;
+		final int _capacity;
+		final long[] _bucket;
+		final float[] _min;
+		final float[] _max;
+		final float[] _sum;
+		final int[] _count;
+		final float[] _last;
+
+		Tier(long resolution, long retention, boolean raw) {
+			_resolution = resolution;
+			_capacity = (int) Math.max(1, retention / resolution);
+			_bucket = new long[_capacity];
+			Arrays.fill(_bucket, Long.MIN_VALUE);
+			int n = _capacity * VitalParams.COUNT;
+			_last = new float[n];
+			Arrays.fill(_last, Float.NaN);
+			// one value a second, the raw tier keeps only the last
+			_min = raw ? null : new float[n];
+			_max = raw ? null : new float[n];
+			_sum = raw ? null : new float[n];
+			_count = raw ? null : new int[n];
+		}
+
+		void add(VitalSign vs) {
+			long b = Math.floorDiv(vs._timestamp, _resolution);
+			int idx = (int) Math.floorMod(b, (long) _capacity);
+			if (_bucket[idx] != b) {
+				if (_bucket[idx] > b) {
+					// older than the ring holds
+					return;
+				}
+				_bucket[idx] = b;
+				for (int i = idx; i < _last.length; i += _capacity) {
+					_last[i] = Float.NaN;
+					if (_count != null) {
+						_count[i] = 0;
+					}
+				}
+			}
+			long valid = vs._valid;
+			while (valid != 0) {
+				int slot = Long.numberOfTrailingZeros(valid);
+				valid &= valid - 1;
+				int i = slot * _capacity + idx;
+				float v = (float) vs._values[slot];
+				_last[i] = v;
+				if (_count != null) {
+					if (_count[i]++ == 0) {
+						_min[i] = _max[i] = _sum[i] = v;
+					} else {
+						_min[i] = Math.min(_min[i], v);
+						_max[i] = Math.max(_max[i], v);
+						_sum[i] += v;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Appends the buckets of the parameter starting in [from, to) that have
+		 * a value.
+		 */
+		void query(int slot, long from, long to, Trend into) {
+			long first = Math.floorDiv(from + _resolution - 1, _resolution);
+			long last = Math.floorDiv(to - 1, _resolution);
+			long b = Math.max(first, last - _capacity + 1);
+			int idx = (int) Math.floorMod(b, (long) _capacity);
+			for (; b <= last; b++, idx = idx + 1 == _capacity ? 0 : idx + 1) {
+				int i = slot * _capacity + idx;
+				if (_bucket[idx] != b || Float.isNaN(_last[i])) {
+					continue;
+				}
+				if (_count == null) {
+					into.add(b * _resolution, _last[i], _last[i], _last[i], _last[i]);
+				} else {
+					into.add(b * _resolution, _min[i], _max[i], _sum[i] / _count[i], _last[i]);
+				}
+			}
+		}
+
+		long footprint() {
+			long perSlot = _count == null ? 4 : 20;
+			return _capacity * 8L + (long) _capacity * VitalParams.COUNT * perSlot;
+		}
+	}
+
+	/**
+	 * The tiers of one monitor. Added to by its session, through
+	 * {@link VitalStore#series(String)} each time, queried by any thread.
+	 */
+	public static class Series {
+		final String _name;
+		final long[] _retentionMillis;
+		final Tier[] _tiers = new Tier[RESOLUTION_MILLIS.length];
+		volatile long _newest = Long.MIN_VALUE;
+
+		Series(String name, long[] retentionMillis) {
+			_name = name;
+			_retentionMillis = retentionMillis;
+			for (int t = 0; t < _tiers.length; t++) {
+				if (retentionMillis[t] > 0) {
+					_tiers[t] = new Tier(RESOLUTION_MILLIS[t], retentionMillis[t], t == RAW);
+				}
+			}
+		}
+
+		public String getName() {
+			return _name;
+		}
+
+		public synchronized void add(VitalSign vs) {
+			for (Tier tier : _tiers) {
+				if (tier != null) {
+					tier.add(vs);
+				}
+			}
+			_newest = Math.max(_newest, vs._timestamp);
+		}
+
+		/**
+		 * Copies the buckets of one parameter and resolution starting in
+		 * [fromMillis, toMillis), oldest first, back to at most the retention of
+		 * the resolution before the newest message.
+		 *
+		 * @param slot       a {@link VitalParams} slot
+		 * @param resolution {@link VitalStore#RAW}, {@link VitalStore#MINUTE} or
+		 *                   {@link VitalStore#QUARTER}
+		 * @return the number of buckets copied
+		 */
+		public synchronized int query(int slot, int resolution, long fromMillis, long toMillis, Trend into) {
+			into._count = 0;
+			Tier tier = _tiers[resolution];
+			if (tier != null && _newest != Long.MIN_VALUE) {
+				long from = Math.max(fromMillis, _newest - _retentionMillis[resolution] + 1);
+				long to = Math.min(toMillis, _newest + 1);
+				if (from < to) {
+					tier.query(slot, from, to, into);
+				}
+			}
+			return into._count;
+		}
+
+		public long getNewest() {
+			return _newest;
+		}
+
+		public long footprint() {
+			long bytes = 0;
+			for (Tier tier : _tiers) {
+				if (tier != null) {
+					bytes += tier.footprint();
+				}
+			}
+			return bytes;
+		}
+	}
+
+	/**
+	 * A reusable query result, one row per bucket.
+	 */
+	public static class Trend {
+		long[] _time = new long[0];
+		float[] _min = new float[0];
+		float[] _max = new float[0];
+		float[] _avg = new float[0];
+		float[] _last = new float[0];
+		int _count;
+
+		void add(long time, float min, float max, float avg, float last) {
+			if (_count == _time.length) {
+				int n = Math.max(64, _count * 2);
+				_time = Arrays.copyOf(_time, n);
+				_min = Arrays.copyOf(_min, n);
+				_max = Arrays.copyOf(_max, n);
+				_avg = Arrays.copyOf(_avg, n);
+				_last = Arrays.copyOf(_last, n);
+			}
+			_time[_count] = time;
+			_min[_count] = min;
+			_max[_count] = max;
+			_avg[_count] = avg;
+			_last[_count] = last;
+			_count++;
+		}
+
+		public int count() {
+			return _count;
+		}
+
+		/**
+		 * @return the start of each bucket in millis
+		 */
+		public long[] time() {
+			return _time;
+		}
+
+		public float[] min() {
+			return _min;
+		}
+
+		public float[] max() {
+			return _max;
+		}
+
+		public float[] avg() {
+			return _avg;
+		}
+
+		public float[] last() {
+			return _last;
+		}
+	}
+
+	/**
+	 * @return the store sized from config, null when every tier is disabled
+	 */
+	public static synchronized VitalStore getDefault() {
+		if (!_defaultCreated) {
+			_defaultCreated = true;
+			long[] retention = { T1Config.getLong("vital.store.raw.seconds", 3600) * 1000L,
+					T1Config.getLong("vital.store.minute.hours", 24) * 3600 * 1000L,
+					T1Config.getLong("vital.store.quarter.days", 7) * 24 * 3600 * 1000L };
+			if (retention[RAW] > 0 || retention[MINUTE] > 0 || retention[QUARTER] > 0) {
+				final VitalStore store = new VitalStore(retention);
+				TimerWheel.getDefault().schedule(new Runnable() {
+					public void run() {
+						store.evict(System.currentTimeMillis());
+					}
+				}, 60000, 60000);
+				_default = store;
+			}
+		}
+		return _default;
+	}
+
+	/**
+	 * @param retentionMillis by resolution, 0 keeps none of it
+	 */
+	public VitalStore(long[] retentionMillis) {
+		_retentionMillis = retentionMillis.clone();
+	}
+
+	/**
+	 * @return the series of the monitor, created on first use
+	 */
+	public Series series(String name) {
+		Series series = _beds.get(name);
+		if (series == null) {
+			Series created = new Series(name, _retentionMillis);
+			series = _beds.putIfAbsent(name, created);
+			if (series == null) {
+				series = created;
+			}
+		}
+		return series;
+	}
+
+	/**
+	 * @return the monitor's series, null when nothing was received
+	 */
+	public Series get(String name) {
+		return _beds.get(name);
+	}
+
+	public List<String> getBeds() {
+		return new ArrayList<String>(_beds.keySet());
+	}
+
+	/**
+	 * Drops monitors with nothing newer than the longest retention, one that
+	 * sends again starts over.
+	 */
+	public void evict(long nowMillis) {
+		long keep = 0;
+		for (long r : _retentionMillis) {
+			keep = Math.max(keep, r);
+		}
+		for (Iterator<Series> it = _beds.values().iterator(); it.hasNext();) {
+			if (it.next()._newest < nowMillis - keep) {
+				it.remove();
+			}
+		}
+	}
+
+	public long footprint() {
+		long bytes = 0;
+		for (Series series : _beds.values()) {
+			bytes += series.footprint();
+		}
+		return bytes;
+	}
+}
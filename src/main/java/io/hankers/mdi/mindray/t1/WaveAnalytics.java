@@ -0,0 +1,365 @@
+package io.hankers.mdi.mindray.t1;
+
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+
+/**
+ * Signal quality and derived parameters of one bed, computed by its session
+ * from the full-rate samples of every decoded wave, before resampling:
+ * <ul>
+ * <li>R-peaks on ECG lead II (analytics.ecg, by {@link WaveRegistry} name),
+ * Pan-Tompkins style: slope, squared, integrated over 150 ms, against a
+ * threshold between the running signal and noise levels; the R-peak is the
+ * highest sample from a window before the crossing to the end of the QRS.
+ * The last analytics.rr.count (64) RR intervals are kept, published as the
+ * last one (RRI) and their RMSSD.</li>
+ * <li>The perfusion index of the pleth (analytics.pleth), AC over DC of each
+ * block in percent. The pleth is the display wave, so this is relative.</li>
+ * <li>Flatline and saturation of both, published as ARTIFACT bits.</li>
+ * </ul>
+ * All state is primitives and arrays sized once per ECG rate, so memory is
+ * constant per bed. Results go out as a {@link VitalSign} stamped on the
+ * monitor's vital sign clock, merged and published with its vital signs, and
+ * only when there is a new RR interval or the PI or ARTIFACT bits changed.
+ * Off unless analytics.enabled. Not thread-safe, owned by the session.
+ */
+public class WaveAnalytics {
+	static final int ECG_FLAT = 1;
+	static final int ECG_SATURATED = 2;
+	static final int PLETH_FLAT = 4;
+	static final int PLETH_SATURATED = 8;
+
+	static final int ROLE_ECG = 1;
+	static final int ROLE_PLETH = 2;
+	// a block spanning at most this many counts is flat
+	static final int FLAT_COUNTS = 2;
+	// a block with this share of samples on its highest or lowest value is clipped
+	static final double SATURATED_SHARE = 0.2;
+	static final int MIN_RR_MS = 250;
+	static final int MAX_RR_MS = 2500;
+
+	private static byte[] _roles;
+
+	// the channels analysed, the first one seen of each role
+	int _ecgId = -1;
+	int _plethId = -1;
+	int _flags;
+
+	// QRS detector, sized for _rate
+	int _rate;
+	private int _x1;
+	private int _x2;
+	private int[] _window = new int[0];
+	// the samples of the window, to place the R-peak
+	private int[] _raw = new int[0];
+	private int _windowPos;
+	private long _windowSum;
+	private long _n;
+	private long _learning;
+	private double _learnMax;
+	private double _signalLevel;
+	private double _noiseLevel;
+	private boolean _inQrs;
+	private double _qrsMax;
+	private int _peak;
+	private long _peakAt;
+	private long _lastPeak = -1;
+	private long _refractory;
+
+	// RR intervals in ms, oldest first from _rrPos once full
+	final int[] _rr;
+	int _rrCount;
+	private int _rrPos;
+	private boolean _newRr;
+
+	double _perfusionIndex = Double.NaN;
+	// as last published
+	private double _publishedPi = Double.NaN;
+	private int _publishedFlags;
+
+	public WaveAnalytics() {
+		this(T1Config.getInt("analytics.rr.count", 64));
+	}
+
+	public WaveAnalytics(int rrCount) {
+		_rr = new int[Math.max(2, rrCount)];
+	}
+
+	/**
+	 * @return the analytics for a new session, null unless analytics.enabled
+	 */
+	static WaveAnalytics create() {
+		return T1Config.getBoolean("analytics.enabled", false) ? new WaveAnalytics() : null;
+	}
+
+	/**
+	 * Wave id to the role of its channel, from the registry names.
+	 */
+	static synchronized byte[] roles() {
+		if (_roles == null) {
+			byte[] roles = new byte[WaveRegistry.MAX_WAVE_ID];
+			String ecg = T1Config.getString("analytics.ecg", "II");
+			String pleth = T1Config.getString("analytics.pleth", "PLETH");
+			WaveRegistry registry = WaveRegistry.getDefault();
+			for (int id = 0; id < roles.length; id++) {
+				String name = registry.name(id);
+				if (ecg.equals(name)) {
+					roles[id] = ROLE_ECG;
+				} else if (pleth.equals(name)) {
+					roles[id] = ROLE_PLETH;
+				}
+			}
+			_roles = roles;
+		}
+		return _roles;
+	}
+
+	/**
+	 * Runs the analysed channels of the wave.
+	 *
+	 * @param timestamp of the monitor's latest vital sign, to stamp the result
+	 *                  with; negative before the first, when the result waits
+	 * @param pool      where the result comes from, null for a new one
+	 * @return what is new since the last result, null if nothing is or the
+	 *         wave has no analysed channel
+	 */
+	public VitalSign process(Wave wave, long timestamp, MessagePool pool) {
+		byte[] roles = roles();
+		WaveChannels channels = wave._values;
+		boolean analysed = false;
+		for (int i = 0; i < channels.size(); i++) {
+			int id = channels.id(i);
+			int role = id >= 0 && id < roles.length ? roles[id] : 0;
+			if (role == ROLE_ECG && (_ecgId < 0 || _ecgId == id)) {
+				_ecgId = id;
+				ecg(channels.samples(i), channels.count(i), wave._sSampleRate);
+				analysed = true;
+			} else if (role == ROLE_PLETH && (_plethId < 0 || _plethId == id)) {
+				_plethId = id;
+				pleth(channels.samples(i), channels.count(i));
+				analysed = true;
+			}
+		}
+		boolean pi = !Double.isNaN(_perfusionIndex) && _perfusionIndex != _publishedPi;
+		if (!analysed || timestamp < 0 || (!_newRr && !pi && _flags == _publishedFlags)) {
+			return null;
+		}
+		VitalSign vs = pool == null ? new VitalSign() : pool.vitalSign();
+		vs.received(wave._receivedMillis, timestamp);
+		if (_newRr) {
+			_newRr = false;
+			vs.set(VitalParams.RRI, lastRr());
+			if (_rrCount > 2) {
+				vs.set(VitalParams.RMSSD, Math.round(rmssd() * 10) / 10.0);
+			}
+		}
+		if (pi) {
+			_publishedPi = _perfusionIndex;
+			vs.set(VitalParams.PI, _perfusionIndex);
+		}
+		if (_flags != _publishedFlags) {
+			// 0 once the artifact is gone
+			_publishedFlags = _flags;
+			vs.set(VitalParams.ARTIFACT, _flags);
+		}
+		return vs;
+	}
+
+	void ecg(int[] samples, int count, int rate) {
+		if (rate <= 0 || count == 0) {
+			return;
+		}
+		if (rate != _rate) {
+			restart(rate);
+		}
+		_flags = (_flags & ~(ECG_FLAT | ECG_SATURATED)) | quality(samples, count, ECG_FLAT, ECG_SATURATED);
+		int[] window = _window;
+		for (int i = 0; i < count; i++) {
+			int x = samples[i];
+			long slope = x - _x2;
+			_x2 = _x1;
+			_x1 = x;
+			int energy = (int) Math.min(Integer.MAX_VALUE, slope * slope);
+			_windowSum += energy - window[_windowPos];
+			window[_windowPos] = energy;
+			_raw[_windowPos] = x;
+			if (++_windowPos == window.length) {
+				_windowPos = 0;
+			}
+			detect((double) _windowSum / window.length, x);
+			_n++;
+		}
+	}
+
+	/**
+	 * Starts the detector over for a new rate: two seconds of learning, then
+	 * detection.
+	 */
+	private void restart(int rate) {
+		_rate = rate;
+		_window = new int[Math.max(1, rate * 150 / 1000)];
+		_raw = new int[_window.length];
+		_windowPos = 0;
+		_windowSum = 0;
+		_x1 = 0;
+		_x2 = 0;
+		_n = 0;
+		_learning = 2L * rate;
+		_learnMax = 0;
+		_signalLevel = 0;
+		_noiseLevel = 0;
+		_inQrs = false;
+		_lastPeak = -1;
+		_refractory = rate / 5;
+	}
+
+	private void detect(double m, int x) {
+		if (_n < _learning) {
+			// the first samples also fill the slope and window
+			if (_n > _window.length) {
+				_learnMax = Math.max(_learnMax, m);
+				_noiseLevel += (m - _noiseLevel) / (_n - _window.length);
+			}
+			if (_n == _learning - 1) {
+				_signalLevel = 0.5 * _learnMax;
+			}
+			return;
+		}
+		double threshold = _noiseLevel + 0.25 * (_signalLevel - _noiseLevel);
+		if (_inQrs) {
+			_qrsMax = Math.max(_qrsMax, m);
+			if (x > _peak) {
+				_peak = x;
+				_peakAt = _n;
+			}
+			if (m < threshold) {
+				_inQrs = false;
+				_signalLevel = 0.125 * _qrsMax + 0.875 * _signalLevel;
+				beat(_peakAt);
+			}
+		} else if (m > threshold && (_lastPeak < 0 || _n - _lastPeak > _refractory)) {
+			_inQrs = true;
+			_qrsMax = m;
+			// the integration lags, the R-peak may be anywhere in the window
+			_peak = Integer.MIN_VALUE;
+			for (int k = 0; k < _raw.length; k++) {
+				// k samples back from the current one
+				int v = _raw[(_windowPos - 1 - k + 2 * _raw.length) % _raw.length];
+				if (v > _peak) {
+					_peak = v;
+					_peakAt = _n - k;
+				}
+			}
+		} else {
+			_noiseLevel += (m - _noiseLevel) / _rate;
+			if (_lastPeak >= 0 && _n - _lastPeak > 3 * _rate / 2) {
+				// no beat for 1.5 s, let a smaller QRS through
+				_signalLevel -= _signalLevel / _rate;
+			}
+		}
+	}
+
+	private void beat(long at) {
+		if (_lastPeak >= 0) {
+			long rr = (at - _lastPeak) * 1000 / _rate;
+			if (rr >= MIN_RR_MS && rr <= MAX_RR_MS) {
+				_rr[_rrPos] = (int) rr;
+				_rrPos = (_rrPos + 1) % _rr.length;
+				if (_rrCount < _rr.length) {
+					_rrCount++;
+				}
+				_newRr = true;
+			}
+		}
+		_lastPeak = at;
+	}
+
+	void pleth(int[] samples, int count) {
+		if (count == 0) {
+			return;
+		}
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		long sum = 0;
+		for (int i = 0; i < count; i++) {
+			int x = samples[i];
+			min = Math.min(min, x);
+			max = Math.max(max, x);
+			sum += x;
+		}
+		_flags = (_flags & ~(PLETH_FLAT | PLETH_SATURATED)) | quality(samples, count, PLETH_FLAT, PLETH_SATURATED);
+		double dc = (double) sum / count;
+		_perfusionIndex = dc > 0 && (_flags & (PLETH_FLAT | PLETH_SATURATED)) == 0
+				? Math.round((max - min) / dc * 10000) / 100.0
+				: Double.NaN;
+	}
+
+	/**
+	 * @return flat or saturated for a block spanning at most FLAT_COUNTS, or
+	 *         with SATURATED_SHARE of its samples on its highest or lowest
+	 *         value, else 0
+	 */
+	static int quality(int[] samples, int count, int flat, int saturated) {
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			min = Math.min(min, samples[i]);
+			max = Math.max(max, samples[i]);
+		}
+		if (max - min <= FLAT_COUNTS) {
+			return flat;
+		}
+		int atMin = 0;
+		int atMax = 0;
+		for (int i = 0; i < count; i++) {
+			if (samples[i] == min) {
+				atMin++;
+			} else if (samples[i] == max) {
+				atMax++;
+			}
+		}
+		int limit = (int) Math.ceil(count * SATURATED_SHARE);
+		return atMin >= limit || atMax >= limit ? saturated : 0;
+	}
+
+	/**
+	 * @return the latest RR interval in ms, 0 if there is none
+	 */
+	public int lastRr() {
+		return _rrCount == 0 ? 0 : _rr[(_rrPos + _rr.length - 1) % _rr.length];
+	}
+
+	/**
+	 * Copies the kept RR intervals, oldest first.
+	 *
+	 * @return how many, at most dst.length
+	 */
+	public int rrIntervals(int[] dst) {
+		int n = Math.min(_rrCount, dst.length);
+		int from = (_rrPos + _rr.length - n) % _rr.length;
+		for (int i = 0; i < n; i++) {
+			dst[i] = _rr[(from + i) % _rr.length];
+		}
+		return n;
+	}
+
+	/**
+	 * @return the root mean square of successive differences of the kept RR
+	 *         intervals in ms, NaN for fewer than two
+	 */
+	public double rmssd() {
+		if (_rrCount < 2) {
+			return Double.NaN;
+		}
+		int from = (_rrPos + _rr.length - _rrCount) % _rr.length;
+		long sum = 0;
+		int prev = _rr[from];
+		for (int i = 1; i < _rrCount; i++) {
+			int rr = _rr[(from + i) % _rr.length];
+			sum += (long) (rr - prev) * (rr - prev);
+			prev = rr;
+		}
+		return Math.sqrt((double) sum / (_rrCount - 1));
+	}
+}
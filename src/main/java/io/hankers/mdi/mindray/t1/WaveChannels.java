@@ -0,0 +1,101 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.Arrays;
+
+/**
+ * The channels of a {@link Models.Wave}, wave id to samples, in parallel
+ * arrays in the order the channels were read. A message carries one channel
+ * or a few, so lookups scan. Clearing keeps the sample arrays, which
+ * {@link #claim} hands out again when the wave is reused; an array may be
+ * longer than its channel's {@link #count}.
+ */
+public class WaveChannels {
+	private int[] _ids = new int[1];
+	private int[][] _samples = new int[1][];
+	private int[] _counts = new int[1];
+	private int _size;
+
+	public int size() {
+		return _size;
+	}
+
+	public int id(int i) {
+		return _ids[i];
+	}
+
+	public int[] samples(int i) {
+		return _samples[i];
+	}
+
+	public int count(int i) {
+		return _counts[i];
+	}
+
+	/**
+	 * @return the index of the channel, -1 if the wave has none of it
+	 */
+	public int indexOf(int id) {
+		for (int i = 0; i < _size; i++) {
+			if (_ids[i] == id) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the samples of the channel, null if the wave has none of it
+	 */
+	public int[] get(int id) {
+		int i = indexOf(id);
+		return i < 0 ? null : _samples[i];
+	}
+
+	/**
+	 * Sets the channel to all of the array.
+	 */
+	public void put(int id, int[] samples) {
+		int i = slot(id);
+		_samples[i] = samples;
+		_counts[i] = samples.length;
+	}
+
+	/**
+	 * @return an array for count samples of the channel, the one this slot
+	 *         held before if it is long enough
+	 */
+	public int[] claim(int id, int count) {
+		return claim(id, count, count);
+	}
+
+	/**
+	 * @param capacity the length of a new array, if more than count
+	 */
+	public int[] claim(int id, int count, int capacity) {
+		int i = slot(id);
+		int[] samples = _samples[i];
+		if (samples == null || samples.length < count) {
+			samples = _samples[i] = new int[Math.max(count, capacity)];
+		}
+		_counts[i] = count;
+		return samples;
+	}
+
+	private int slot(int id) {
+		int i = indexOf(id);
+		if (i >= 0) {
+			return i;
+		}
+		if (_size == _ids.length) {
+			_ids = Arrays.copyOf(_ids, _size * 2);
+			_samples = Arrays.copyOf(_samples, _size * 2);
+			_counts = Arrays.copyOf(_counts, _size * 2);
+		}
+		_ids[_size] = id;
+		return _size++;
+	}
+
+	public void clear() {
+		_size = 0;
+	}
+}
@@ -0,0 +1,155 @@
+package io.hankers.mdi.mindray.t1;
+
+/**
+ * Decoder for the ZMW wave payload. The monitor sends each group of 7 bytes
+ * with the high bits cleared followed by one byte carrying those 7 high bits
+ * (bit n for byte n); a short final group keeps its high-bit byte last. The
+ * unpacked stream is an 8-byte header (checksum, wave id, sample size, sample
+ * rate, reserved) followed by big-endian samples of 1 or 2 bytes.
+ *
+ * Everything works straight off the frame bytes into caller-supplied arrays:
+ * no boxing, no temporaries, and the full-group loops are plain counted loops
+ * the JIT can unroll.
+ */
+public final class WaveDecoder {
+	public static final int HEADER = 8;
+
+	private WaveDecoder() {
+	}
+
+	/**
+	 * @return the number of bytes that encodedLength encoded bytes unpack to
+	 */
+	public static int unpackedLength(int encodedLength) {
+		int rem = encodedLength & 7;
+		return (encodedLength >> 3) * 7 + (rem > 1 ? rem - 1 : 0);
+	}
+
+	/**
+	 * Random access to the d-th unpacked byte, used for the header.
+	 */
+	public static int unpackedByte(byte[] src, int from, int to, int d) {
+		int group = from + (d / 7) * 8;
+		int n = d % 7;
+		int hi = src[Math.min(group + 7, to - 1)];
+		return (src[group + n] & 0x7F) | ((hi << (7 - n)) & 0x80);
+	}
+
+	public static int waveId(byte[] src, int from, int to) {
+		return unpackedByte(src, from, to, 2) << 8 | unpackedByte(src, from, to, 3);
+	}
+
+	public static int sampleSize(byte[] src, int from, int to) {
+		return unpackedByte(src, from, to, 4);
+	}
+
+	public static int sampleRate(byte[] src, int from, int to) {
+		return unpackedByte(src, from, to, 5) << 8 | unpackedByte(src, from, to, 6);
+	}
+
+	/**
+	 * @return how many whole samples of sampleSize bytes follow the header
+	 */
+	public static int sampleCount(int encodedLength, int sampleSize) {
+		return Math.max(0, (unpackedLength(encodedLength) - HEADER) / sampleSize);
+	}
+
+	/**
+	 * Unpacks up to count samples following the header into dst.
+	 *
+	 * @return the number of samples written
+	 */
+	public static int decode(byte[] src, int from, int to, int sampleSize, int[] dst, int dstOffset, int count) {
+		count = Math.min(count, Math.min(sampleCount(to - from, sampleSize), dst.length - dstOffset));
+		if (count <= 0) {
+			return 0;
+		}
+		if (sampleSize == 1) {
+			decode8(src, from, to, dst, dstOffset, count);
+		} else if (sampleSize == 2) {
+			decode16(src, from, to, dst, dstOffset, count);
+		} else {
+			return 0;
+		}
+		return count;
+	}
+
+	public static int decode(byte[] src, int from, int to, int sampleSize, short[] dst, int dstOffset, int count) {
+		count = Math.min(count, Math.min(sampleCount(to - from, sampleSize), dst.length - dstOffset));
+		int d = HEADER;
+		for (int i = 0; i < count; i++) {
+			int val = unpackedByte(src, from, to, d++);
+			if (sampleSize == 2) {
+				val = val << 8 | unpackedByte(src, from, to, d++);
+			}
+			dst[dstOffset + i] = (short) val;
+		}
+		return Math.max(count, 0);
+	}
+
+	private static void decode8(byte[] src, int from, int to, int[] dst, int out, int count) {
+		final int end = out + count;
+		// the header ends one byte into group 1
+		int d = HEADER;
+		for (; d < 14 && out < end; d++) {
+			dst[out++] = unpackedByte(src, from, to, d);
+		}
+		// whole groups: 8 encoded bytes, 7 samples
+		int p = from + 16;
+		for (; p + 8 <= to && out + 7 <= end; p += 8, out += 7) {
+			int hi = src[p + 7];
+			dst[out] = (src[p] & 0x7F) | ((hi << 7) & 0x80);
+			dst[out + 1] = (src[p + 1] & 0x7F) | ((hi << 6) & 0x80);
+			dst[out + 2] = (src[p + 2] & 0x7F) | ((hi << 5) & 0x80);
+			dst[out + 3] = (src[p + 3] & 0x7F) | ((hi << 4) & 0x80);
+			dst[out + 4] = (src[p + 4] & 0x7F) | ((hi << 3) & 0x80);
+			dst[out + 5] = (src[p + 5] & 0x7F) | ((hi << 2) & 0x80);
+			dst[out + 6] = (src[p + 6] & 0x7F) | ((hi << 1) & 0x80);
+		}
+		// remainder group
+		d = (p - from) / 8 * 7;
+		while (out < end) {
+			dst[out++] = unpackedByte(src, from, to, d++);
+		}
+	}
+
+	private static void decode16(byte[] src, int from, int to, int[] dst, int out, int count) {
+		final int end = out + count;
+		int d = HEADER;
+		for (; d < 14 && out < end; d += 2) {
+			dst[out++] = unpackedByte(src, from, to, d) << 8 | unpackedByte(src, from, to, d + 1);
+		}
+		// pairs of whole groups: 16 encoded bytes, 14 unpacked, 7 samples
+		int p = from + 16;
+		for (; p + 16 <= to && out + 7 <= end; p += 16, out += 7) {
+			int hi0 = src[p + 7];
+			int hi1 = src[p + 15];
+			int b0 = (src[p] & 0x7F) | ((hi0 << 7) & 0x80);
+			int b1 = (src[p + 1] & 0x7F) | ((hi0 << 6) & 0x80);
+			int b2 = (src[p + 2] & 0x7F) | ((hi0 << 5) & 0x80);
+			int b3 = (src[p + 3] & 0x7F) | ((hi0 << 4) & 0x80);
+			int b4 = (src[p + 4] & 0x7F) | ((hi0 << 3) & 0x80);
+			int b5 = (src[p + 5] & 0x7F) | ((hi0 << 2) & 0x80);
+			int b6 = (src[p + 6] & 0x7F) | ((hi0 << 1) & 0x80);
+			int b7 = (src[p + 8] & 0x7F) | ((hi1 << 7) & 0x80);
+			int b8 = (src[p + 9] & 0x7F) | ((hi1 << 6) & 0x80);
+			int b9 = (src[p + 10] & 0x7F) | ((hi1 << 5) & 0x80);
+			int b10 = (src[p + 11] & 0x7F) | ((hi1 << 4) & 0x80);
+			int b11 = (src[p + 12] & 0x7F) | ((hi1 << 3) & 0x80);
+			int b12 = (src[p + 13] & 0x7F) | ((hi1 << 2) & 0x80);
+			int b13 = (src[p + 14] & 0x7F) | ((hi1 << 1) & 0x80);
+			dst[out] = b0 << 8 | b1;
+			dst[out + 1] = b2 << 8 | b3;
+			dst[out + 2] = b4 << 8 | b5;
+			dst[out + 3] = b6 << 8 | b7;
+			dst[out + 4] = b8 << 8 | b9;
+			dst[out + 5] = b10 << 8 | b11;
+			dst[out + 6] = b12 << 8 | b13;
+		}
+		d = (p - from) / 8 * 7;
+		while (out < end) {
+			dst[out++] = unpackedByte(src, from, to, d) << 8 | unpackedByte(src, from, to, d + 1);
+			d += 2;
+		}
+	}
+}
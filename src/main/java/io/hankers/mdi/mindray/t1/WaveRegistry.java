@@ -0,0 +1,182 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * Wave id to channel metadata, read from wave-ids.txt on the classpath and
+ * then from the file named by wave.registry, whose lines replace or add
+ * channels. Looked up through an array indexed by wave id; ids outside 0-4095
+ * are not registered. Immutable once loaded.
+ */
+public class WaveRegistry {
+	static final int MAX_WAVE_ID = 4096;
+	private static WaveRegistry _default;
+
+	private final Channel[] _byId = new Channel[MAX_WAVE_ID];
+
+	/**
+	 * One wave channel as documented; the ZMW header of each wave carries the
+	 * actual sample size and rate.
+	 */
+	public static class Channel {
+		final int _id;
+		final String _name;
+		final String _unit;
+		final double _scale;
+		final int _sampleSize;
+		final int _rate;
+
+		Channel(int id, String name, String unit, double scale, int sampleSize, int rate) {
+			_id = id;
+			_name = name;
+			_unit = unit;
+			_scale = scale;
+			_sampleSize = sampleSize;
+			_rate = rate;
+		}
+
+		public int getId() {
+			return _id;
+		}
+
+		/**
+		 * @return the key of the channel in published waves
+		 */
+		public String getName() {
+			return _name;
+		}
+
+		/**
+		 * @return the unit of the scaled samples, null for none
+		 */
+		public String getUnit() {
+			return _unit;
+		}
+
+		/**
+		 * @return units per sample count, NaN when not known
+		 */
+		public double getScale() {
+			return _scale;
+		}
+
+		public int getSampleSize() {
+			return _sampleSize;
+		}
+
+		/**
+		 * @return nominal samples per second
+		 */
+		public int getRate() {
+			return _rate;
+		}
+	}
+
+	public static synchronized WaveRegistry getDefault() {
+		if (_default == null) {
+			WaveRegistry registry = new WaveRegistry();
+			InputStream ins = WaveRegistry.class.getResourceAsStream("/wave-ids.txt");
+			if (ins != null) {
+				registry.load(ins, "wave-ids.txt");
+			}
+			String path = T1Config.getString("wave.registry", null);
+			if (path != null) {
+				try {
+					registry.load(new FileInputStream(path), path);
+				} catch (IOException e) {
+					MDILog.w("Cannot read wave.registry {}: {}", path, e);
+				}
+			}
+			_default = registry;
+		}
+		return _default;
+	}
+
+	void load(InputStream ins, String source) {
+		try {
+			load(new InputStreamReader(ins, StandardCharsets.UTF_8), source);
+		} finally {
+			try {
+				ins.close();
+			} catch (IOException e) {
+				MDILog.w(e);
+			}
+		}
+	}
+
+	/**
+	 * Adds the channels of the lines, blank lines and # comments skipped.
+	 */
+	void load(Reader in, String source) {
+		BufferedReader reader = new BufferedReader(in);
+		try {
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if (line.isEmpty() || line.charAt(0) == '#') {
+					continue;
+				}
+				String[] cols = line.split("\\s+");
+				try {
+					int id = Integer.parseInt(cols[0]);
+					if (cols.length != 6 || id < 0 || id >= MAX_WAVE_ID) {
+						throw new IllegalArgumentException();
+					}
+					_byId[id] = new Channel(id, cols[1], "-".equals(cols[2]) ? null : cols[2],
+							"-".equals(cols[3]) ? Double.NaN : Double.parseDouble(cols[3]), Integer.parseInt(cols[4]),
+							Integer.parseInt(cols[5]));
+				} catch (IllegalArgumentException e) {
+					MDILog.w("Invalid wave channel at {}:{}: {}", source, number, line);
+				}
+			}
+		} catch (IOException e) {
+			MDILog.w("Cannot read wave channels from {}: {}", source, e);
+		}
+	}
+
+	/**
+	 * @return the channel, null for an id that is not registered
+	 */
+	public Channel get(int waveId) {
+		return waveId >= 0 && waveId < MAX_WAVE_ID ? _byId[waveId] : null;
+	}
+
+	/**
+	 * @return the published name, null for an id that is not registered
+	 */
+	public String name(int waveId) {
+		Channel c = get(waveId);
+		return c == null ? null : c._name;
+	}
+
+	/**
+	 * @return the lowest id registered under the name, -1 if there is none
+	 */
+	public int id(String name) {
+		for (int id = 0; id < MAX_WAVE_ID; id++) {
+			if (_byId[id] != null && _byId[id]._name.equals(name)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the nominal samples per second, 0 for an id that is not
+	 *         registered
+	 */
+	public int rate(int waveId) {
+		Channel c = get(waveId);
+		return c == null ? 0 : c._rate;
+	}
+}
@@ -0,0 +1,274 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.Arrays;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+
+/**
+ * Resampling stage for one wave channel of one monitor. Consecutive
+ * {@link Models.Wave} blocks of the channel are fed in order, so filters keep
+ * their state across messages. Output goes to a buffer owned by the
+ * resampler and reused for the next block.
+ *
+ * Specs, per wave id in wave.resample.&lt;id&gt; or wave.resample.default:
+ * <ul>
+ * <li>nearest:N, N points per block by nearest index (the former
+ * resample128)</li>
+ * <li>passthrough, the samples as received</li>
+ * <li>fir:R, decimation to R Hz through a polyphase anti-alias FIR</li>
+ * <li>envelope:B, B min/max pairs per second for display</li>
+ * </ul>
+ */
+public abstract class WaveResampler {
+	protected int[] _out = new int[256];
+	protected int _count;
+
+	/**
+	 * Resamples the next block of the channel.
+	 *
+	 * @return the number of output samples, also {@link #count()}
+	 */
+	public abstract int process(int[] in, int inCount, int inRate);
+
+	public int[] output() {
+		return _out;
+	}
+
+	public int count() {
+		return _count;
+	}
+
+	/**
+	 * Sizes the buffers for one-second blocks at the rate, so that the first
+	 * blocks of the channel need not grow them.
+	 */
+	public void prepare(int inRate) {
+		ensure(inRate);
+	}
+
+	protected void ensure(int n) {
+		if (_out.length < n) {
+			_out = new int[Math.max(n, _out.length * 2)];
+		}
+	}
+
+	public static WaveResampler create(String spec) {
+		String mode = spec;
+		int arg = 0;
+		int colon = spec.indexOf(':');
+		try {
+			if (colon > 0) {
+				mode = spec.substring(0, colon);
+				arg = Integer.parseInt(spec.substring(colon + 1));
+			}
+			if ("passthrough".equals(mode)) {
+				return new Passthrough();
+			} else if ("fir".equals(mode) && arg > 0) {
+				return new Fir(arg);
+			} else if ("envelope".equals(mode) && arg > 0) {
+				return new Envelope(arg);
+			} else if ("nearest".equals(mode) && arg > 0) {
+				return new Nearest(arg);
+			}
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		MDILog.w("Invalid resample spec {}, using nearest:128", spec);
+		return new Nearest(128);
+	}
+
+	public static class Nearest extends WaveResampler {
+		final int _points;
+
+		public Nearest(int points) {
+			_points = points;
+		}
+
+		@Override
+		public void prepare(int inRate) {
+			ensure(_points);
+		}
+
+		public int process(int[] in, int inCount, int inRate) {
+			if (inCount == 0) {
+				return _count = 0;
+			}
+			ensure(_points);
+			float step = (float) (inCount * 1.0 / _points);
+			for (int i = 0; i < _points; i++) {
+				_out[i] = in[(int) (i * step)];
+			}
+			return _count = _points;
+		}
+	}
+
+	public static class Passthrough extends WaveResampler {
+		public int process(int[] in, int inCount, int inRate) {
+			ensure(inCount);
+			System.arraycopy(in, 0, _out, 0, inCount);
+			return _count = inCount;
+		}
+	}
+
+	/**
+	 * Rational L/M resampler: a windowed-sinc low-pass designed for the
+	 * upsampled rate, split into L phases. Each phase has TAPS coefficients per
+	 * input sample of an output period, ceil(M/L), so the filter stays as long
+	 * in output samples, and its transition as narrow, however hard it
+	 * decimates. The cutoff puts the stopband at the output Nyquist. The last
+	 * taps - 1 inputs and the phase position carry over to the next block.
+	 */
+	public static class Fir extends WaveResampler {
+		static final int TAPS = 32;
+
+		final int _outRate;
+		int _inRate;
+		int _l;
+		int _m;
+		// per phase
+		int _taps = TAPS;
+		float[][] _phases;
+		// _taps - 1 samples of history followed by the current block
+		float[] _work = new float[TAPS - 1 + 1024];
+		// upsampled position of the next output, relative to the block start
+		long _u;
+
+		public Fir(int outRate) {
+			_outRate = outRate;
+		}
+
+		@Override
+		public void prepare(int inRate) {
+			design(inRate);
+			if (_work.length < _taps - 1 + inRate) {
+				_work = new float[_taps - 1 + inRate];
+			}
+			ensure((int) ((long) inRate * _l / _m) + 2);
+		}
+
+		public int process(int[] in, int inCount, int inRate) {
+			if (inRate <= 0) {
+				return _count = 0;
+			}
+			if (inRate != _inRate) {
+				design(inRate);
+			}
+			int hist = _taps - 1;
+			if (_work.length < hist + inCount) {
+				float[] grown = new float[hist + inCount];
+				System.arraycopy(_work, 0, grown, 0, hist);
+				_work = grown;
+			}
+			for (int i = 0; i < inCount; i++) {
+				_work[hist + i] = in[i];
+			}
+
+			ensure((int) ((long) inCount * _l / _m) + 2);
+			int n = 0;
+			final long end = (long) inCount * _l;
+			for (; _u < end; _u += _m) {
+				int i = (int) (_u / _l) + hist;
+				float[] h = _phases[(int) (_u % _l)];
+				float acc = 0;
+				for (int j = 0; j < h.length; j++) {
+					acc += h[j] * _work[i - j];
+				}
+				_out[n++] = Math.round(acc);
+			}
+			_u -= end;
+
+			// keep the last _taps - 1 inputs for the next block
+			System.arraycopy(_work, inCount, _work, 0, hist);
+			return _count = n;
+		}
+
+		void design(int inRate) {
+			int g = gcd(inRate, _outRate);
+			_l = _outRate / g;
+			_m = inRate / g;
+			_inRate = inRate;
+			_u = 0;
+
+			_taps = TAPS * Math.max(1, (_m + _l - 1) / _l);
+			if (_work.length < _taps - 1 + inRate) {
+				_work = new float[_taps - 1 + inRate];
+			}
+			int n = _l * _taps;
+			// cutoff in cycles per upsampled sample: half the Blackman transition,
+			// 5.5 / n, below the lower Nyquist
+			double fc = 0.5 / Math.max(_l, _m) - 2.75 / n;
+			double[] proto = new double[n];
+			double mid = (n - 1) / 2.0;
+			double[] sums = new double[_l];
+			for (int k = 0; k < n; k++) {
+				double x = k - mid;
+				double sinc = x == 0 ? 2 * fc : Math.sin(2 * Math.PI * fc * x) / (Math.PI * x);
+				// Blackman window
+				double w = 0.42 - 0.5 * Math.cos(2 * Math.PI * k / (n - 1)) + 0.08 * Math.cos(4 * Math.PI * k / (n - 1));
+				proto[k] = sinc * w;
+				sums[k % _l] += proto[k];
+			}
+			// unity DC gain for every phase
+			_phases = new float[_l][_taps];
+			for (int p = 0; p < _l; p++) {
+				for (int j = 0; j < _taps; j++) {
+					_phases[p][j] = (float) (proto[p + j * _l] / sums[p]);
+				}
+			}
+			// a rate change restarts the channel
+			Arrays.fill(_work, 0, _taps - 1, 0f);
+		}
+
+		static int gcd(int a, int b) {
+			while (b != 0) {
+				int t = a % b;
+				a = b;
+				b = t;
+			}
+			return a;
+		}
+	}
+
+	/**
+	 * Min/max per bucket of inRate / B samples, output as min,max pairs. A
+	 * bucket may span two blocks.
+	 */
+	public static class Envelope extends WaveResampler {
+		final int _bucketsPerSecond;
+		double _fill;
+		int _min = Integer.MAX_VALUE;
+		int _max = Integer.MIN_VALUE;
+
+		public Envelope(int bucketsPerSecond) {
+			_bucketsPerSecond = bucketsPerSecond;
+		}
+
+		@Override
+		public void prepare(int inRate) {
+			ensure(2 * (_bucketsPerSecond + 2));
+		}
+
+		public int process(int[] in, int inCount, int inRate) {
+			double bucket = Math.max(1.0, (double) inRate / _bucketsPerSecond);
+			ensure(2 * ((int) (inCount / bucket) + 2));
+			int n = 0;
+			for (int i = 0; i < inCount; i++) {
+				int v = in[i];
+				if (v < _min) {
+					_min = v;
+				}
+				if (v > _max) {
+					_max = v;
+				}
+				if (++_fill >= bucket) {
+					_out[n++] = _min;
+					_out[n++] = _max;
+					_fill -= bucket;
+					_min = Integer.MAX_VALUE;
+					_max = Integer.MIN_VALUE;
+				}
+			}
+			return _count = n;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.hankers.mdi.mindray.t1.Models.Wave;
+
+/**
+ * The resamplers of one monitor, one per wave id, created on first use from
+ * wave.resample.&lt;id&gt; or wave.resample.default (nearest:128, the output
+ * published so far) and sized from the {@link WaveRegistry}. Owned by the
+ * monitor's session, not thread-safe.
+ */
+public class WaveResampling {
+	static final String DEFAULT_SPEC = T1Config.getString("wave.resample.default", "nearest:128");
+
+	private final WaveResampler[] _byId = new WaveResampler[WaveRegistry.MAX_WAVE_ID];
+	// ids outside the documented range, not expected in practice
+	private Map<Integer, WaveResampler> _others;
+
+	/**
+	 * Runs every channel of the wave through its resampler. The output stays
+	 * in the resamplers until the next wave of the monitor, the wave reads it
+	 * back when it is serialized. Called by the wave itself on the publishing
+	 * thread, in the monitor's wave order.
+	 */
+	public void apply(Wave wave) {
+		WaveChannels channels = wave._values;
+		for (int i = 0; i < channels.size(); i++) {
+			get(channels.id(i)).process(channels.samples(i), channels.count(i), wave._sSampleRate);
+		}
+		wave._resampled = true;
+	}
+
+	public WaveResampler get(int waveId) {
+		if (waveId >= 0 && waveId < WaveRegistry.MAX_WAVE_ID) {
+			WaveResampler r = _byId[waveId];
+			if (r == null) {
+				r = _byId[waveId] = create(waveId);
+			}
+			return r;
+		}
+		if (_others == null) {
+			_others = new HashMap<Integer, WaveResampler>();
+		}
+		WaveResampler r = _others.get(waveId);
+		if (r == null) {
+			_others.put(waveId, r = create(waveId));
+		}
+		return r;
+	}
+
+	/**
+	 * Creates the channel's resampler with its buffers sized for the nominal
+	 * rate of the channel.
+	 */
+	static WaveResampler create(int waveId) {
+		WaveResampler r = WaveResampler.create(T1Config.getString("wave.resample." + waveId, DEFAULT_SPEC));
+		int rate = WaveRegistry.getDefault().rate(waveId);
+		if (rate > 0) {
+			r.prepare(rate);
+		}
+		return r;
+	}
+}
@@ -0,0 +1,233 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The recent samples of one wave channel, 16 bits each, two to an int, with
+ * the time of every received block. One thread appends; any number of readers
+ * copy out a time range or everything after a cursor without blocking it.
+ *
+ * Reads are optimistic, a seqlock on sample positions: the writer claims the
+ * positions it is about to overwrite before writing them and publishes the
+ * new head after, a reader copies and then drops whatever the claim says may
+ * have been overwritten meanwhile. Samples are stored with ordered writes and
+ * read with volatile reads, plain moves on x86, which is what makes the check
+ * after the copy sound.
+ */
+public class WaveRing {
+	final int _rate;
+	final int _capacity;
+	final int _mask;
+	final AtomicIntegerArray _words;
+	// block start position and time in millis, in pairs
+	final AtomicLongArray _blocks;
+	final int _blockCapacity;
+	final int _blockMask;
+
+	// positions [_claimed - _capacity, _head) are readable once no write is
+	// in progress, _claimed runs ahead of _head during one
+	private volatile long _claimed;
+	private volatile long _head;
+	private volatile long _blockCount;
+
+	/**
+	 * A reusable copy of a range of samples.
+	 */
+	public static class Snapshot {
+		int[] _samples = new int[0];
+		int _count;
+		long _start;
+		long _startMillis;
+		int _rate;
+
+		public int[] samples() {
+			return _samples;
+		}
+
+		public int count() {
+			return _count;
+		}
+
+		/**
+		 * @return the position of the first sample, a cursor
+		 */
+		public long start() {
+			return _start;
+		}
+
+		public long startMillis() {
+			return _startMillis;
+		}
+
+		public int rate() {
+			return _rate;
+		}
+
+		void ensure(int n) {
+			if (_samples.length < n) {
+				_samples = new int[Math.max(n, _samples.length * 2)];
+			}
+		}
+	}
+
+	/**
+	 * @param rate    samples per second
+	 * @param seconds held at least, rounded up to a power of two samples
+	 */
+	public WaveRing(int rate, int seconds) {
+		_rate = Math.max(1, rate);
+		_capacity = powerOfTwo((long) _rate * seconds);
+		_mask = _capacity - 1;
+		_words = new AtomicIntegerArray(_capacity >> 1);
+		// monitors send a block a second, room for four a second
+		_blockCapacity = powerOfTwo(4L * seconds + 8);
+		_blockMask = _blockCapacity - 1;
+		_blocks = new AtomicLongArray(_blockCapacity << 1);
+	}
+
+	static int powerOfTwo(long n) {
+		int size = 2;
+		while (size < n && size < (1 << 30)) {
+			size <<= 1;
+		}
+		return size;
+	}
+
+	/**
+	 * Writer only.
+	 */
+	public void append(int[] samples, int count, long timeMillis) {
+		long head = _head;
+		long end = head + count;
+		_claimed = end;
+		long block = _blockCount;
+		int b = (int) (block & _blockMask) << 1;
+		_blocks.lazySet(b, head);
+		_blocks.lazySet(b + 1, timeMillis);
+		// only the last _capacity samples survive a longer block
+		for (int i = Math.max(0, count - _capacity); i < count; i++) {
+			long pos = head + i;
+			int word = (int) (pos & _mask) >> 1;
+			int shift = (int) (pos & 1) << 4;
+			int w = _words.get(word);
+			_words.lazySet(word, (w & ~(0xFFFF << shift)) | ((samples[i] & 0xFFFF) << shift));
+		}
+		_blockCount = block + 1;
+		_head = end;
+	}
+
+	/**
+	 * @return the position after the newest sample
+	 */
+	public long head() {
+		return _head;
+	}
+
+	public int rate() {
+		return _rate;
+	}
+
+	/**
+	 * Copies every sample from the cursor on, or from the oldest still held
+	 * when the cursor has been overwritten; {@link Snapshot#start()} tells.
+	 *
+	 * @return the cursor to read from next time
+	 */
+	public long read(long cursor, Snapshot into) {
+		long head = _head;
+		copy(Math.max(cursor, head - _capacity), head, into);
+		return head;
+	}
+
+	/**
+	 * Copies the samples received from fromMillis up to, not including,
+	 * toMillis, as far as they are still held.
+	 */
+	public void read(long fromMillis, long toMillis, Snapshot into) {
+		long head = _head;
+		long from = Math.max(position(fromMillis), head - _capacity);
+		long to = Math.min(position(toMillis), head);
+		copy(from, Math.max(from, to), into);
+	}
+
+	private void copy(long from, long to, Snapshot into) {
+		from = Math.max(0, from);
+		int n = (int) (to - from);
+		into.ensure(n);
+		int[] dst = into._samples;
+		for (int i = 0; i < n; i++) {
+			long pos = from + i;
+			dst[i] = _words.get((int) (pos & _mask) >> 1) >>> ((int) (pos & 1) << 4) & 0xFFFF;
+		}
+		// drop what a concurrent append may have overwritten
+		long valid = _claimed - _capacity;
+		if (from < valid) {
+			int lost = (int) Math.min(n, valid - from);
+			System.arraycopy(dst, lost, dst, 0, n - lost);
+			from += lost;
+			n -= lost;
+		}
+		into._count = n;
+		into._start = from;
+		into._rate = _rate;
+		into._startMillis = timeOf(from);
+	}
+
+	/**
+	 * @return the time of the sample at the position, interpolated from the
+	 *         nearest block, 0 before the first
+	 */
+	public long timeOf(long pos) {
+		for (;;) {
+			long count = _blockCount;
+			if (count == 0) {
+				return 0;
+			}
+			long oldest = Math.max(0, count - _blockCapacity + 1);
+			long i = count - 1;
+			long blockPos = _blocks.get((int) (i & _blockMask) << 1);
+			while (i > oldest && blockPos > pos) {
+				i--;
+				blockPos = _blocks.get((int) (i & _blockMask) << 1);
+			}
+			long blockTime = _blocks.get(((int) (i & _blockMask) << 1) + 1);
+			if (i >= _blockCount - _blockCapacity + 1) {
+				return blockTime + (pos - blockPos) * 1000 / _rate;
+			}
+		}
+	}
+
+	/**
+	 * @return the position of the first sample at or after the time
+	 */
+	public long position(long timeMillis) {
+		for (;;) {
+			long count = _blockCount;
+			if (count == 0) {
+				return 0;
+			}
+			long oldest = Math.max(0, count - _blockCapacity + 1);
+			long i = count - 1;
+			int b = (int) (i & _blockMask) << 1;
+			long blockTime = _blocks.get(b + 1);
+			while (i > oldest && blockTime > timeMillis) {
+				i--;
+				b = (int) (i & _blockMask) << 1;
+				blockTime = _blocks.get(b + 1);
+			}
+			long blockPos = _blocks.get(b);
+			if (i >= _blockCount - _blockCapacity + 1) {
+				// rounded up, a sample exactly at the time is included
+				return blockPos + ((timeMillis - blockTime) * _rate + 999) / 1000;
+			}
+		}
+	}
+
+	/**
+	 * @return bytes of sample and block storage
+	 */
+	public long footprint() {
+		return (_capacity >> 1) * 4L + _blockCapacity * 16L;
+	}
+}
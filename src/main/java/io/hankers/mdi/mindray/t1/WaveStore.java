@@ -0,0 +1,140 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import io.hankers.mdi.mindray.t1.Models.Wave;
+
+/**
+ * The last wave.store.seconds (30, 0 disables) of every wave channel of every
+ * monitor, as received and before resampling, so that e.g. the last 30 s of
+ * lead II of one bed can be asked for. One {@link WaveRing} per monitor and
+ * wave id, filled by the monitor's session.
+ */
+public class WaveStore {
+	private static WaveStore _default;
+	private static boolean _defaultCreated;
+
+	final int _seconds;
+	private final ConcurrentHashMap<String, Bed> _beds = new ConcurrentHashMap<String, Bed>();
+
+	/**
+	 * The channels of one monitor. Appended to by its session only.
+	 */
+	public static class Bed {
+		final String _name;
+		final int _seconds;
+		private final AtomicReferenceArray<WaveRing> _byId = new AtomicReferenceArray<WaveRing>(
+				WaveRegistry.MAX_WAVE_ID);
+
+		Bed(String name, int seconds) {
+			_name = name;
+			_seconds = seconds;
+		}
+
+		public String getName() {
+			return _name;
+		}
+
+		/**
+		 * Stores every channel of the wave; ids outside 0-4095 are not kept.
+		 */
+		public void append(Wave wave) {
+			WaveChannels channels = wave._values;
+			for (int i = 0; i < channels.size(); i++) {
+				int id = channels.id(i);
+				if (id < 0 || id >= WaveRegistry.MAX_WAVE_ID) {
+					continue;
+				}
+				WaveRing ring = _byId.get(id);
+				if (ring == null || ring.rate() != wave._sSampleRate) {
+					// a new rate starts over, readers keep the old ring
+					ring = new WaveRing(wave._sSampleRate, _seconds);
+					_byId.set(id, ring);
+				}
+				ring.append(channels.samples(i), channels.count(i), wave._timestamp);
+			}
+		}
+
+		/**
+		 * @return the channel, null when none was received
+		 */
+		public WaveRing get(int waveId) {
+			return waveId >= 0 && waveId < WaveRegistry.MAX_WAVE_ID ? _byId.get(waveId) : null;
+		}
+
+		public List<Integer> getWaveIds() {
+			List<Integer> ids = new ArrayList<Integer>();
+			for (int i = 0; i < _byId.length(); i++) {
+				if (_byId.get(i) != null) {
+					ids.add(i);
+				}
+			}
+			return ids;
+		}
+
+		public long footprint() {
+			long bytes = 0;
+			for (int i = 0; i < _byId.length(); i++) {
+				WaveRing ring = _byId.get(i);
+				if (ring != null) {
+					bytes += ring.footprint();
+				}
+			}
+			return bytes;
+		}
+	}
+
+	/**
+	 * @return the store sized from config, null when disabled
+	 */
+	public static synchronized WaveStore getDefault() {
+		if (!_defaultCreated) {
+			int seconds = T1Config.getInt("wave.store.seconds", 30);
+			_default = seconds > 0 ? new WaveStore(seconds) : null;
+			_defaultCreated = true;
+		}
+		return _default;
+	}
+
+	public WaveStore(int seconds) {
+		_seconds = seconds;
+	}
+
+	/**
+	 * @return the channels of the monitor, created on first use
+	 */
+	public Bed bed(String name) {
+		Bed bed = _beds.get(name);
+		if (bed == null) {
+			Bed created = new Bed(name, _seconds);
+			bed = _beds.putIfAbsent(name, created);
+			if (bed == null) {
+				bed = created;
+			}
+		}
+		return bed;
+	}
+
+	/**
+	 * @return the monitor's channel, null when nothing was received
+	 */
+	public WaveRing get(String name, int waveId) {
+		Bed bed = _beds.get(name);
+		return bed == null ? null : bed.get(waveId);
+	}
+
+	public List<String> getBeds() {
+		return new ArrayList<String>(_beds.keySet());
+	}
+
+	public long footprint() {
+		long bytes = 0;
+		for (Bed bed : _beds.values()) {
+			bytes += bed.footprint();
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,173 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import io.hankers.mdi.mdi_utils.MDILog;
+import io.hankers.mdi.mindray.t1.PayloadPublisher.ConnectedSink;
+import io.hankers.mdi.mindray.t1.PayloadPublisher.PayloadSink;
+
+/**
+ * Writes every payload to a {@link SegmentLog} and forwards it from there to
+ * the real sink on its own thread, in order. A payload leaves the log once
+ * the sink's publish returns, so what survives a crash or restart of this
+ * process is what the sink had not accepted yet. A sink that throws is
+ * retried with backoff while the log keeps filling, and a
+ * {@link ConnectedSink} that reports itself disconnected is not handed
+ * anything until it reconnects. There is no per-message ack: what the MQTT
+ * client took while it still looked connected, or the broker never
+ * acknowledged, is not covered. Enabled by wal.dir.
+ */
+public class WriteAheadSink implements PayloadSink {
+	static final long MAX_BACKOFF_MS = 30000;
+	static final long HOLD_POLL_MS = 100;
+
+	final SegmentLog _log;
+	final PayloadSink _delegate;
+	private final Thread _forwarder;
+	private final ScheduledExecutorService _syncer;
+	private volatile boolean _running = true;
+	private volatile boolean _idle;
+
+	final AtomicLong _appended = new AtomicLong();
+	final AtomicLong _forwarded = new AtomicLong();
+	final AtomicLong _failures = new AtomicLong();
+	final AtomicLong _holds = new AtomicLong();
+
+	public static WriteAheadSink create(String dir, PayloadSink delegate) throws IOException {
+		return new WriteAheadSink(new SegmentLog(new File(dir), T1Config.getInt("wal.segment.bytes", 16 << 20),
+				T1Config.getLong("wal.max.bytes", 1L << 30), T1Config.getLong("wal.max.age.ms", 24 * 3600 * 1000L)),
+				delegate, T1Config.getLong("wal.sync.ms", 200));
+	}
+
+	public WriteAheadSink(SegmentLog log, PayloadSink delegate, long syncMillis) {
+		_log = log;
+		_delegate = delegate;
+		_forwarder = new Thread("wal-forward") {
+			public void run() {
+				forward();
+			}
+		};
+		_forwarder.setDaemon(true);
+		_forwarder.start();
+		_syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "wal-sync");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		_syncer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					_log.sync();
+				} catch (Exception e) {
+					MDILog.e(e);
+				}
+			}
+		}, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void publish(byte[] buf, int offset, int length, boolean text) {
+		if (_log.append(buf, offset, length, text)) {
+			_appended.incrementAndGet();
+			if (_idle) {
+				LockSupport.unpark(_forwarder);
+			}
+		} else {
+			// better late than never, but not stored
+			_delegate.publish(buf, offset, length, text);
+		}
+	}
+
+	void forward() {
+		PayloadBuffer record = new PayloadBuffer();
+		long backoff = 0;
+		boolean held = false;
+		while (_running) {
+			if (!connected()) {
+				if (!held) {
+					held = true;
+					_holds.incrementAndGet();
+					MDILog.w("Sink disconnected, holding {} bytes", _log.backlog());
+				}
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(HOLD_POLL_MS));
+				continue;
+			}
+			if (held) {
+				held = false;
+				MDILog.i("Sink reconnected, forwarding {} bytes", _log.backlog());
+			}
+			int flags = _log.peek(record);
+			if (flags < 0) {
+				_idle = true;
+				if (_log.backlog() == 0) {
+					LockSupport.parkNanos(50000000L);
+				}
+				_idle = false;
+				continue;
+			}
+			try {
+				_delegate.publish(record.array(), 0, record.position(), (flags & SegmentLog.FLAG_TEXT) != 0);
+				// accepted, not necessarily acknowledged by the broker
+				_log.advance();
+				_forwarded.incrementAndGet();
+				backoff = 0;
+			} catch (Exception e) {
+				_failures.incrementAndGet();
+				backoff = Math.min(MAX_BACKOFF_MS, Math.max(100, backoff * 2));
+				MDILog.w("Publish failed, {} bytes held, retry in {} ms: {}", _log.backlog(), backoff, e);
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoff));
+			}
+		}
+	}
+
+	private boolean connected() {
+		return !(_delegate instanceof ConnectedSink) || ((ConnectedSink) _delegate).isConnected();
+	}
+
+	/**
+	 * @return bytes in the log not forwarded yet
+	 */
+	public long backlog() {
+		return _log.backlog();
+	}
+
+	public long forwarded() {
+		return _forwarded.get();
+	}
+
+	public long failures() {
+		return _failures.get();
+	}
+
+	/**
+	 * @return times forwarding stopped for a disconnected sink
+	 */
+	public long holds() {
+		return _holds.get();
+	}
+
+	public void close() throws IOException {
+		_running = false;
+		LockSupport.unpark(_forwarder);
+		try {
+			_forwarder.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		_syncer.shutdown();
+		try {
+			_syncer.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		_log.close();
+	}
+}
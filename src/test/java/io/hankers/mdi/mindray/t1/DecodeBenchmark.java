@@ -0,0 +1,94 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.hankers.mdi.mindray.t1.Models.HL7Message;
+import io.hankers.mdi.mindray.t1.Models.HL7Utils;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+
+/**
+ * Frames/sec from bytes to serialized payload on one thread: framing,
+ * decoding and JSON serialization of a minute of one bed of
+ * {@link SyntheticMonitor} traffic, or of a capture given with
+ * -Dcapture=file.mllp, with messages from a {@link MessagePool} or new ones.
+ * Divide allocation by the frames per op.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="DecodeBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+	static final int CHUNK = 1460;
+
+	@Param({ "false", "true" })
+	boolean _pooled;
+
+	byte[] _stream;
+	final MllpFramer _framer = new MllpFramer();
+	FrameHandler _handler;
+
+	@Setup
+	public void setup(final Blackhole bh) throws IOException {
+		String capture = System.getProperty("capture");
+		StandInMonitorServer.Source source = capture == null ? new SyntheticMonitor(0, 60, SyntheticMonitor.LEADS, 250, 60)
+				: new StandInMonitorServer.CaptureSource(new File(capture));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		while (source.next()) {
+			out.write(source.data(), 0, source.length());
+		}
+		_stream = out.toByteArray();
+		final HL7Segment segment = new HL7Segment();
+		final MessagePool pool = _pooled ? new MessagePool() : null;
+		final WaveResampling resampling = new WaveResampling();
+		final PayloadPublisher publisher = new PayloadPublisher(new PayloadSerializer.Json(),
+				new PayloadPublisher.PayloadSink() {
+					public void publish(byte[] buf, int offset, int length, boolean text) {
+						bh.consume(length);
+					}
+				}, 0, 0);
+		_handler = new FrameHandler() {
+			public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+				HL7Message msg = HL7Utils.create(segment, pool, buf, offset, length);
+				if (msg instanceof Wave) {
+					((Wave) msg)._resampling = resampling;
+				}
+				if (msg != null) {
+					publisher.add(msg);
+				}
+				return true;
+			}
+		};
+		System.out.printf("%n%d bytes a op%n", _stream.length);
+	}
+
+	/**
+	 * One pass over the stream, 781 frames of the synthetic minute.
+	 */
+	@Benchmark
+	public void decode() {
+		for (int pos = 0; pos < _stream.length; pos += CHUNK) {
+			_framer.feed(_stream, pos, Math.min(CHUNK, _stream.length - pos));
+			_framer.drain(_handler);
+		}
+	}
+}
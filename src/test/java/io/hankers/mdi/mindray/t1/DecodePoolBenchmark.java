@@ -0,0 +1,109 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.hankers.mdi.mindray.t1.Models.HL7Message;
+import io.hankers.mdi.mindray.t1.Models.HL7Utils;
+
+/**
+ * Frames/sec with framing on one reader thread and decoding plus JSON
+ * serialization on 0 (the reader itself), 1, 2, 4 or 8 {@link DecodePool}
+ * workers: 16 monitors of {@link SyntheticMonitor} 12-lead traffic, ten
+ * seconds each per op. Scaling needs as many free cores as workers plus one.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="DecodePoolBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodePoolBenchmark {
+	static final int MONITORS = 16;
+	static final int SECONDS = 10;
+	// a vitals frame and twelve leads a second, and one NIBP
+	static final int FRAMES = MONITORS * (SECONDS * 13 + 1);
+	static final int CHUNK = 1460;
+
+	@Param({ "0", "1", "2", "4", "8" })
+	int _threads;
+
+	byte[] _stream;
+	DecodePool _pool;
+	final MllpFramer[] _framers = new MllpFramer[MONITORS];
+	final FrameHandler[] _handlers = new FrameHandler[MONITORS];
+	final AtomicLong _handled = new AtomicLong();
+
+	@Setup
+	public void setup(final Blackhole bh) {
+		SyntheticMonitor source = new SyntheticMonitor(0, SECONDS, SyntheticMonitor.LEADS, 250, 60);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		while (source.next()) {
+			out.write(source.data(), 0, source.length());
+		}
+		_stream = out.toByteArray();
+		_pool = _threads == 0 ? null : new DecodePool(_threads, 1024);
+		for (int i = 0; i < MONITORS; i++) {
+			final HL7Segment segment = new HL7Segment();
+			final PayloadPublisher publisher = new PayloadPublisher(new PayloadSerializer.Json(),
+					new PayloadPublisher.PayloadSink() {
+						public void publish(byte[] buf, int offset, int length, boolean text) {
+							bh.consume(length);
+						}
+					}, 0, 0);
+			FrameHandler decode = new FrameHandler() {
+				public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+					HL7Message msg = HL7Utils.create(segment, buf, offset, length);
+					if (msg != null) {
+						publisher.add(msg);
+					}
+					_handled.incrementAndGet();
+					return true;
+				}
+			};
+			_framers[i] = new MllpFramer();
+			_handlers[i] = _pool == null ? decode : _pool.shard(decode);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (_pool != null) {
+			_pool.shutdown();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FRAMES)
+	public void decode() {
+		long target = _handled.get() + FRAMES;
+		// the monitors' streams interleaved, as one reader sees them
+		for (int pos = 0; pos < _stream.length; pos += CHUNK) {
+			for (int i = 0; i < MONITORS; i++) {
+				_framers[i].feed(_stream, pos, Math.min(CHUNK, _stream.length - pos));
+				_framers[i].drain(_handlers[i]);
+			}
+		}
+		while (_handled.get() < target) {
+			Thread.yield();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class DecodePoolTest extends TestCase {
+	static final int MONITORS = 50;
+	static final int FRAMES = 2000;
+
+	/**
+	 * Checks that its frames come in order and one at a time.
+	 */
+	static class Sequence implements FrameHandler {
+		final AtomicBoolean _busy = new AtomicBoolean();
+		int _next;
+		volatile String _error;
+
+		public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+			if (!_busy.compareAndSet(false, true)) {
+				_error = "concurrent";
+			}
+			int seq = ByteBuffer.wrap(buf, offset, length).getInt();
+			if (seq != _next && _error == null) {
+				_error = "expected " + _next + " got " + seq;
+			}
+			_next = seq + 1;
+			_busy.set(false);
+			return true;
+		}
+	}
+
+	public void testOrderPerMonitor() throws Exception {
+		// small shards, so readers are also refused
+		DecodePool pool = new DecodePool(4, 16);
+		final Sequence[] handlers = new Sequence[MONITORS];
+		final FrameHandler[] shards = new FrameHandler[MONITORS];
+		for (int i = 0; i < MONITORS; i++) {
+			handlers[i] = new Sequence();
+			shards[i] = pool.shard(handlers[i]);
+		}
+		// two readers with half the monitors each
+		Thread[] readers = new Thread[2];
+		for (int r = 0; r < readers.length; r++) {
+			final int first = r;
+			readers[r] = new Thread() {
+				public void run() {
+					byte[] buf = new byte[8];
+					for (int seq = 0; seq < FRAMES; seq++) {
+						for (int i = first; i < MONITORS; i += 2) {
+							ByteBuffer.wrap(buf).putInt(4, seq);
+							while (!shards[i].onFrame(buf, 4, 4, System.nanoTime())) {
+								Thread.yield();
+							}
+						}
+					}
+				}
+			};
+			readers[r].start();
+		}
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		pool.shutdown();
+		for (Sequence s : handlers) {
+			assertNull(s._error, s._error);
+			assertEquals(FRAMES, s._next);
+		}
+	}
+
+	public void testSaturatedShardPausesOnlyItsConnection() throws Exception {
+		final int frames = 200;
+		StandInMonitorServer server = new StandInMonitorServer(
+				StandInMonitorServer.repeat(StandInMonitorServer.vitalFrame(101, "72", "20181010101010"), frames));
+		server.start();
+		// one worker and one loop for both monitors
+		DecodePool pool = new DecodePool(1, 4);
+		GatewayEngine engine = new GatewayEngine(1);
+		final AtomicBoolean stuck = new AtomicBoolean(true);
+		final AtomicInteger stuckTaken = new AtomicInteger();
+		final AtomicInteger flowing = new AtomicInteger();
+		try {
+			MonitorMetrics stuckMetrics = new MonitorMetrics("stuck");
+			engine.addTarget("127.0.0.1", server.getPort(), pool.shard(new FrameHandler() {
+				public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+					if (stuck.get()) {
+						return false;
+					}
+					stuckTaken.incrementAndGet();
+					return true;
+				}
+			}), stuckMetrics);
+			engine.addTarget("127.0.0.1", server.getPort(), pool.shard(new FrameHandler() {
+				public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+					flowing.incrementAndGet();
+					return true;
+				}
+			}), new MonitorMetrics("flowing"));
+			engine.start();
+
+			GatewayEngineTest.waitFor(flowing, frames, 5000);
+			assertEquals(frames, flowing.get());
+			assertEquals(0, stuckTaken.get());
+			assertTrue(pool.refused() > 0);
+			assertEquals(1, stuckMetrics.getReadPauses());
+
+			stuck.set(false);
+			GatewayEngineTest.waitFor(stuckTaken, frames, 5000);
+			assertEquals(frames, stuckTaken.get());
+		} finally {
+			engine.shutdown();
+			pool.shutdown();
+			server.shutdown();
+		}
+	}
+
+	public void testVitalMergeMatchesInline() throws Exception {
+		List<byte[]> frames = new ArrayList<byte[]>();
+		for (int t = 10; t < 40; t++) {
+			// each second's parameters split over two frames, merged by time
+			frames.add(strip(StandInMonitorServer.vitalFrame(101, String.valueOf(60 + t), "201810101010" + t)));
+			frames.add(strip(StandInMonitorServer.vitalFrame(160, String.valueOf(90 + t % 10), "201810101010" + t)));
+		}
+		List<String> inline = publish(frames, null);
+		DecodePool pool = new DecodePool(3, 4);
+		List<String> pooled = publish(frames, pool);
+		pool.shutdown();
+		assertEquals(29, inline.size());
+		assertEquals(inline, pooled);
+	}
+
+	static byte[] strip(byte[] frame) {
+		byte[] ret = new byte[frame.length - 3];
+		System.arraycopy(frame, 1, ret, 0, ret.length);
+		return ret;
+	}
+
+	static List<String> publish(List<byte[]> frames, DecodePool pool) throws Exception {
+		final List<String> out = Collections.synchronizedList(new ArrayList<String>());
+		PayloadPublisher publisher = new PayloadPublisher(new PayloadSerializer.Json(),
+				new PayloadPublisher.PayloadSink() {
+					public void publish(byte[] buf, int offset, int length, boolean text) {
+						out.add(new String(buf, offset, length, StandardCharsets.UTF_8));
+					}
+				}, 0, 0);
+		PublishQueue queue = new PublishQueue(publisher, 1024, false, false);
+		final AtomicInteger handled = new AtomicInteger();
+		final MonitorSession session = new MonitorSession(queue, null);
+		FrameHandler counted = new FrameHandler() {
+			public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+				if (!session.onFrame(buf, offset, length, readNanos)) {
+					return false;
+				}
+				handled.incrementAndGet();
+				return true;
+			}
+		};
+		FrameHandler handler = pool == null ? counted : pool.shard(counted);
+		for (byte[] frame : frames) {
+			while (!handler.onFrame(frame, 0, frame.length, System.nanoTime())) {
+				Thread.sleep(1);
+			}
+		}
+		GatewayEngineTest.waitFor(handled, frames.size(), 5000);
+		queue.shutdown();
+		return out;
+	}
+}
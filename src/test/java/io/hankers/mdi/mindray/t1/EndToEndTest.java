@@ -0,0 +1,221 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.hankers.mdi.mindray.t1.Models.ConnectIndication;
+import io.hankers.mdi.mindray.t1.Models.HL7Utils;
+import junit.framework.TestCase;
+
+/**
+ * Stand-in monitors through the gateway to a counting sink: capture and
+ * replay, pacing, the UDP announcement, and a throughput run reporting
+ * frames/sec, allocation, collections and decode-to-publish latency. The run
+ * is sized by e2e.beds, e2e.seconds and e2e.speed (0 as fast as possible);
+ * add -Xlog:gc (-verbose:gc before Java 9) to the test JVM for the GC log, e.g.
+ *
+ * mvn test -Dtest=EndToEndTest#testThroughput -De2e.beds=200 -De2e.seconds=60
+ */
+public class EndToEndTest extends TestCase {
+	// per second a vitals frame and twelve leads, and an NIBP at second 0
+	static final int FRAMES_PER_SECOND = 1 + SyntheticMonitor.LEADS.length;
+
+	final AtomicLong _payloads = new AtomicLong();
+	PublishQueue _queue;
+	final List<StandInMonitorServer> _servers = new ArrayList<StandInMonitorServer>();
+	final List<GatewayEngine> _engines = new ArrayList<GatewayEngine>();
+
+	protected void setUp() throws Exception {
+		PayloadPublisher publisher = new PayloadPublisher(new PayloadSerializer.Json(),
+				new PayloadPublisher.PayloadSink() {
+					public void publish(byte[] buf, int offset, int length, boolean text) {
+						_payloads.incrementAndGet();
+					}
+				}, 0, 0);
+		// blocking, every message is published
+		_queue = new PublishQueue(publisher, 1024, false, false);
+	}
+
+	protected void tearDown() throws Exception {
+		System.clearProperty("capture.dir");
+		_queue.shutdown();
+		for (GatewayEngine engine : _engines) {
+			engine.shutdown();
+		}
+		for (StandInMonitorServer server : _servers) {
+			server.shutdown();
+		}
+	}
+
+	StandInMonitorServer serve(StandInMonitorServer.SourceFactory sources, double speed) throws Exception {
+		StandInMonitorServer server = new StandInMonitorServer(sources, speed);
+		server.start();
+		_servers.add(server);
+		return server;
+	}
+
+	GatewayEngine engine() throws Exception {
+		GatewayEngine engine = new GatewayEngine(1);
+		_engines.add(engine);
+		return engine;
+	}
+
+	public void testCaptureAndReplay() throws Exception {
+		File dir = File.createTempFile("capture", "");
+		dir.delete();
+		System.setProperty("capture.dir", dir.getPath());
+		StandInMonitorServer server = serve(SyntheticMonitor.ward(5), 0);
+		GatewayEngine engine = engine();
+		MonitorMetrics recorded = new MonitorMetrics("recorded");
+		engine.addTarget("127.0.0.1", server.getPort(), new MonitorSession(_queue, recorded), recorded);
+		System.clearProperty("capture.dir");
+		engine.start();
+		int frames = 5 * FRAMES_PER_SECOND + 1;
+		waitFor(recorded, frames, 10000);
+		engine.shutdown();
+		assertEquals(frames, recorded.getFrames());
+		assertEquals(0, recorded.getParseFailures());
+
+		File[] files = dir.listFiles();
+		assertEquals(1, files.length);
+		final File capture = files[0];
+		server = serve(new StandInMonitorServer.SourceFactory() {
+			public StandInMonitorServer.Source create(int connection) throws java.io.IOException {
+				return new StandInMonitorServer.CaptureSource(capture);
+			}
+		}, 1);
+		engine = engine();
+		MonitorMetrics replayed = new MonitorMetrics("replayed");
+		engine.addTarget("127.0.0.1", server.getPort(), new MonitorSession(_queue, replayed), replayed);
+		engine.start();
+		waitFor(replayed, frames, 10000);
+		assertEquals(frames, replayed.getFrames());
+		assertEquals(recorded.getBytesRead(), replayed.getBytesRead());
+		assertEquals(recorded.getWaves(), replayed.getWaves());
+		assertEquals(recorded.getVitalSigns(), replayed.getVitalSigns());
+		capture.delete();
+		dir.delete();
+	}
+
+	public void testPacedReplay() throws Exception {
+		// three seconds of traffic at ten times the pace
+		StandInMonitorServer server = serve(SyntheticMonitor.ward(3), 10);
+		GatewayEngine engine = engine();
+		MonitorMetrics metrics = new MonitorMetrics("paced");
+		engine.addTarget("127.0.0.1", server.getPort(), new MonitorSession(_queue, metrics), metrics);
+		long start = System.nanoTime();
+		engine.start();
+		waitFor(metrics, 3 * FRAMES_PER_SECOND + 1, 10000);
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		assertEquals(3 * FRAMES_PER_SECOND + 1, metrics.getFrames());
+		assertTrue(elapsedMillis + " ms", elapsedMillis >= 250);
+		assertEquals(3 * SyntheticMonitor.LEADS.length, metrics.getWaves());
+	}
+
+	public void testAnnounce() throws Exception {
+		DatagramChannel ch = DatagramChannel.open();
+		try {
+			ch.bind(new InetSocketAddress("127.0.0.1", 0));
+			SyntheticMonitor.announce((InetSocketAddress) ch.getLocalAddress(), "10.1.2.3", 4601, 3);
+			ByteBuffer buf = ByteBuffer.allocate(1500);
+			HL7Segment segment = new HL7Segment();
+			for (int i = 0; i < 3; i++) {
+				buf.clear();
+				ch.receive(buf);
+				ConnectIndication ci = (ConnectIndication) HL7Utils.create(segment, buf.array(), 0, buf.position());
+				assertEquals("10.1.2.3", ci._ip);
+				assertEquals(4601, ci._port);
+				assertTrue(ci._admitted);
+			}
+		} finally {
+			ch.close();
+		}
+	}
+
+	public void testStartupWarmup() {
+		// twelve leads and the pleth each second, vitals merged by second
+		assertTrue(StartupWarmup.run(3) >= 3 * (SyntheticMonitor.LEADS.length + 1));
+	}
+
+	public void testThroughput() throws Exception {
+		int beds = Integer.getInteger("e2e.beds", 20);
+		int seconds = Integer.getInteger("e2e.seconds", 10);
+		double speed = Double.parseDouble(System.getProperty("e2e.speed", "0"));
+
+		StandInMonitorServer server = serve(SyntheticMonitor.ward(seconds), speed);
+		GatewayEngine engine = engine();
+		MonitorMetrics[] metrics = new MonitorMetrics[beds];
+		for (int i = 0; i < beds; i++) {
+			metrics[i] = new MonitorMetrics("bed" + i);
+			engine.addTarget("127.0.0.1", server.getPort(), new MonitorSession(_queue, metrics[i]), metrics[i]);
+		}
+
+		long allocated = allocatedBytes();
+		long[] gc = collections();
+		long start = System.nanoTime();
+		engine.start();
+		int frames = seconds * FRAMES_PER_SECOND + (seconds + 59) / 60;
+		for (MonitorMetrics m : metrics) {
+			waitFor(m, frames, 60000 + (long) (speed > 0 ? seconds * 1000 / speed : 0));
+		}
+		long elapsed = System.nanoTime() - start;
+		allocated = allocatedBytes() - allocated;
+		long[] gcAfter = collections();
+
+		long total = 0;
+		long p99 = 0;
+		for (MonitorMetrics m : metrics) {
+			assertEquals(frames, m.getFrames());
+			assertEquals(0, m.getParseFailures());
+			total += m.getFrames();
+			p99 = Math.max(p99, m.getPublishLatencyP99Micros());
+		}
+		double secs = elapsed / 1e9;
+		System.out.printf("%d beds, %d frames in %.2f s: %.0f frames/s, %.1f MB/s allocated, "
+				+ "%d GCs taking %d ms, %d payloads, worst bed p99 decode-to-publish %d us%n", beds, total, secs,
+				total / secs, allocated / secs / (1 << 20), gcAfter[0] - gc[0], gcAfter[1] - gc[1], _payloads.get(),
+				p99);
+	}
+
+	/**
+	 * @return bytes allocated so far by the live threads, -1 if unsupported
+	 */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		long sum = 0;
+		for (long bytes : ((com.sun.management.ThreadMXBean) threads)
+				.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			sum += Math.max(0, bytes);
+		}
+		return sum;
+	}
+
+	/**
+	 * @return collections and their millis so far, over all collectors
+	 */
+	static long[] collections() {
+		long[] ret = new long[2];
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			ret[0] += Math.max(0, gc.getCollectionCount());
+			ret[1] += Math.max(0, gc.getCollectionTime());
+		}
+		return ret;
+	}
+
+	static void waitFor(MonitorMetrics metrics, long frames, long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (metrics.getFrames() < frames && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Load test: hundreds of simulated monitors served by a couple of event loops.
+ */
+public class GatewayEngineTest extends TestCase {
+	static final int MONITORS = 300;
+	static final int FRAMES = 20;
+
+	StandInMonitorServer _server;
+	GatewayEngine _engine;
+	final AtomicInteger _frames = new AtomicInteger();
+	final FrameHandler _counter = new FrameHandler() {
+		public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+			if (buf[offset] == 'M' && buf[offset + length - 1] == '\r') {
+				_frames.incrementAndGet();
+			}
+			return true;
+		}
+	};
+
+	protected void setUp() throws Exception {
+		byte[] frame = StandInMonitorServer.vitalFrame(101, "72", "20181010101010");
+		_server = new StandInMonitorServer(StandInMonitorServer.repeat(frame, FRAMES));
+		_server.start();
+		_engine = new GatewayEngine(2);
+		_engine._heartbeatInterval = 200;
+		_engine._reconnectMin = 100;
+	}
+
+	protected void tearDown() throws Exception {
+		_engine.shutdown();
+		_server.shutdown();
+	}
+
+	public void testManyMonitors() throws Exception {
+		for (int i = 0; i < MONITORS; i++) {
+			_engine.addTarget("127.0.0.1", _server.getPort(), _counter);
+		}
+		_engine.start();
+
+		long start = System.currentTimeMillis();
+		waitFor(_frames, MONITORS * FRAMES, 20000);
+		long elapsed = System.currentTimeMillis() - start;
+		assertEquals(MONITORS * FRAMES, _frames.get());
+		System.out.println(MONITORS + " monitors, " + _frames.get() + " frames in " + elapsed + " ms");
+
+		// every connection sends a heartbeat and a wave query per interval
+		waitFor(_server._framesReceived, MONITORS * 4, 5000);
+		assertTrue(_server._framesReceived.get() >= MONITORS * 4);
+		for (MonitorConnection conn : _engine.getConnections()) {
+			assertTrue(conn.isConnected());
+		}
+	}
+
+	public void testReconnectAfterPeerClose() throws Exception {
+		_server._closeAfterBurst = true;
+		for (int i = 0; i < 50; i++) {
+			_engine.addTarget("127.0.0.1", _server.getPort(), _counter);
+		}
+		_engine.start();
+
+		waitFor(_server._accepted, 150, 10000);
+		assertTrue(_server._accepted.get() >= 150);
+		waitFor(_frames, 150 * FRAMES, 10000);
+		assertTrue(_frames.get() >= 150 * FRAMES);
+	}
+
+	public void testIdleTimeout() throws Exception {
+		// accepts and never sends
+		ServerSocketChannel silent = ServerSocketChannel.open();
+		try {
+			silent.bind(new InetSocketAddress("127.0.0.1", 0));
+			_engine._idleTimeout = 300;
+			MonitorMetrics metrics = new MonitorMetrics("silent");
+			_engine.addTarget("127.0.0.1", silent.socket().getLocalPort(), _counter, metrics);
+			_engine.start();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (metrics.getConnects() < 2 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			assertTrue(metrics.getIdleTimeouts() >= 1);
+			assertTrue(metrics.getConnects() >= 2);
+		} finally {
+			silent.close();
+		}
+	}
+
+	public void testBackoffAfterPeerGone() throws Exception {
+		MonitorMetrics metrics = new MonitorMetrics("gone");
+		_engine.addTarget("127.0.0.1", _server.getPort(), _counter, metrics);
+		_engine.start();
+		waitFor(_frames, FRAMES, 5000);
+		_server.shutdown();
+		Thread.sleep(1500);
+		// 100, 200, 400 and 800 ms apart at most, not a spin
+		assertTrue(metrics.getReconnects() + " reconnects", metrics.getReconnects() <= 6);
+		assertTrue(metrics.getReconnects() >= 2);
+	}
+
+	public void testReconnectLatency() throws Exception {
+		_server._closeAfterBurst = true;
+		MonitorMetrics metrics = new MonitorMetrics("closing");
+		_engine.addTarget("127.0.0.1", _server.getPort(), _counter, metrics);
+		_engine.start();
+		waitFor(_frames, 5 * FRAMES, 5000);
+		assertTrue(metrics.getConnects() >= 5);
+		// each burst resets the backoff, so every reconnect takes one short delay
+		assertTrue(metrics.getReconnectLatencyMaxMillis() + " ms", metrics.getReconnectLatencyMaxMillis() < 500);
+	}
+
+	public void testRefusedFramesPauseOnlyTheirConnection() throws Exception {
+		final AtomicBoolean full = new AtomicBoolean(true);
+		final AtomicInteger taken = new AtomicInteger();
+		FrameHandler refusing = new FrameHandler() {
+			public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+				if (full.get()) {
+					return false;
+				}
+				taken.incrementAndGet();
+				return true;
+			}
+		};
+		// both on the one loop
+		GatewayEngine engine = new GatewayEngine(1);
+		try {
+			MonitorMetrics metrics = new MonitorMetrics("refusing");
+			MonitorConnection paused = engine.addTarget("127.0.0.1", _server.getPort(), refusing, metrics);
+			engine.addTarget("127.0.0.1", _server.getPort(), _counter, new MonitorMetrics("flowing"));
+			engine.start();
+			waitFor(_frames, FRAMES, 5000);
+			assertEquals(FRAMES, _frames.get());
+			assertEquals(0, taken.get());
+			assertEquals(1, metrics.getReadPauses());
+			assertTrue(paused.isConnected());
+
+			full.set(false);
+			waitFor(taken, FRAMES, 5000);
+			assertEquals(FRAMES, taken.get());
+		} finally {
+			engine.shutdown();
+		}
+	}
+
+	public void testBackoffBounds() {
+		ReconnectBackoff backoff = new ReconnectBackoff(100, 1000);
+		long[] ceilings = { 100, 200, 400, 800, 1000, 1000 };
+		for (long ceiling : ceilings) {
+			long delay = backoff.next();
+			assertTrue(delay + " for " + ceiling, delay >= ceiling / 2 && delay <= ceiling);
+		}
+		backoff.reset();
+		assertTrue(backoff.next() <= 100);
+	}
+
+	static void waitFor(AtomicInteger counter, int expected, long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (counter.get() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+	}
+}
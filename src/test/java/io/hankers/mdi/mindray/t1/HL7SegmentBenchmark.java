@@ -0,0 +1,61 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * OBX tokenizing: the former new String + split("\\|") path against
+ * {@link HL7Segment}. Run with -prof gc to compare allocation rates.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="HL7SegmentBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HL7SegmentBenchmark {
+	byte[] _obx;
+	HL7Segment _segment;
+
+	@Setup
+	public void setup() {
+		_obx = "OBX||NM|101^HR|2101|72||||||F||||20181010101010".getBytes();
+		_segment = new HL7Segment();
+	}
+
+	@Benchmark
+	public void legacySplit(Blackhole bh) {
+		String segment = new String(_obx, 0, _obx.length);
+		String[] fields = segment.split("\\|");
+		if (segment.startsWith("OBX")) {
+			String idName = fields.length > 3 ? fields[3] : null;
+			String val = fields.length > 5 ? fields[5] : null;
+			if (val != null && !val.isEmpty() && idName.startsWith("101^")) {
+				bh.consume(val);
+			}
+		}
+	}
+
+	@Benchmark
+	public void segmentCursor(Blackhole bh) {
+		HL7Segment seg = _segment.reset(_obx, 0, _obx.length);
+		if (seg.isType("OBX") && !seg.isEmpty(5)) {
+			if (seg.parseLong(seg.component(3, 0), -1) == 101) {
+				bh.consume(seg.parseDouble(5, Double.NaN));
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package io.hankers.mdi.mindray.t1;
+
+import io.hankers.mdi.mindray.t1.Models.ConnectIndication;
+import io.hankers.mdi.mindray.t1.Models.HL7Utils;
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import junit.framework.TestCase;
+
+public class HL7SegmentTest extends TestCase {
+	final HL7Segment _segment = new HL7Segment();
+
+	HL7Segment segment(String s) {
+		byte[] buf = ("xx" + s + "yy").getBytes();
+		return _segment.reset(buf, 2, s.length());
+	}
+
+	public void testFields() {
+		HL7Segment seg = segment("OBX||NM|101^HR|2101|72||||||F");
+		assertTrue(seg.isType("OBX"));
+		assertFalse(seg.isType("OB"));
+		assertEquals(12, seg.fieldCount());
+		assertTrue(seg.isEmpty(1));
+		assertEquals("NM", seg.getString(2));
+		assertEquals("101^HR", seg.getString(3));
+		assertEquals("F", seg.getString(11));
+		assertNull(seg.getString(12));
+		assertTrue(seg.isEmpty(40));
+	}
+
+	public void testComponents() {
+		HL7Segment seg = segment("PV1||I|^^ICU&1&3232235786&4601&&1|x");
+		long location = seg.component(3, 2);
+		assertEquals("ICU&1&3232235786&4601&&1", seg.getString(location));
+		assertEquals(6, seg.count(location, HL7Segment.SUBCOMPONENT));
+		assertEquals("4601", seg.getString(seg.subcomponent(3, 2, 3)));
+		assertEquals(0, HL7Segment.length(seg.subcomponent(3, 2, 4)));
+		assertEquals(HL7Segment.NONE, seg.subcomponent(3, 2, 6));
+		assertEquals(HL7Segment.NONE, seg.component(3, 3));
+		assertEquals("x", seg.getString(seg.component(4, 0)));
+	}
+
+	public void testNumbers() {
+		HL7Segment seg = segment("X|72|-100|36.5|-0.25|abc||+7|.5|123456789012");
+		assertEquals(72, seg.parseInt(1, -1));
+		assertEquals(-100, seg.parseInt(2, 0));
+		assertEquals(-1, seg.parseInt(3, -1));
+		assertEquals(36.5, seg.parseDouble(3, Double.NaN), 0);
+		assertEquals(-0.25, seg.parseDouble(4, Double.NaN), 0);
+		assertTrue(Double.isNaN(seg.parseDouble(5, Double.NaN)));
+		assertTrue(Double.isNaN(seg.parseDouble(6, Double.NaN)));
+		assertEquals(7, seg.parseInt(7, 0));
+		assertEquals(0.5, seg.parseDouble(8, Double.NaN), 0);
+		assertEquals(123456789012L, seg.parseLong(seg.field(9), 0));
+	}
+
+	public void testVitalSign() {
+		String hl7 = "MSH|^~\\&|||||||ORU^R01|204|P|2.3.1|\r" //
+				+ "OBX||NM|101^HR|2101|72||||||F\r" //
+				+ "OBX||NM|160^SpO2|2101|98||||||F\r" //
+				+ "OBX||NM|200^T1|2101|36.5||||||F\r";
+		byte[] buf = hl7.getBytes();
+		VitalSign vs = (VitalSign) HL7Utils.create(buf, 0, buf.length);
+		assertEquals(72.0, vs.get(VitalParams.HR), 0);
+		assertEquals(98.0, vs.get(VitalParams.SPO2), 0);
+		assertEquals(36.5, vs.get(VitalParams.TEMP), 0);
+		assertFalse(vs.has(VitalParams.SYS));
+	}
+
+	public void testConnectIndication() {
+		String hl7 = "MSH|^~\\&|||||||ADT^A01|101|P|2.3.1|\r" //
+				+ "PID|||||Doe^John\r" //
+				+ "PV1||I|^^ICU&1&3232235786&4601&&1\r";
+		byte[] buf = hl7.getBytes();
+		ConnectIndication ci = (ConnectIndication) HL7Utils.create(buf, 0, buf.length);
+		assertEquals("192.168.1.10", ci._ip);
+		assertEquals(4601, ci._port);
+		assertTrue(ci._admitted);
+		assertEquals("I", ci._patientClass);
+	}
+}
@@ -0,0 +1,44 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * An OBX-14 timestamp to epoch millis: the byte parser against the former
+ * SimpleDateFormat of the String field.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="HL7TimeBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HL7TimeBenchmark {
+	final byte[] _value = "20181010101010".getBytes(StandardCharsets.US_ASCII);
+	final HL7Time _time = new HL7Time();
+	final SimpleDateFormat _sdf = new SimpleDateFormat("yyyyMMddHHmmss");
+
+	@Benchmark
+	public long bytes() {
+		return _time.parse(_value, 0, _value.length);
+	}
+
+	@Benchmark
+	public long simpleDateFormat() throws ParseException {
+		return _sdf.parse(new String(_value, StandardCharsets.US_ASCII)).getTime();
+	}
+}
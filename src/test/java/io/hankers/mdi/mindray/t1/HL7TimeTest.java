@@ -0,0 +1,87 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import junit.framework.TestCase;
+
+public class HL7TimeTest extends TestCase {
+
+	static long parse(HL7Time time, String value) {
+		byte[] buf = value.getBytes(StandardCharsets.US_ASCII);
+		return time.parse(buf, 0, buf.length);
+	}
+
+	public void testMatchesSimpleDateFormat() throws Exception {
+		Random random = new Random(7);
+		for (String id : new String[] { "UTC", "Asia/Shanghai", "Europe/Berlin", "America/New_York" }) {
+			TimeZone zone = TimeZone.getTimeZone(id);
+			SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
+			sdf.setTimeZone(zone);
+			HL7Time time = new HL7Time(zone);
+			long t = 946684800000L;
+			for (int i = 0; i < 20000; i++) {
+				// minutes to days apart, through several daylight saving changes
+				t += (random.nextInt(4) == 0 ? random.nextInt(3 * 86400) : random.nextInt(600)) * 1000L;
+				String value = sdf.format(t);
+				assertEquals(id + " " + value, sdf.parse(value).getTime(), parse(time, value));
+			}
+		}
+	}
+
+	public void testFormatMatchesSimpleDateFormat() {
+		Random random = new Random(11);
+		byte[] buf = new byte[17];
+		for (String id : new String[] { "UTC", "Asia/Shanghai", "Europe/Berlin", "America/New_York" }) {
+			TimeZone zone = TimeZone.getTimeZone(id);
+			SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmssSSS");
+			sdf.setTimeZone(zone);
+			HL7Time time = new HL7Time(zone);
+			long t = 946684800000L;
+			for (int i = 0; i < 20000; i++) {
+				t += random.nextInt(3 * 86400 * 1000);
+				assertEquals(17, time.format(t, buf, 0));
+				assertEquals(sdf.format(t), new String(buf, StandardCharsets.US_ASCII));
+			}
+		}
+	}
+
+	public void testPrecisionAndZones() {
+		HL7Time utc = new HL7Time(TimeZone.getTimeZone("UTC"));
+		assertEquals(1539137410000L, parse(utc, "20181010021010"));
+		assertEquals(1539137410123L, parse(utc, "20181010021010.123"));
+		assertEquals(1539137410500L, parse(utc, "20181010021010.5"));
+		assertEquals(1539137410123L, parse(utc, "20181010021010.1234"));
+		assertEquals(1539129600000L, parse(utc, "20181010"));
+		assertEquals(1514764800000L, parse(utc, "2018"));
+		assertEquals(1539137410000L, parse(utc, "20181010101010+0800"));
+		assertEquals(1539137350000L, parse(utc, "20181009203910-0530"));
+		// a zone in the value wins over the reader's
+		assertEquals(1539137410000L, parse(new HL7Time(TimeZone.getTimeZone("Asia/Shanghai")), "20181010021010+0000"));
+	}
+
+	public void testInvalid() {
+		HL7Time time = new HL7Time(TimeZone.getTimeZone("UTC"));
+		for (String value : new String[] { "", "201", "20181", "20181310", "20181000", "2018101025", "20181010021060",
+				"20181010021010.", "20181010021010.12345", "2018101002101012", "20181010021010+08", "20181010x",
+				"20181010 " }) {
+			assertEquals(value, HL7Time.INVALID, parse(time, value));
+		}
+	}
+
+	public void testVitalSignTimes() throws Exception {
+		long before = System.currentTimeMillis();
+		// OBX-14, local time of the gateway
+		VitalSign vs = VitalSignTest.parse("OBX||NM|101^HR|2101|72||||||F|||20181010101010");
+		assertEquals(new SimpleDateFormat("yyyyMMddHHmmss").parse("20181010101010").getTime(), vs._timestamp);
+		assertTrue(vs._receivedMillis >= before);
+
+		// no time from the monitor, the receive time to the second
+		vs = VitalSignTest.parse("OBX||NM|101^HR|2101|72||||||F");
+		assertTrue(vs._receivedMillis >= before);
+		assertEquals(vs._receivedMillis / 1000 * 1000, vs._timestamp);
+	}
+}
@@ -0,0 +1,61 @@
+package io.hankers.mdi.mindray.t1;
+
+import io.hankers.mdi.mindray.t1.Models.HL7Utils;
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+import junit.framework.TestCase;
+
+public class MessagePoolTest extends TestCase {
+
+	public void testReuse() {
+		MessagePool pool = new MessagePool(4);
+		SyntheticMonitor monitor = new SyntheticMonitor(0, 1, new int[] { 1114 }, 250, 0);
+		byte[] waveFrame = DecodePoolTest.strip(monitor.wave(1114));
+		HL7Segment segment = new HL7Segment();
+
+		Wave wave = (Wave) HL7Utils.create(segment, pool, waveFrame, 0, waveFrame.length);
+		int[] samples = wave._values.get(1114);
+		assertEquals(250, wave._values.count(0));
+		wave._resampling = new WaveResampling();
+		wave.release();
+		// a second release must not queue it twice
+		wave.release();
+
+		Wave again = (Wave) HL7Utils.create(segment, pool, waveFrame, 0, waveFrame.length);
+		assertSame(wave, again);
+		assertSame(samples, again._values.get(1114));
+		assertNull(again._resampling);
+		assertNotSame(again, HL7Utils.create(segment, pool, waveFrame, 0, waveFrame.length));
+
+		byte[] hr = DecodePoolTest.strip(StandInMonitorServer.vitalFrame(101, "72", "20181010101010"));
+		byte[] spo2 = DecodePoolTest.strip(StandInMonitorServer.vitalFrame(160, "98", "20181010101011"));
+		VitalSign vs = (VitalSign) HL7Utils.create(segment, pool, hr, 0, hr.length);
+		vs.release();
+		VitalSign next = (VitalSign) HL7Utils.create(segment, pool, spo2, 0, spo2.length);
+		assertSame(vs, next);
+		assertFalse(next.has(VitalParams.HR));
+		assertEquals(98.0, next.get(VitalParams.SPO2), 0);
+		assertEquals(3, pool.allocated());
+	}
+
+	public void testSteadyStateThroughSession() throws Exception {
+		final PayloadPublisher publisher = new PayloadPublisher(new PayloadSerializer.Json(),
+				new PayloadPublisher.PayloadSink() {
+					public void publish(byte[] buf, int offset, int length, boolean text) {
+					}
+				}, 0, 0);
+		PublishQueue queue = new PublishQueue(publisher, 64, true, true);
+		MonitorSession session = new MonitorSession(queue, null);
+		SyntheticMonitor monitor = new SyntheticMonitor(0, 600, SyntheticMonitor.LEADS, 250, 60);
+		int frames = 0;
+		while (monitor.next()) {
+			byte[] frame = DecodePoolTest.strip(monitor.data());
+			session.onFrame(frame, 0, frame.length, System.nanoTime());
+			frames++;
+		}
+		queue.shutdown();
+		// bounded by what the queue holds, not by the traffic
+		assertTrue(session._pool.allocated() + " for " + frames, session._pool.allocated() < 200);
+	}
+}
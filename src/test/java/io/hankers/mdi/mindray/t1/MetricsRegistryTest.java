@@ -0,0 +1,123 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+public class MetricsRegistryTest extends TestCase {
+
+	public void testHistogramPercentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (long v = 1; v <= 100000; v++) {
+			h.record(v * 1000);
+		}
+		assertEquals(100000, h.count());
+		assertEquals(100000000L, h.max());
+		assertNear(50000000L, h.valueAtPercentile(50));
+		assertNear(99000000L, h.valueAtPercentile(99));
+		assertEquals(100000000L, h.valueAtPercentile(100));
+		for (long v = 0; v < 1 << 20; v += 7) {
+			long high = LatencyHistogram.highestValue(LatencyHistogram.index(v));
+			assertTrue(v + " " + high, high >= v && high - v <= Math.max(1, v / 16));
+		}
+	}
+
+	static void assertNear(long expected, long actual) {
+		assertTrue(expected + " ~ " + actual, Math.abs(actual - expected) <= expected * 0.04);
+	}
+
+	public void testCountersJmxAndScrape() throws Exception {
+		byte[] frames = new byte[0];
+		for (int i = 0; i < 10; i++) {
+			frames = concat(frames, StandInMonitorServer.vitalFrame(101, "7" + i, "2018101010101" + i));
+		}
+		frames = concat(frames, new byte[] { 0x0B, 'g', 'a', 'r', 'b', 'a', 'g', 'e', 0x1C, 0x0D });
+		StandInMonitorServer server = new StandInMonitorServer(frames);
+		server.start();
+		GatewayEngine engine = new GatewayEngine(1);
+		MonitorConnection conn = engine.addTarget("127.0.0.1", server.getPort());
+		engine.start();
+
+		MonitorMetrics metrics = MetricsRegistry.register("127.0.0.1:" + server.getPort());
+		for (int i = 0; i < 200 && (metrics.getFrames() < 11 || metrics.getPublished() == 0); i++) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(50);
+		engine.shutdown();
+		server.shutdown();
+		assertTrue(conn != null);
+
+		assertEquals(frames.length, metrics.getBytesRead());
+		assertEquals(11, metrics.getFrames());
+		assertEquals(10, metrics.getVitalSigns());
+		assertEquals(1, metrics.getParseFailures());
+		// the last one waits for a newer timestamp, the publish queue may
+		// coalesce the others
+		long published = metrics.getPublished();
+		assertTrue(published >= 1 && published <= 9);
+
+		ObjectName on = new ObjectName(
+				MetricsRegistry.DOMAIN + ":type=Monitor,name=" + ObjectName.quote(metrics.getName()));
+		assertEquals(10L, ManagementFactory.getPlatformMBeanServer().getAttribute(on, "VitalSigns"));
+
+		MetricsRegistry.ScrapeServer scrape = new MetricsRegistry.ScrapeServer("127.0.0.1", 0);
+		scrape.start();
+		Socket client = new Socket("127.0.0.1", scrape.getPort());
+		client.getOutputStream().write("GET /metrics HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+		String page = read(client.getInputStream());
+		client.close();
+		scrape.shutdown();
+
+		assertTrue(page, page.startsWith("HTTP/1.0 200 OK"));
+		String label = "{monitor=\"" + metrics.getName() + "\"";
+		assertTrue(page, page.contains("mindray_t1_frames_total" + label + "} 11\n"));
+		assertTrue(page, page.contains("mindray_t1_messages_total" + label + ",type=\"VitalSign\"} 10\n"));
+		assertTrue(page, page.contains("mindray_t1_publish_latency_seconds_count" + label + "} " + published + "\n"));
+	}
+
+	public void testRemovedTargetUnregisters() throws Exception {
+		GatewayEngine engine = new GatewayEngine(1);
+		try {
+			// nothing listens on port 1, the connection just keeps retrying
+			MonitorConnection first = engine.addTarget("127.0.0.1", 1);
+			MonitorConnection second = engine.addTarget("127.0.0.1", 1);
+			MonitorMetrics metrics = first._metrics;
+			assertSame(metrics, second._metrics);
+			ObjectName on = MetricsRegistry.objectName(metrics.getName());
+
+			engine.removeTarget(first);
+			assertTrue(MetricsRegistry.getMonitors().contains(metrics));
+			assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(on));
+
+			engine.removeTarget(second);
+			assertFalse(MetricsRegistry.getMonitors().contains(metrics));
+			assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(on));
+			assertFalse(MetricsRegistry.scrape().contains("{monitor=\"" + metrics.getName() + "\""));
+		} finally {
+			engine.shutdown();
+		}
+	}
+
+	static byte[] concat(byte[] a, byte[] b) {
+		byte[] ret = new byte[a.length + b.length];
+		System.arraycopy(a, 0, ret, 0, a.length);
+		System.arraycopy(b, 0, ret, a.length, b.length);
+		return ret;
+	}
+
+	static String read(InputStream in) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = in.read(buf)) > 0) {
+			out.write(buf, 0, n);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,107 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Frames/sec of {@link MllpFramer} against the former 2048-byte
+ * DataReceiver.cutHl7 loop, both fed the same stream in TCP-sized chunks.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench=MllpFramerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MllpFramerBenchmark {
+	static final int FRAMES = 1000;
+	static final int CHUNK = 1460;
+
+	byte[] _stream;
+	MllpFramer _framer;
+	byte[] _legacyBuf;
+	Blackhole _bh;
+	FrameHandler _sink;
+
+	@Setup
+	public void setup(final Blackhole bh) {
+		byte[] frame = StandInMonitorServer.vitalFrame(101, "72", "20181010101010");
+		_stream = StandInMonitorServer.repeat(frame, FRAMES);
+		_framer = new MllpFramer();
+		_legacyBuf = new byte[2048];
+		_bh = bh;
+		_sink = new FrameHandler() {
+			public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+				bh.consume(length);
+				return true;
+			}
+		};
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FRAMES)
+	public void mllpFramer() {
+		for (int pos = 0; pos < _stream.length; pos += CHUNK) {
+			_framer.feed(_stream, pos, Math.min(CHUNK, _stream.length - pos));
+			_framer.drain(_sink);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FRAMES)
+	public void legacyCutHl7() {
+		int offset = 0;
+		for (int pos = 0; pos < _stream.length;) {
+			int readCount = Math.min(Math.min(CHUNK, _stream.length - pos), _legacyBuf.length - offset);
+			System.arraycopy(_stream, pos, _legacyBuf, offset, readCount);
+			pos += readCount;
+
+			final int availableCount = offset + readCount;
+			int unprocessed = cutHl7(_legacyBuf, availableCount);
+			if (unprocessed > 0 && availableCount > unprocessed) {
+				int m = 0;
+				for (int i = unprocessed; i < availableCount; i++) {
+					_legacyBuf[m++] = _legacyBuf[i];
+				}
+				offset = availableCount - unprocessed;
+			} else {
+				offset = 0;
+			}
+		}
+	}
+
+	private int cutHl7(byte[] buf, int count) {
+		int pos0B = -1;
+		int pos1C = -1;
+		int last1C = -1;
+		for (int i = 0; i < count && i < buf.length; i++) {
+			switch (buf[i]) {
+			case 0x0B:
+				pos0B = i;
+				break;
+			case 0x1C:
+				pos1C = i;
+				if (pos0B >= 0 && pos1C >= 0) {
+					last1C = i;
+					_bh.consume(pos1C - pos0B - 1);
+				}
+				break;
+			}
+		}
+		return last1C + 1;
+	}
+}
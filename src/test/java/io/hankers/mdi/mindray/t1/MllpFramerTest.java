@@ -0,0 +1,149 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Property tests: random frames, split at random points or merged into one
+ * read, must come out of the framer unchanged and in order.
+ */
+public class MllpFramerTest extends TestCase {
+	final List<byte[]> _received = new ArrayList<byte[]>();
+	final FrameHandler _collector = new FrameHandler() {
+		public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+			_received.add(Arrays.copyOfRange(buf, offset, offset + length));
+			return true;
+		}
+	};
+
+	public void testSingleFrame() {
+		MllpFramer framer = new MllpFramer(16, 1 << 20);
+		byte[] frame = frame("MSH|^~\\&|||||||ORU^R01|204|P|2.3.1|\r".getBytes());
+		framer.feed(frame, 0, frame.length);
+		assertEquals(1, framer.drain(_collector));
+		assertEquals("MSH|^~\\&|||||||ORU^R01|204|P|2.3.1|\r", new String(_received.get(0)));
+		assertEquals(0, framer.buffered());
+	}
+
+	public void testRandomSplitsAndMerges() {
+		Random rnd = new Random(20181010);
+		for (int round = 0; round < 200; round++) {
+			_received.clear();
+			List<byte[]> payloads = new ArrayList<byte[]>();
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			int count = 1 + rnd.nextInt(30);
+			for (int i = 0; i < count; i++) {
+				// mostly small frames, sometimes far larger than the initial buffer
+				byte[] payload = payload(rnd, rnd.nextInt(10) == 0 ? 1 + rnd.nextInt(64 * 1024) : rnd.nextInt(300));
+				payloads.add(payload);
+				if (rnd.nextBoolean()) {
+					// noise between frames must be skipped
+					byte[] noise = payload(rnd, 1 + rnd.nextInt(5));
+					stream.write(noise, 0, noise.length);
+				}
+				byte[] frame = frame(payload);
+				stream.write(frame, 0, frame.length);
+			}
+
+			byte[] all = stream.toByteArray();
+			MllpFramer framer = new MllpFramer(1024, 1 << 20);
+			int pos = 0;
+			while (pos < all.length) {
+				int chunk = Math.min(all.length - pos, 1 + rnd.nextInt(rnd.nextBoolean() ? 16 : 4096));
+				framer.feed(all, pos, chunk);
+				framer.drain(_collector);
+				pos += chunk;
+			}
+
+			assertEquals(payloads.size(), _received.size());
+			for (int i = 0; i < payloads.size(); i++) {
+				assertTrue("round " + round + " frame " + i, Arrays.equals(payloads.get(i), _received.get(i)));
+			}
+			assertEquals(0, framer.buffered());
+		}
+	}
+
+	public void testGarbageAndUnterminatedFrames() {
+		MllpFramer framer = new MllpFramer(1024, 1 << 20);
+		byte[] stream = concat("junk".getBytes(), new byte[] { 0x1C, 0x0D, 0x0B }, "lost".getBytes(),
+				frame("A\r".getBytes()), new byte[] { 0x0D, 0x0D }, frame("B\r".getBytes()));
+		framer.feed(stream, 0, stream.length);
+		assertEquals(2, framer.drain(_collector));
+		assertEquals("A\r", new String(_received.get(0)));
+		assertEquals("B\r", new String(_received.get(1)));
+	}
+
+	public void testRefusedFrameStaysBuffered() {
+		final int[] room = { 1 };
+		FrameHandler limited = new FrameHandler() {
+			public boolean onFrame(byte[] buf, int offset, int length, long readNanos) {
+				if (room[0] == 0) {
+					return false;
+				}
+				room[0]--;
+				return _collector.onFrame(buf, offset, length, readNanos);
+			}
+		};
+		MllpFramer framer = new MllpFramer(16, 1 << 20);
+		byte[] stream = concat(frame("A\r".getBytes()), frame("B\r".getBytes()), frame("C\r".getBytes()));
+		framer.feed(stream, 0, stream.length);
+		assertEquals(1, framer.drain(limited));
+		assertTrue(framer.isRefused());
+		// more comes in behind the refused frame
+		byte[] d = frame("D\r".getBytes());
+		framer.feed(d, 0, d.length);
+		assertEquals(0, framer.drain(limited));
+
+		room[0] = 10;
+		assertEquals(3, framer.drain(limited));
+		assertFalse(framer.isRefused());
+		assertEquals(4, _received.size());
+		assertEquals("B\r", new String(_received.get(1)));
+		assertEquals("D\r", new String(_received.get(3)));
+		assertEquals(0, framer.buffered());
+	}
+
+	public void testOversizedFrameIsDroppedAndStreamRecovers() {
+		MllpFramer framer = new MllpFramer(1024, 4096);
+		byte[] big = frame(payload(new Random(1), 10000));
+		byte[] next = frame("OK\r".getBytes());
+		byte[] stream = concat(big, next);
+		for (int pos = 0; pos < stream.length; pos += 512) {
+			framer.feed(stream, pos, Math.min(512, stream.length - pos));
+			framer.drain(_collector);
+		}
+		assertEquals(1, framer.droppedFrames());
+		assertEquals(1, _received.size());
+		assertEquals("OK\r", new String(_received.get(0)));
+		assertTrue(framer.capacity() <= 8192);
+	}
+
+	static byte[] payload(Random rnd, int length) {
+		byte[] ret = new byte[length];
+		for (int i = 0; i < length; i++) {
+			byte b;
+			do {
+				b = (byte) rnd.nextInt(256);
+			} while (b == MllpFramer.SB || b == MllpFramer.EB);
+			ret[i] = b;
+		}
+		return ret;
+	}
+
+	static byte[] frame(byte[] payload) {
+		return concat(new byte[] { MllpFramer.SB }, payload, new byte[] { MllpFramer.EB, 0x0D });
+	}
+
+	static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			bos.write(part, 0, part.length);
+		}
+		return bos.toByteArray();
+	}
+}
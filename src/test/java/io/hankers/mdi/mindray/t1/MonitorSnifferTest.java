@@ -0,0 +1,118 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class MonitorSnifferTest extends TestCase {
+	StandInMonitorServer _a;
+	StandInMonitorServer _b;
+	GatewayEngine _engine;
+	MonitorSniffer _sniffer;
+	DatagramChannel _udp;
+
+	protected void setUp() throws Exception {
+		byte[] frame = StandInMonitorServer.vitalFrame(101, "72", "20181010101010");
+		_a = new StandInMonitorServer(frame);
+		_b = new StandInMonitorServer(frame);
+		_a.start();
+		_b.start();
+		_engine = new GatewayEngine(1);
+		_engine._reconnectMin = 50;
+		_engine.start();
+		_udp = DatagramChannel.open();
+	}
+
+	protected void tearDown() throws Exception {
+		_udp.close();
+		_sniffer.shutdown();
+		_engine.shutdown();
+		_a.shutdown();
+		_b.shutdown();
+	}
+
+	void sniff(long silence) throws Exception {
+		// a monitor port and a central station port
+		_sniffer = new MonitorSniffer(_engine, new int[] { 0, 0 }, silence);
+		_sniffer.start();
+		for (int i = 0; i < 100 && _sniffer.getLocalPort(1) < 0; i++) {
+			Thread.sleep(10);
+		}
+	}
+
+	void announce(int sniffer, StandInMonitorServer server, String guid) throws Exception {
+		byte[] ci = SyntheticMonitor.connectIndication("127.0.0.1", server.getPort(), "1", guid);
+		_udp.send(ByteBuffer.wrap(ci), new InetSocketAddress("127.0.0.1", _sniffer.getLocalPort(sniffer)));
+	}
+
+	void waitAnnounced(long count) throws InterruptedException {
+		for (int i = 0; i < 200 && _sniffer._announcements.get() < count; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, _sniffer._announcements.get());
+	}
+
+	int connectedTo(StandInMonitorServer server) {
+		int n = 0;
+		for (MonitorConnection conn : _engine.getConnections()) {
+			n += conn.getPort() == server.getPort() ? 1 : 0;
+		}
+		return n;
+	}
+
+	public void testDeduplicatesAnnouncements() throws Exception {
+		sniff(60000);
+		for (int i = 0; i < 50; i++) {
+			announce(i & 1, _a, "P1");
+			announce(i & 1, _b, "P2");
+		}
+		waitAnnounced(100);
+		assertEquals(2, _engine.getConnections().size());
+		assertEquals(1, connectedTo(_a));
+		assertEquals(1, connectedTo(_b));
+		GatewayEngineTest.waitFor(_b._accepted, 1, 2000);
+		assertEquals(1, _a._accepted.get());
+		assertEquals(1, _b._accepted.get());
+	}
+
+	public void testPatientChanges() throws Exception {
+		sniff(60000);
+		announce(0, _a, "P1");
+		waitAnnounced(1);
+		MonitorConnection first = _engine.getConnections().get(0);
+
+		// a new patient at the bed restarts its connection
+		announce(0, _a, "P2");
+		waitAnnounced(2);
+		List<MonitorConnection> conns = _engine.getConnections();
+		assertEquals(1, conns.size());
+		assertNotSame(first, conns.get(0));
+		GatewayEngineTest.waitFor(_a._accepted, 2, 2000);
+		assertEquals(2, _a._accepted.get());
+
+		// the patient moved to another monitor
+		announce(0, _b, "P2");
+		waitAnnounced(3);
+		assertEquals(0, connectedTo(_a));
+		assertEquals(1, connectedTo(_b));
+	}
+
+	public void testSilentMonitorDropped() throws Exception {
+		_a._closeAfterBurst = true;
+		sniff(200);
+		announce(0, _a, "P1");
+		announce(0, _b, "P2");
+		waitAnnounced(2);
+		assertEquals(2, _engine.getConnections().size());
+		// a keeps closing the connection, b stays connected
+		for (int i = 0; i < 100 && connectedTo(_a) > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, connectedTo(_a));
+		Thread.sleep(400);
+		assertEquals(1, connectedTo(_b));
+	}
+}
@@ -0,0 +1,153 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+import io.hankers.mdi.mindray.t1.PayloadPublisher.PayloadSink;
+import junit.framework.TestCase;
+
+public class PayloadPublisherTest extends TestCase {
+	final List<byte[]> _published = new ArrayList<byte[]>();
+	final PayloadSink _sink = new PayloadSink() {
+		public void publish(byte[] buf, int offset, int length, boolean text) {
+			byte[] copy = new byte[length];
+			System.arraycopy(buf, offset, copy, 0, length);
+			_published.add(copy);
+		}
+	};
+
+	static VitalSign vitals(long timestamp, double hr) {
+		VitalSign vs = new VitalSign();
+		vs._timestamp = timestamp;
+		vs.set(VitalParams.HR, hr);
+		vs.set(VitalParams.TEMP, 36.5);
+		return vs;
+	}
+
+	static final int[] CHANNELS = { 1113, 1114, 1115, 1117, 1118, 1119, 1120, 1121, 1122, 1123, 1124, 1151 };
+
+	static Wave twelveLeads() {
+		Wave wave = new Wave();
+		wave._timestamp = 1539137410000L;
+		for (int lead : CHANNELS) {
+			int[] samples = new int[500];
+			for (int i = 0; i < samples.length; i++) {
+				samples[i] = 2048 + (int) (200 * Math.sin(i / 20.0 + lead));
+			}
+			wave._values.put(lead, samples);
+		}
+		return wave;
+	}
+
+	public void testJsonUnbatched() {
+		PayloadPublisher publisher = new PayloadPublisher(new PayloadSerializer.Json(), _sink, 0, 0);
+		publisher.add(vitals(1000, 72));
+		publisher.add(new VitalSign());
+		assertEquals(1, _published.size());
+		JSONObject json = new JSONObject(new String(_published.get(0)));
+		assertEquals("72", json.getString("HR"));
+		assertEquals("36.5", json.getString("TEMP"));
+		assertEquals(1000, json.getLong("timestamp"));
+		assertEquals(3, json.length());
+	}
+
+	public void testJsonWave() {
+		String json = Models.HL7Utils.toJson(twelveLeads());
+		JSONObject obj = new JSONObject(json);
+		assertEquals(128, obj.getJSONArray("II").length());
+		assertEquals(128, obj.getJSONArray("aVF").length());
+	}
+
+	public void testBatchBySize() {
+		PayloadPublisher publisher = new PayloadPublisher(new PayloadSerializer.Json(), _sink, 200, 0);
+		for (int i = 0; i < 10; i++) {
+			publisher.add(vitals(1000 + i, 60 + i));
+		}
+		publisher.flush();
+		int hr = 60;
+		for (byte[] payload : _published) {
+			JSONArray batch = new JSONArray(new String(payload));
+			for (int i = 0; i < batch.length(); i++) {
+				assertEquals(String.valueOf(hr++), batch.getJSONObject(i).getString("HR"));
+			}
+		}
+		assertEquals(70, hr);
+		assertTrue(_published.size() > 1 && _published.size() < 10);
+	}
+
+	public void testBatchByTime() throws Exception {
+		PayloadPublisher publisher = new PayloadPublisher(new PayloadSerializer.Json(), _sink, 0, 50);
+		publisher.add(vitals(1000, 72));
+		publisher.add(vitals(2000, 73));
+		assertEquals(0, _published.size());
+		for (int i = 0; i < 100 && _published.isEmpty(); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, _published.size());
+		assertEquals(2, new JSONArray(new String(_published.get(0))).length());
+		publisher.close();
+	}
+
+	public void testBinaryRoundTrip() {
+		PayloadPublisher publisher = new PayloadPublisher(new PayloadSerializer.Binary(), _sink, 1 << 20, 0);
+		Wave wave = twelveLeads();
+		publisher.add(vitals(1000, 72));
+		publisher.add(wave);
+		publisher.flush();
+		assertEquals(1, _published.size());
+
+		ByteBuffer in = ByteBuffer.wrap(_published.get(0)).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(PayloadSerializer.Binary.MAGIC, in.get());
+		assertEquals(PayloadSerializer.Binary.VERSION, in.get());
+
+		assertEquals(PayloadSerializer.Binary.TYPE_VITALS, in.get());
+		assertEquals(1000, in.getLong());
+		assertEquals(2, in.get());
+		assertEquals(101, in.getShort());
+		assertEquals(72f, in.getFloat());
+		assertEquals(200, in.getShort());
+		assertEquals(36.5f, in.getFloat());
+
+		assertEquals(PayloadSerializer.Binary.TYPE_WAVE, in.get());
+		assertEquals(wave._timestamp, in.getLong());
+		assertEquals(12, in.get());
+		for (int c = 0; c < 12; c++) {
+			int waveId = in.getShort();
+			int n = in.getShort();
+			WaveResampler r = wave.published(waveId);
+			int[] expected = r.output();
+			assertEquals(r.count(), n);
+			int sample = in.getInt();
+			assertEquals(expected[0], sample);
+			for (int i = 1; i < n; i++) {
+				sample += readVarint(in);
+				assertEquals(expected[i], sample);
+			}
+		}
+		assertFalse(in.hasRemaining());
+
+		int jsonLength = Models.HL7Utils.toJson(wave).length();
+		assertTrue("binary " + _published.get(0).length + " json " + jsonLength,
+				_published.get(0).length * 3 < jsonLength);
+	}
+
+	static int readVarint(ByteBuffer in) {
+		int zz = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.get();
+			zz |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return (zz >>> 1) ^ -(zz & 1);
+	}
+}
@@ -0,0 +1,177 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+import io.hankers.mdi.mindray.t1.PayloadPublisher.PayloadSink;
+import junit.framework.TestCase;
+
+public class PublishQueueTest extends TestCase {
+	final CountDownLatch _release = new CountDownLatch(1);
+	final List<String> _published = new ArrayList<String>();
+	final PayloadSink _stalledSink = new PayloadSink() {
+		public void publish(byte[] buf, int offset, int length, boolean text) {
+			try {
+				_release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (_published) {
+				_published.add(new String(buf, offset, length));
+			}
+		}
+	};
+	PublishQueue _queue;
+
+	protected void tearDown() {
+		_release.countDown();
+		if (_queue != null) {
+			_queue.shutdown();
+		}
+	}
+
+	static Wave wave(int marker) {
+		Wave wave = new Wave();
+		wave._timestamp = marker;
+		wave._values.put(1114, new int[] { marker });
+		return wave;
+	}
+
+	static VitalSign vitals(long timestamp, int slot, double value) {
+		VitalSign vs = new VitalSign();
+		vs._timestamp = timestamp;
+		vs.set(slot, value);
+		return vs;
+	}
+
+	int publishedCount() {
+		synchronized (_published) {
+			return _published.size();
+		}
+	}
+
+	void waitForPublished(int n) throws InterruptedException {
+		for (int i = 0; i < 500 && publishedCount() < n; i++) {
+			Thread.sleep(10);
+		}
+	}
+
+	public void testStalledSinkDropsOldestWaves() throws Exception {
+		_queue = new PublishQueue(new PayloadPublisher(new PayloadSerializer.Json(), _stalledSink, 0, 0), 16, true, true);
+		long start = System.nanoTime();
+		for (int i = 1; i <= 1000; i++) {
+			_queue.offer(wave(i));
+		}
+		assertTrue("capture stalled", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		assertTrue(_queue.droppedWaves() > 900);
+		assertTrue(_queue.depth() <= 16);
+		assertEquals(0, _queue.blocked());
+
+		_release.countDown();
+		waitForPublished(1000 - (int) _queue.droppedWaves());
+		assertEquals(1000, publishedCount() + _queue.droppedWaves());
+		// the newest wave survives
+		String last = _published.get(_published.size() - 1);
+		assertEquals(1000, new JSONObject(last).getLong("timestamp"));
+	}
+
+	public void testStalledSinkCoalescesVitals() throws Exception {
+		_queue = new PublishQueue(new PayloadPublisher(new PayloadSerializer.Json(), _stalledSink, 0, 0), 16, true, true);
+		PublishQueue.Coalescer monitor = new PublishQueue.Coalescer();
+		_queue.offer(monitor, vitals(1, VitalParams.SPO2, 97));
+		for (int i = 2; i <= 200; i++) {
+			_queue.offer(monitor, vitals(i, VitalParams.HR, 60 + i % 40));
+		}
+		assertTrue(_queue.coalescedVitals() > 0);
+		assertTrue(_queue.depth() <= 1);
+
+		_release.countDown();
+		waitForPublished((int) (200 - _queue.coalescedVitals()));
+		Thread.sleep(50);
+		assertEquals(200, publishedCount() + _queue.coalescedVitals());
+		JSONObject last = new JSONObject(_published.get(_published.size() - 1));
+		assertEquals(200, last.getLong("timestamp"));
+		assertEquals(String.valueOf(60 + 200 % 40), last.getString("HR"));
+		// parameters that were not updated are kept while coalescing
+		boolean spo2 = false;
+		for (String payload : _published) {
+			spo2 |= new JSONObject(payload).has("SPO2");
+		}
+		assertTrue(spo2);
+	}
+
+	public void testBlockPolicyKeepsEverything() throws Exception {
+		_queue = new PublishQueue(new PayloadPublisher(new PayloadSerializer.Json(), _stalledSink, 0, 0), 4, false, false);
+		Thread producer = new Thread() {
+			public void run() {
+				for (int i = 1; i <= 50; i++) {
+					Wave wave = wave(i);
+					while (!_queue.offer(wave)) {
+						Thread.yield();
+					}
+					VitalSign vs = vitals(i, VitalParams.HR, i);
+					while (!_queue.offer(null, vs)) {
+						Thread.yield();
+					}
+				}
+			}
+		};
+		producer.start();
+		Thread.sleep(100);
+		assertTrue(producer.isAlive());
+		assertTrue(_queue.blocked() > 0);
+
+		_release.countDown();
+		producer.join(5000);
+		waitForPublished(100);
+		assertEquals(100, publishedCount());
+		assertEquals(0, _queue.droppedWaves());
+		assertEquals(0, _queue.coalescedVitals());
+	}
+
+	public void testRingManyProducers() throws Exception {
+		final PublishQueue.Ring ring = new PublishQueue.Ring(64);
+		final int producers = 4;
+		final int perProducer = 50000;
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			final int base = p * perProducer;
+			threads[p] = new Thread() {
+				public void run() {
+					for (int i = 0; i < perProducer; i++) {
+						while (!ring.offer(Integer.valueOf(base + i))) {
+							Thread.yield();
+						}
+					}
+				}
+			};
+			threads[p].start();
+		}
+		int[] last = new int[producers];
+		java.util.Arrays.fill(last, -1);
+		for (int received = 0; received < producers * perProducer;) {
+			Object o = ring.poll();
+			if (o == null) {
+				Thread.yield();
+				continue;
+			}
+			int v = (Integer) o;
+			// per-producer order is preserved
+			assertTrue(v % perProducer > last[v / perProducer]);
+			last[v / perProducer] = v % perProducer;
+			received++;
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertNull(ring.poll());
+		assertTrue(ring.isEmpty());
+	}
+}
@@ -0,0 +1,52 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+public class QueryFrameTest extends TestCase {
+
+	static String text(ByteBuffer frame) {
+		byte[] bytes = new byte[frame.remaining()];
+		frame.duplicate().get(bytes);
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	public void testDefaultIsTheLegacyQuery() {
+		QueryFrame query = QueryFrame.forMonitor("192.0.2.1");
+		String legacy = "MSH|^~\\&|||||||QRY^R02|1203|P|2.3.1\rQRD|{}|R|I|Q{}|||||RES\rQRF|MON||||0&0^1^1^1^\r";
+		assertEquals(new String(MllpFramer.frame(legacy.getBytes(StandardCharsets.US_ASCII)), StandardCharsets.US_ASCII),
+				text(query.encode(1539137410123L)));
+		assertEquals(text(query.encode(0)), text(query.encode(1539137411000L)));
+	}
+
+	public void testPatchesTimeAndId() {
+		QueryFrame query = new QueryFrame(QueryFrame.ALL_WAVES, TimeZone.getTimeZone("UTC"), true);
+		ByteBuffer first = query.encode(1539137410123L);
+		assertEquals("\u000BMSH|^~\\&|||||||QRY^R02|1203|P|2.3.1\rQRD|20181010021010123|R|I|Q0000000001|||||RES\r"
+				+ "QRF|MON||||0&0^1^1^1^\r\u001C\r", text(first));
+
+		// the same buffer, rewound and stamped again
+		first.position(first.limit());
+		ByteBuffer second = query.encode(1539137411000L);
+		assertSame(first, second);
+		assertEquals(0, second.position());
+		assertTrue(text(second).contains("QRD|20181010021011000|R|I|Q0000000002|"));
+	}
+
+	public void testSelectedWaves() {
+		int ii = WaveRegistry.getDefault().id("II");
+		int pleth = WaveRegistry.getDefault().id("PLETH");
+		assertEquals(ii + "&" + pleth, QueryFrame.waves("II, PLETH"));
+		assertEquals("1102&1152", QueryFrame.waves("1102,1152"));
+		assertEquals(QueryFrame.ALL_WAVES, QueryFrame.waves(""));
+		assertEquals(QueryFrame.ALL_WAVES, QueryFrame.waves("NOT_A_WAVE"));
+		// too long for an int, skipped like an unknown name
+		assertEquals("1102", QueryFrame.waves("99999999999, 1102"));
+		// the ids replace the whole 0&0 component
+		assertTrue(text(new QueryFrame("1102", TimeZone.getDefault(), false).encode(0))
+				.contains("QRF|MON||||1102^1^1^1^\r"));
+	}
+}
@@ -0,0 +1,84 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Records per second through the write-ahead log: appends with a group sync
+ * every 1000 records, about 200 ms of a busy gateway, and replay of a 64 MB
+ * backlog. The payload sizes are a vital sign message and a binary 12-lead
+ * wave.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="SegmentLogBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentLogBenchmark {
+	@Param({ "120", "2400" })
+	int _recordBytes;
+
+	File _dir;
+	SegmentLog _log;
+	byte[] _record;
+	PayloadBuffer _out = new PayloadBuffer();
+	int _appends;
+
+	@Setup(Level.Iteration)
+	public void setup() throws IOException {
+		_dir = File.createTempFile("walbench", "");
+		_dir.delete();
+		_log = new SegmentLog(_dir, 16 << 20, 256L << 20, Long.MAX_VALUE);
+		_record = new byte[_recordBytes];
+		new Random(1).nextBytes(_record);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		_log.close();
+		SegmentLogTest.delete(_dir);
+	}
+
+	@Benchmark
+	public boolean append() throws IOException {
+		boolean ok = _log.append(_record, 0, _record.length, false);
+		if (++_appends % 1000 == 0) {
+			_log.sync();
+		}
+		return ok;
+	}
+
+	@Benchmark
+	public int replay() throws IOException {
+		int flags = _log.peek(_out);
+		if (flags < 0) {
+			// refill, the reads drain the backlog faster than an iteration
+			for (long n = 0; n < (64 << 20) / _record.length; n++) {
+				_log.append(_record, 0, _record.length, false);
+			}
+			_log.sync();
+			flags = _log.peek(_out);
+		}
+		_log.advance();
+		return flags;
+	}
+}
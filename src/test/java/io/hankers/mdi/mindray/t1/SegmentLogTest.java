@@ -0,0 +1,223 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.hankers.mdi.mindray.t1.PayloadPublisher.ConnectedSink;
+import io.hankers.mdi.mindray.t1.PayloadPublisher.PayloadSink;
+import junit.framework.TestCase;
+
+public class SegmentLogTest extends TestCase {
+	File _dir;
+
+	protected void setUp() throws IOException {
+		_dir = File.createTempFile("wal", "");
+		_dir.delete();
+	}
+
+	protected void tearDown() {
+		delete(_dir);
+	}
+
+	static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File c : children) {
+				delete(c);
+			}
+		}
+		f.delete();
+	}
+
+	static void append(SegmentLog log, String s) {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		assertTrue(log.append(b, 0, b.length, true));
+	}
+
+	static String next(SegmentLog log) {
+		PayloadBuffer out = new PayloadBuffer();
+		int flags = log.peek(out);
+		if (flags < 0) {
+			return null;
+		}
+		assertEquals(SegmentLog.FLAG_TEXT, flags);
+		log.advance();
+		return out.toString();
+	}
+
+	public void testAppendReadAcrossSegments() throws IOException {
+		SegmentLog log = new SegmentLog(_dir, 256, 1 << 20, 60000);
+		for (int i = 0; i < 100; i++) {
+			append(log, "message-" + i);
+		}
+		assertTrue(log.segmentCount() > 5);
+		for (int i = 0; i < 100; i++) {
+			assertEquals("message-" + i, next(log));
+		}
+		assertNull(next(log));
+		assertEquals(0, log.backlog());
+
+		// read segments are deleted at the next sync
+		log.sync();
+		assertEquals(1, log.segmentCount());
+		log.close();
+	}
+
+	public void testReopenKeepsUnreadRecords() throws IOException {
+		SegmentLog log = new SegmentLog(_dir, 256, 1 << 20, 60000);
+		for (int i = 0; i < 30; i++) {
+			append(log, "m" + i);
+		}
+		for (int i = 0; i < 10; i++) {
+			assertEquals("m" + i, next(log));
+		}
+		log.close();
+
+		log = new SegmentLog(_dir, 256, 1 << 20, 60000);
+		append(log, "after");
+		for (int i = 10; i < 30; i++) {
+			assertEquals("m" + i, next(log));
+		}
+		assertEquals("after", next(log));
+		assertNull(next(log));
+		log.close();
+	}
+
+	public void testTornTailIsIgnored() throws IOException {
+		SegmentLog log = new SegmentLog(_dir, 4096, 1 << 20, 60000);
+		append(log, "complete");
+		append(log, "torn");
+		log.close();
+
+		// corrupt the payload of the last record as a crash mid-write would
+		File[] files = _dir.listFiles();
+		File segment = null;
+		for (File f : files) {
+			if (f.getName().endsWith(SegmentLog.SUFFIX)) {
+				segment = f;
+			}
+		}
+		RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+		raf.seek(SegmentLog.HEADER + 8 + SegmentLog.HEADER);
+		raf.write('X');
+		raf.close();
+
+		log = new SegmentLog(_dir, 4096, 1 << 20, 60000);
+		assertEquals("complete", next(log));
+		assertNull(next(log));
+		append(log, "new");
+		assertEquals("new", next(log));
+		log.close();
+	}
+
+	public void testEvictBySize() throws IOException {
+		SegmentLog log = new SegmentLog(_dir, 256, 1024, 60000);
+		for (int i = 0; i < 100; i++) {
+			append(log, "message-" + i);
+		}
+		log.sync();
+		assertTrue(log.segmentCount() <= 4);
+		assertTrue(log.evictedBytes() > 0);
+		// the oldest were dropped, the rest still come out in order
+		String first = next(log);
+		int n = Integer.parseInt(first.substring("message-".length()));
+		assertTrue(n > 0);
+		for (int i = n + 1; i < 100; i++) {
+			assertEquals("message-" + i, next(log));
+		}
+		log.close();
+	}
+
+	public void testEvictByAge() throws Exception {
+		SegmentLog log = new SegmentLog(_dir, 256, 1 << 20, 50);
+		for (int i = 0; i < 30; i++) {
+			append(log, "message-" + i);
+		}
+		Thread.sleep(100);
+		log.sync();
+		assertEquals(1, log.segmentCount());
+		log.close();
+	}
+
+	public void testForwardAfterOutage() throws Exception {
+		final List<String> delivered = new ArrayList<String>();
+		final boolean[] down = { true };
+		PayloadSink broker = new PayloadSink() {
+			public void publish(byte[] buf, int offset, int length, boolean text) {
+				synchronized (delivered) {
+					if (down[0]) {
+						throw new IllegalStateException("broker down");
+					}
+					delivered.add(new String(buf, offset, length, StandardCharsets.UTF_8));
+				}
+			}
+		};
+		WriteAheadSink sink = new WriteAheadSink(new SegmentLog(_dir, 4096, 1 << 20, 60000), broker, 20);
+		for (int i = 0; i < 50; i++) {
+			byte[] b = ("v" + i).getBytes(StandardCharsets.UTF_8);
+			sink.publish(b, 0, b.length, true);
+		}
+		Thread.sleep(100);
+		assertTrue(sink.failures() > 0);
+		assertTrue(sink.backlog() > 0);
+		synchronized (delivered) {
+			assertTrue(delivered.isEmpty());
+			down[0] = false;
+		}
+		for (int i = 0; i < 300 && sink.forwarded() < 50; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(50, delivered.size());
+		for (int i = 0; i < 50; i++) {
+			assertEquals("v" + i, delivered.get(i));
+		}
+		assertEquals(0, sink.backlog());
+		sink.close();
+	}
+
+	public void testHoldWhileDisconnected() throws Exception {
+		final List<String> delivered = new ArrayList<String>();
+		final boolean[] connected = { false };
+		ConnectedSink client = new ConnectedSink() {
+			public void publish(byte[] buf, int offset, int length, boolean text) {
+				synchronized (delivered) {
+					// a real client would queue it and lose it with the connection
+					if (connected[0]) {
+						delivered.add(new String(buf, offset, length, StandardCharsets.UTF_8));
+					}
+				}
+			}
+
+			public boolean isConnected() {
+				synchronized (delivered) {
+					return connected[0];
+				}
+			}
+		};
+		WriteAheadSink sink = new WriteAheadSink(new SegmentLog(_dir, 4096, 1 << 20, 60000), client, 20);
+		for (int i = 0; i < 20; i++) {
+			byte[] b = ("v" + i).getBytes(StandardCharsets.UTF_8);
+			sink.publish(b, 0, b.length, true);
+		}
+		Thread.sleep(100);
+		assertEquals(0, sink.forwarded());
+		assertEquals(1, sink.holds());
+		assertTrue(sink.backlog() > 0);
+		synchronized (delivered) {
+			connected[0] = true;
+		}
+		for (int i = 0; i < 300 && sink.forwarded() < 20; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(20, delivered.size());
+		for (int i = 0; i < 20; i++) {
+			assertEquals("v" + i, delivered.get(i));
+		}
+		assertEquals(0, sink.backlog());
+		sink.close();
+	}
+}
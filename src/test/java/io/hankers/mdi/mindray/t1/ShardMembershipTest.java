@@ -0,0 +1,157 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ShardMembershipTest extends TestCase {
+	File _dir;
+
+	protected void setUp() throws Exception {
+		_dir = Files.createTempDirectory("shard").toFile();
+	}
+
+	protected void tearDown() throws Exception {
+		File[] files = _dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		_dir.delete();
+	}
+
+	public void testRingMovesOnlyTheLeaversKeys() {
+		HashRing three = new HashRing(Arrays.asList("a", "b", "c"));
+		HashRing two = new HashRing(Arrays.asList("a", "c"));
+		Map<String, Integer> shares = new HashMap<String, Integer>();
+		for (int i = 0; i < 3000; i++) {
+			String key = "10.0." + (i / 250) + "." + (i % 250) + ":4601";
+			String owner = three.owner(key);
+			Integer n = shares.get(owner);
+			shares.put(owner, n == null ? 1 : n + 1);
+			if (!owner.equals("b")) {
+				assertEquals(owner, two.owner(key));
+			}
+		}
+		for (int n : shares.values()) {
+			assertTrue(String.valueOf(shares), n > 700 && n < 1300);
+		}
+		assertNull(new HashRing(Arrays.<String>asList()).owner("x"));
+	}
+
+	public void testMembersTimeOutAndLeave() {
+		ShardMembership a = new ShardMembership(_dir, "a", 10, 100);
+		ShardMembership b = new ShardMembership(_dir, "b", 10, 100);
+		a.refresh(1000);
+		assertTrue(b.refresh(1000));
+		assertTrue(a.refresh(1010));
+		assertEquals(2, a.getMembers().size());
+		// not due yet
+		assertFalse(a.refresh(1015));
+
+		// every key has exactly one owner
+		int ownedByA = 0;
+		for (int i = 0; i < 100; i++) {
+			String key = "bed" + i;
+			assertTrue(a.owns(key) != b.owns(key));
+			ownedByA += a.owns(key) ? 1 : 0;
+		}
+		assertTrue(ownedByA > 0 && ownedByA < 100);
+
+		// b stops beating
+		assertTrue(a.refresh(1200));
+		assertEquals(1, a.getMembers().size());
+		assertTrue(a.owns("bed1") && a.owns("bed2"));
+
+		// b is back and leaves on shutdown
+		b.refresh(1300);
+		assertTrue(a.refresh(1300));
+		b.leave();
+		assertTrue(a.refresh(1310));
+		assertEquals(1, a.getMembers().size());
+	}
+
+	int connectedTo(GatewayEngine engine, StandInMonitorServer server) {
+		int n = 0;
+		for (MonitorConnection conn : engine.getConnections()) {
+			n += conn.getPort() == server.getPort() ? 1 : 0;
+		}
+		return n;
+	}
+
+	public void testSniffersSplitMonitors() throws Exception {
+		byte[] frame = StandInMonitorServer.vitalFrame(101, "72", "20181010101010");
+		StandInMonitorServer[] servers = new StandInMonitorServer[8];
+		GatewayEngine[] engines = new GatewayEngine[2];
+		MonitorSniffer[] sniffers = new MonitorSniffer[2];
+		DatagramChannel udp = DatagramChannel.open();
+		try {
+			for (int i = 0; i < servers.length; i++) {
+				servers[i] = new StandInMonitorServer(frame);
+				servers[i].start();
+			}
+			for (int i = 0; i < 2; i++) {
+				engines[i] = new GatewayEngine(1);
+				engines[i]._reconnectMin = 50;
+				engines[i].start();
+				ShardMembership membership = new ShardMembership(_dir, "gw" + i, 50, 2000);
+				sniffers[i] = new MonitorSniffer(engines[i], new int[] { 0 }, 60000, membership);
+				sniffers[i].start();
+			}
+			for (int i = 0; i < 100 && (sniffers[0]._membership.getMembers().size() < 2
+					|| sniffers[1]._membership.getMembers().size() < 2); i++) {
+				Thread.sleep(10);
+			}
+
+			// both hear every announcement, as they would a broadcast
+			for (StandInMonitorServer server : servers) {
+				byte[] ci = SyntheticMonitor.connectIndication("127.0.0.1", server.getPort(), "1", "P" + server.getPort());
+				for (MonitorSniffer sniffer : sniffers) {
+					udp.send(ByteBuffer.wrap(ci), new InetSocketAddress("127.0.0.1", sniffer.getLocalPort(0)));
+				}
+			}
+			for (int i = 0; i < 200 && (sniffers[0]._announcements.get() < servers.length
+					|| sniffers[1]._announcements.get() < servers.length); i++) {
+				Thread.sleep(10);
+			}
+			for (StandInMonitorServer server : servers) {
+				assertEquals(1, connectedTo(engines[0], server) + connectedTo(engines[1], server));
+			}
+			int first = engines[0].getConnections().size();
+			assertTrue(first > 0 && first < servers.length);
+
+			// gw1 shuts down, gw0 takes its monitors without waiting for the timeout
+			sniffers[1].shutdown();
+			engines[1].shutdown();
+			for (int i = 0; i < 200 && engines[0].getConnections().size() < servers.length; i++) {
+				Thread.sleep(10);
+			}
+			for (StandInMonitorServer server : servers) {
+				assertEquals(1, connectedTo(engines[0], server));
+			}
+		} finally {
+			udp.close();
+			for (int i = 0; i < 2; i++) {
+				if (sniffers[i] != null) {
+					sniffers[i].shutdown();
+				}
+				if (engines[i] != null) {
+					engines[i].shutdown();
+				}
+			}
+			for (StandInMonitorServer server : servers) {
+				if (server != null) {
+					server.shutdown();
+				}
+			}
+		}
+	}
+}
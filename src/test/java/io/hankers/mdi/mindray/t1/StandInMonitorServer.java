@@ -0,0 +1,327 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for any number of monitors on one port. Every accepted
+ * connection gets its own {@link Source}, a fixed burst, a
+ * {@link SyntheticMonitor} or a replayed {@link StreamCapture}, sent at its
+ * recorded pace times the speed, or as fast as the gateway reads with speed 0.
+ * Frames written back by the gateway (heartbeats, queries) are counted.
+ */
+public class StandInMonitorServer extends Thread {
+	final ServerSocketChannel _server;
+	final Selector _selector;
+	final SourceFactory _sources;
+	final double _speed;
+	final AtomicInteger _accepted = new AtomicInteger();
+	final AtomicInteger _framesReceived = new AtomicInteger();
+	final AtomicInteger _finished = new AtomicInteger();
+	volatile boolean _closeAfterBurst;
+
+	/**
+	 * Timed chunks of a monitor's byte stream.
+	 */
+	public interface Source {
+		/**
+		 * @return false at the end
+		 */
+		boolean next() throws IOException;
+
+		/**
+		 * @return when the chunk is due, in nanos since the first
+		 */
+		long nanos();
+
+		byte[] data();
+
+		int length();
+	}
+
+	public interface SourceFactory {
+		/**
+		 * @param connection the number of the accepted connection, from 0
+		 */
+		Source create(int connection) throws IOException;
+	}
+
+	/**
+	 * The replay of a capture file.
+	 */
+	public static class CaptureSource implements Source {
+		final StreamCapture.Reader _reader;
+
+		public CaptureSource(File file) throws IOException {
+			_reader = new StreamCapture.Reader(file);
+		}
+
+		public boolean next() throws IOException {
+			if (_reader.next()) {
+				return true;
+			}
+			_reader.close();
+			return false;
+		}
+
+		public long nanos() {
+			return _reader.nanos();
+		}
+
+		public byte[] data() {
+			return _reader.data();
+		}
+
+		public int length() {
+			return _reader.length();
+		}
+	}
+
+	/**
+	 * One connection: its source, positioned on the next chunk to send, and
+	 * the bytes being written.
+	 */
+	static class Peer {
+		final Source _source;
+		final long _start;
+		ByteBuffer _out = ByteBuffer.allocate(64 << 10);
+		long _due;
+		boolean _ended;
+
+		Peer(Source source, long start) {
+			_source = source;
+			_start = start;
+			_out.flip();
+		}
+	}
+
+	public StandInMonitorServer(final byte[] burst) throws IOException {
+		this(new SourceFactory() {
+			public Source create(int connection) {
+				return burst(burst);
+			}
+		}, 0);
+	}
+
+	/**
+	 * @param speed 1 for the recorded pace, 0 for as fast as possible
+	 */
+	public StandInMonitorServer(SourceFactory sources, double speed) throws IOException {
+		super("stand-in-monitor");
+		setDaemon(true);
+		_sources = sources;
+		_speed = speed;
+		_selector = Selector.open();
+		_server = ServerSocketChannel.open();
+		_server.socket().bind(new InetSocketAddress("127.0.0.1", 0), 1024);
+		_server.configureBlocking(false);
+		_server.register(_selector, SelectionKey.OP_ACCEPT);
+	}
+
+	public int getPort() {
+		return _server.socket().getLocalPort();
+	}
+
+	public void run() {
+		ByteBuffer readBuf = ByteBuffer.allocate(4096);
+		long start = System.nanoTime();
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				long wait = pace(System.nanoTime() - start);
+				if (wait == 0) {
+					_selector.selectNow();
+				} else {
+					_selector.select(wait < 0 ? 0 : Math.max(1, wait / 1000000));
+				}
+				Iterator<SelectionKey> it = _selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					try {
+						if (key.isAcceptable()) {
+							SocketChannel ch;
+							while ((ch = _server.accept()) != null) {
+								Peer peer = new Peer(_sources.create(_accepted.getAndIncrement()),
+										System.nanoTime() - start);
+								advance(peer);
+								ch.configureBlocking(false);
+								ch.register(_selector, SelectionKey.OP_READ, peer);
+							}
+							continue;
+						}
+						SocketChannel ch = (SocketChannel) key.channel();
+						if (key.isReadable()) {
+							readBuf.clear();
+							int n = ch.read(readBuf);
+							if (n < 0) {
+								ch.close();
+								continue;
+							}
+							for (int i = 0; i < n; i++) {
+								if (readBuf.get(i) == 0x1C) {
+									_framesReceived.incrementAndGet();
+								}
+							}
+						}
+						if (key.isValid() && key.isWritable()) {
+							write(key, System.nanoTime() - start);
+						}
+					} catch (IOException e) {
+						key.channel().close();
+					}
+				}
+			} catch (IOException e) {
+				break;
+			}
+		}
+		try {
+			for (SelectionKey key : _selector.keys()) {
+				key.channel().close();
+			}
+			_selector.close();
+		} catch (IOException e) {
+			// shutting down
+		}
+	}
+
+	/**
+	 * Turns on writes for every peer with a chunk due.
+	 *
+	 * @return nanos until the next chunk is due, 0 if one is, -1 if none is
+	 *         waiting
+	 */
+	private long pace(long now) {
+		long wait = -1;
+		for (SelectionKey key : _selector.keys()) {
+			if (!key.isValid() || !(key.attachment() instanceof Peer)) {
+				continue;
+			}
+			Peer peer = (Peer) key.attachment();
+			if (peer._ended || (key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+				continue;
+			}
+			long until = peer._due - now;
+			if (until <= 0) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				wait = 0;
+			} else if (wait < 0 || until < wait) {
+				wait = until;
+			}
+		}
+		return wait;
+	}
+
+	/**
+	 * Writes the chunks due by now, as many at a time as the buffer holds.
+	 */
+	private void write(SelectionKey key, long now) throws IOException {
+		SocketChannel ch = (SocketChannel) key.channel();
+		Peer peer = (Peer) key.attachment();
+		while (true) {
+			ByteBuffer out = peer._out;
+			if (out.hasRemaining()) {
+				ch.write(out);
+				if (out.hasRemaining()) {
+					return;
+				}
+			}
+			if (peer._ended) {
+				_finished.incrementAndGet();
+				if (_closeAfterBurst) {
+					ch.close();
+					return;
+				}
+				break;
+			}
+			if (peer._due > now) {
+				break;
+			}
+			out.clear();
+			if (peer._source.length() > out.capacity()) {
+				out = peer._out = ByteBuffer.allocate(peer._source.length());
+			}
+			while (!peer._ended && peer._due <= now && peer._source.length() <= out.remaining()) {
+				out.put(peer._source.data(), 0, peer._source.length());
+				advance(peer);
+			}
+			out.flip();
+		}
+		key.interestOps(SelectionKey.OP_READ);
+	}
+
+	/**
+	 * Moves the peer to the next chunk of its source.
+	 */
+	private void advance(Peer peer) throws IOException {
+		if (!peer._source.next()) {
+			peer._ended = true;
+		} else if (_speed > 0) {
+			peer._due = peer._start + (long) (peer._source.nanos() / _speed);
+		}
+	}
+
+	public void shutdown() throws InterruptedException {
+		interrupt();
+		_selector.wakeup();
+		join(5000);
+	}
+
+	static Source burst(final byte[] burst) {
+		return new Source() {
+			boolean _sent;
+
+			public boolean next() {
+				boolean first = !_sent;
+				_sent = true;
+				return first;
+			}
+
+			public long nanos() {
+				return 0;
+			}
+
+			public byte[] data() {
+				return burst;
+			}
+
+			public int length() {
+				return burst.length;
+			}
+		};
+	}
+
+	/**
+	 * An ORU^R01 periodic vital sign frame with a single OBX, time in OBX-14.
+	 */
+	public static byte[] vitalFrame(int paramId, String value, String time) {
+		String hl7 = "MSH|^~\\&|||||||ORU^R01|204|P|2.3.1|\r" + "OBX||NM|" + paramId + "^X|2101|" + value
+				+ "||||||F|||" + time + "\r";
+		return frame(hl7.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	public static byte[] frame(byte[] payload) {
+		byte[] frame = new byte[payload.length + 3];
+		frame[0] = 0x0B;
+		System.arraycopy(payload, 0, frame, 1, payload.length);
+		frame[frame.length - 2] = 0x1C;
+		frame[frame.length - 1] = 0x0D;
+		return frame;
+	}
+
+	public static byte[] repeat(byte[] frame, int count) {
+		byte[] ret = new byte[frame.length * count];
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(frame, 0, ret, i * frame.length, frame.length);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,96 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to the first published vital sign in a fresh JVM: a gateway engine
+ * connects to a stand-in monitor sending one bed as fast as it is read, and
+ * the op ends when the first vital sign payload is serialized. Every fork is
+ * one cold start, with or without a {@link StartupWarmup} run before the
+ * connect, not measured as it happens before the gateway takes the monitors
+ * over. Each fork prints its resident set size after the vital. Add
+ * -jvmArgsAppend "-XX:SharedArchiveFile=t1.jsa" to measure with a class data
+ * archive recorded by the warm-up.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="StartupBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+	@Param({ "0", "10" })
+	int _warmupSeconds;
+
+	StandInMonitorServer _server;
+	PublishQueue _queue;
+	GatewayEngine _engine;
+	final CountDownLatch _firstVital = new CountDownLatch(1);
+
+	@Setup
+	public void setup() throws Exception {
+		_server = new StandInMonitorServer(SyntheticMonitor.ward(5), 0);
+		_server.start();
+		if (_warmupSeconds > 0) {
+			StartupWarmup.run(_warmupSeconds);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		System.out.println("VmRSS after the first vital: " + rssKb() + " kB");
+		_engine.shutdown();
+		_queue.shutdown();
+		_server.shutdown();
+	}
+
+	static long rssKb() throws IOException {
+		for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+			if (line.startsWith("VmRSS:")) {
+				return Long.parseLong(line.replaceAll("[^0-9]", ""));
+			}
+		}
+		return -1;
+	}
+
+	@Benchmark
+	public void firstVital() throws Exception {
+		PayloadPublisher publisher = new PayloadPublisher(new PayloadSerializer.Json(),
+				new PayloadPublisher.PayloadSink() {
+					public void publish(byte[] buf, int offset, int length, boolean text) {
+						if (_firstVital.getCount() > 0
+								&& new String(buf, offset, length, StandardCharsets.US_ASCII).contains("\"HR\"")) {
+							_firstVital.countDown();
+						}
+					}
+				}, 0, 0);
+		_queue = new PublishQueue(publisher, 1024, false, false);
+		_engine = new GatewayEngine(1);
+		MonitorMetrics metrics = new MonitorMetrics("startup");
+		_engine.addTarget("127.0.0.1", _server.getPort(), new MonitorSession(_queue, metrics), metrics);
+		_engine.start();
+		if (!_firstVital.await(30, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("No vital sign published");
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Generated traffic of one bed, as a {@link StandInMonitorServer.Source}:
+ * every second a periodic vital sign message (ORU^R01 204) and one ZMW wave
+ * message (ORU^R01 157) per wave channel, and an NIBP message (ORU^R01 503)
+ * every NIBP interval. The vitals follow slow sines with a per-bed phase so
+ * beds differ. The waves repeat every second, their frames are built once.
+ */
+public class SyntheticMonitor implements StandInMonitorServer.Source {
+	static final int[] LEADS = { 1101, 1102, 1103, 1104, 1105, 1106, 1107, 1108, 1109, 1110, 1111, 1112 };
+
+	final int _bed;
+	final int _seconds;
+	final int[] _waveIds;
+	final int _waveRate;
+	final int _nibpSeconds;
+	final long _startMillis;
+	final SimpleDateFormat _sdf = new SimpleDateFormat("yyyyMMddHHmmss");
+
+	private int _second = -1;
+	private int _frame;
+	private int _framesInSecond;
+	private byte[] _data;
+	private final byte[][] _waves;
+
+	/**
+	 * @param seconds     of traffic, then the source ends
+	 * @param waveIds     the wave channels, each one frame a second
+	 * @param waveRate    samples a second of every channel
+	 * @param nibpSeconds between NIBP messages, 0 for none
+	 */
+	public SyntheticMonitor(int bed, int seconds, int[] waveIds, int waveRate, int nibpSeconds) {
+		_bed = bed;
+		_seconds = seconds;
+		_waveIds = waveIds;
+		_waveRate = waveRate;
+		_nibpSeconds = nibpSeconds;
+		_startMillis = System.currentTimeMillis() / 1000 * 1000;
+		_waves = new byte[waveIds.length][];
+		for (int i = 0; i < waveIds.length; i++) {
+			_waves[i] = wave(waveIds[i]);
+		}
+	}
+
+	/**
+	 * Twelve ECG leads at 250 Hz and an NIBP a minute.
+	 */
+	public static StandInMonitorServer.SourceFactory ward(final int seconds) {
+		return new StandInMonitorServer.SourceFactory() {
+			public StandInMonitorServer.Source create(int connection) {
+				return new SyntheticMonitor(connection, seconds, LEADS, 250, 60);
+			}
+		};
+	}
+
+	public boolean next() {
+		if (++_frame >= _framesInSecond) {
+			if (++_second >= _seconds) {
+				return false;
+			}
+			_frame = 0;
+			_framesInSecond = 1 + _waveIds.length + (nibpDue() ? 1 : 0);
+		}
+		if (_frame == 0) {
+			_data = vitals(time());
+		} else if (_frame <= _waveIds.length) {
+			_data = _waves[_frame - 1];
+		} else {
+			_data = nibp(time());
+		}
+		return true;
+	}
+
+	private String time() {
+		return _sdf.format(new Date(_startMillis + _second * 1000L));
+	}
+
+	private boolean nibpDue() {
+		return _nibpSeconds > 0 && _second % _nibpSeconds == 0;
+	}
+
+	public long nanos() {
+		// spread over the second in the order a monitor sends them
+		return _second * 1000000000L + _frame * (1000000000L / _framesInSecond);
+	}
+
+	public byte[] data() {
+		return _data;
+	}
+
+	public int length() {
+		return _data.length;
+	}
+
+	private double wobble(double period, double amplitude) {
+		return amplitude * Math.sin(2 * Math.PI * (_second + _bed * 7) / period);
+	}
+
+	byte[] vitals(String time) {
+		StringBuilder sb = new StringBuilder(256).append("MSH|^~\\&|||||||ORU^R01|204|P|2.3.1|\r");
+		obx(sb, 101, "HR", Math.round(72 + wobble(60, 8)), time);
+		obx(sb, 151, "RR", Math.round(16 + wobble(90, 3)), time);
+		obx(sb, 160, "SpO2", Math.round(97 + wobble(120, 2)), time);
+		obx(sb, 200, "T1", Math.round(365 + wobble(600, 3)) / 10.0, time);
+		obx(sb, 220, "CO2", Math.round(38 + wobble(45, 3)), time);
+		return StandInMonitorServer.frame(sb.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	byte[] nibp(String time) {
+		StringBuilder sb = new StringBuilder(256).append("MSH|^~\\&|||||||ORU^R01|503|P|2.3.1|\r");
+		long sys = Math.round(120 + wobble(3600, 10));
+		long dia = Math.round(80 + wobble(3600, 6));
+		obx(sb, 170, "NIBP-S", sys, time);
+		obx(sb, 171, "NIBP-D", dia, time);
+		obx(sb, 172, "NIBP-M", (sys + 2 * dia) / 3, time);
+		return StandInMonitorServer.frame(sb.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static void obx(StringBuilder sb, int id, String name, Object value, String time) {
+		sb.append("OBX||NM|").append(id).append('^').append(name).append("|2101|").append(value)
+				.append("||||||F|||").append(time).append('\r');
+	}
+
+	byte[] wave(int waveId) {
+		int[] samples = new int[_waveRate];
+		int amplitude = 300 + 50 * (waveId % 8);
+		for (int i = 0; i < samples.length; i++) {
+			double t = (double) i / _waveRate;
+			// a beat a second on a 2048 baseline, 12-bit like the monitor's ECG
+			samples[i] = 2048 + (int) (amplitude * Math.exp(-Math.pow((t - 0.3) * 40, 2))
+					+ 40 * Math.sin(2 * Math.PI * t));
+		}
+		byte[] packed = packFramable(WaveDecoderTest.wavePayload(waveId, 2, _waveRate, samples));
+		byte[] head = "MSH|^~\\&|||||||ORU^R01|157|P|2.3.1|\rZMW|".getBytes(StandardCharsets.US_ASCII);
+		byte[] payload = new byte[head.length + packed.length + 1];
+		System.arraycopy(head, 0, payload, 0, head.length);
+		System.arraycopy(packed, 0, payload, head.length, packed.length);
+		payload[payload.length - 1] = '\r';
+		return StandInMonitorServer.frame(payload);
+	}
+
+	/**
+	 * Packs the payload, nudging sample bytes until no packed byte is one of
+	 * the MLLP or segment delimiters, which a frame cannot carry.
+	 */
+	static byte[] packFramable(int[] unpacked) {
+		while (true) {
+			byte[] packed = WaveDecoderTest.pack(unpacked);
+			int bad = -1;
+			for (int i = 0; i < packed.length && bad < 0; i++) {
+				if (packed[i] == 0x0B || packed[i] == 0x0D || packed[i] == 0x1C) {
+					bad = i;
+				}
+			}
+			if (bad < 0) {
+				return packed;
+			}
+			int group = bad / 8;
+			int n = bad % 8;
+			if (n < Math.min(7, unpacked.length - group * 7)) {
+				unpacked[group * 7 + n] = (unpacked[group * 7 + n] + 1) & 0xFF;
+			} else {
+				// the high bits of the group, flip the top bit of a sample byte
+				unpacked[Math.max(group * 7, WaveDecoder.HEADER)] ^= 0x80;
+			}
+		}
+	}
+
+	/**
+	 * The UDP connect indication (ADT^A01 101) a monitor broadcasts to port
+	 * 4600, announcing where it accepts connections and the patient.
+	 */
+	public static byte[] connectIndication(String ip, int port, String bed, String guid) throws Exception {
+		byte[] addr = InetAddress.getByName(ip).getAddress();
+		long ipValue = ((addr[0] & 0xFFL) << 24) | ((addr[1] & 0xFF) << 16) | ((addr[2] & 0xFF) << 8) | (addr[3] & 0xFF);
+		String hl7 = "MSH|^~\\&|||||||ADT^A01|101|P|2.3.1|\r" //
+				+ "EVN||20181010\r" //
+				+ "PID||||" + guid + "||Bed^" + bed + "\r" //
+				+ "PV1||I|^^ICU&" + bed + "&" + ipValue + "&" + port + "&&1\r";
+		return hl7.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Sends the connect indication of every bed once, from one socket.
+	 */
+	public static void announce(InetSocketAddress to, String ip, int port, int beds) throws Exception {
+		DatagramChannel ch = DatagramChannel.open();
+		try {
+			for (int bed = 0; bed < beds; bed++) {
+				ch.send(ByteBuffer.wrap(connectIndication(ip, port, String.valueOf(bed), "P" + bed)), to);
+			}
+		} finally {
+			ch.close();
+		}
+	}
+}
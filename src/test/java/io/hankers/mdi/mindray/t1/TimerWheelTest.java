@@ -0,0 +1,68 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TimerWheelTest extends TestCase {
+	TimerWheel _wheel = new TimerWheel(5, 8);
+
+	protected void tearDown() {
+		_wheel.shutdown();
+	}
+
+	static Runnable counter(final AtomicInteger count) {
+		return new Runnable() {
+			public void run() {
+				count.incrementAndGet();
+			}
+		};
+	}
+
+	public void testOneShotAfterDelay() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		final long start = System.nanoTime();
+		final long[] elapsed = new long[1];
+		// longer than one turn of the wheel, 8 slots of 5 ms
+		_wheel.schedule(new Runnable() {
+			public void run() {
+				elapsed[0] = System.nanoTime() - start;
+				done.countDown();
+			}
+		}, 100, 0);
+		assertTrue(done.await(2, TimeUnit.SECONDS));
+		assertTrue(elapsed[0] >= TimeUnit.MILLISECONDS.toNanos(95));
+	}
+
+	public void testPeriodicCadence() throws Exception {
+		AtomicInteger fast = new AtomicInteger();
+		AtomicInteger slow = new AtomicInteger();
+		_wheel.schedule(counter(fast), 0, 20);
+		_wheel.schedule(counter(slow), 0, 100);
+		Thread.sleep(500);
+		assertTrue("fast " + fast.get(), fast.get() >= 15 && fast.get() <= 27);
+		assertTrue("slow " + slow.get(), slow.get() >= 3 && slow.get() <= 7);
+	}
+
+	public void testCancelStopsRuns() throws Exception {
+		AtomicInteger count = new AtomicInteger();
+		TimerWheel.Timeout t = _wheel.schedule(counter(count), 0, 10);
+		Thread.sleep(100);
+		t.cancel();
+		assertTrue(t.isCancelled());
+		Thread.sleep(20);
+		int runs = count.get();
+		assertTrue(runs > 0);
+		Thread.sleep(100);
+		assertEquals(runs, count.get());
+	}
+
+	public void testCancelBeforeFirstRun() throws Exception {
+		AtomicInteger count = new AtomicInteger();
+		_wheel.schedule(counter(count), 50, 10).cancel();
+		Thread.sleep(150);
+		assertEquals(0, count.get());
+	}
+}
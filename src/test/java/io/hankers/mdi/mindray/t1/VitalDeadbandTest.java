@@ -0,0 +1,62 @@
+package io.hankers.mdi.mindray.t1;
+
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import junit.framework.TestCase;
+
+public class VitalDeadbandTest extends TestCase {
+
+	static VitalSign vital(long time, double hr, double temp) {
+		VitalSign vs = new VitalSign();
+		vs._timestamp = time;
+		vs.set(VitalParams.HR, hr);
+		vs.set(VitalParams.TEMP, temp);
+		return vs;
+	}
+
+	public void testChangesOnly() {
+		double[] deadbands = new double[VitalParams.COUNT];
+		deadbands[VitalParams.TEMP] = 0.2;
+		deadbands[VitalParams.SYS] = -1;
+		VitalDeadband deadband = new VitalDeadband(deadbands, 60000);
+
+		VitalSign first = vital(0, 72, 36.5);
+		assertTrue(deadband.filter(first));
+		assertTrue(first.has(VitalParams.HR) && first.has(VitalParams.TEMP));
+
+		// nothing moved
+		assertFalse(deadband.filter(vital(1000, 72, 36.5)));
+
+		// HR changed, TEMP within its deadband
+		VitalSign vs = vital(2000, 73, 36.7);
+		assertTrue(deadband.filter(vs));
+		assertEquals(73.0, vs.get(VitalParams.HR), 0);
+		assertFalse(vs.has(VitalParams.TEMP));
+
+		// measured against the last published 36.5, so a slow drift gets through
+		vs = vital(3000, 73, 36.8);
+		assertTrue(deadband.filter(vs));
+		assertFalse(vs.has(VitalParams.HR));
+		assertEquals(36.8, vs.get(VitalParams.TEMP), 0);
+
+		// every NIBP is a measurement
+		VitalSign nibp = new VitalSign();
+		nibp._timestamp = 4000;
+		nibp.set(VitalParams.SYS, 120);
+		assertTrue(deadband.filter(nibp));
+		nibp._timestamp = 5000;
+		assertTrue(deadband.filter(nibp));
+	}
+
+	public void testKeyframe() {
+		VitalDeadband deadband = new VitalDeadband(new double[VitalParams.COUNT], 10000);
+		assertTrue(deadband.filter(vital(0, 72, 36.5)));
+		for (long t = 1000; t < 10000; t += 1000) {
+			assertFalse(deadband.filter(vital(t, 72, 36.5)));
+		}
+		VitalSign keyframe = vital(10000, 72, 36.5);
+		assertTrue(deadband.filter(keyframe));
+		assertTrue(keyframe.has(VitalParams.HR) && keyframe.has(VitalParams.TEMP));
+		assertFalse(deadband.filter(vital(11000, 72, 36.5)));
+	}
+}
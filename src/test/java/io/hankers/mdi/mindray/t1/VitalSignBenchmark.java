@@ -0,0 +1,124 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.hankers.mdi.mindray.t1.Models.HL7Utils;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+
+/**
+ * Parse and merge of a periodic vital sign message: the former String
+ * fields with the startsWith chain against the parameter table.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="VitalSignBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VitalSignBenchmark {
+	byte[] _msg;
+	HL7Segment _segment;
+	VitalSign _cached;
+	LegacyVitalSign _legacyCached;
+
+	@Setup
+	public void setup() {
+		_msg = ("MSH|^~\\&|||||||ORU^R01|204|P|2.3.1|\r" //
+				+ "OBX||NM|101^HR|2101|72||||||F\r" //
+				+ "OBX||NM|102^PVC|2101|0||||||F\r" //
+				+ "OBX||NM|151^RR|2101|18||||||F\r" //
+				+ "OBX||NM|160^SpO2|2101|98||||||F\r" //
+				+ "OBX||NM|200^T1|2101|36.5||||||F\r" //
+				+ "OBX||NM|220^CO2|2101|-100||||||F\r").getBytes();
+		_segment = new HL7Segment();
+		_cached = new VitalSign();
+		_legacyCached = new LegacyVitalSign();
+	}
+
+	@Benchmark
+	public void parameterTable(Blackhole bh) {
+		VitalSign vs = (VitalSign) HL7Utils.create(_segment, _msg, 0, _msg.length);
+		_cached.merge(vs);
+		bh.consume(_cached);
+	}
+
+	@Benchmark
+	public void legacyStrings(Blackhole bh) {
+		LegacyVitalSign vs = new LegacyVitalSign();
+		int start = 0;
+		for (int i = 0; i < _msg.length; i++) {
+			if (_msg[i] == '\r') {
+				String segment = new String(_msg, start, i - start);
+				if (!segment.startsWith("MSH")) {
+					vs.readSegment(segment);
+				}
+				start = i + 1;
+			}
+		}
+		_legacyCached.merge(vs);
+		bh.consume(_legacyCached);
+	}
+
+	static class LegacyVitalSign {
+		String hr, pvc, rr, temp, spo2, co2, sys, dia, mean;
+
+		void readSegment(String segment) {
+			String[] fields = segment.split("\\|");
+			if (segment.startsWith("OBX")) {
+				String idName = fields.length > 3 ? fields[3] : null;
+				String val = fields.length > 5 ? fields[5] : null;
+				if (val != null && !val.isEmpty()) {
+					if (idName.startsWith("101^")) {
+						hr = val;
+					} else if (idName.startsWith("102^")) {
+						pvc = val;
+					} else if (idName.startsWith("151^")) {
+						rr = val;
+					} else if (idName.startsWith("200^")) {
+						temp = val;
+					} else if (idName.startsWith("160^")) {
+						spo2 = val;
+					} else if (idName.startsWith("220^")) {
+						co2 = val;
+					} else if (idName.startsWith("170^")) {
+						sys = val;
+					} else if (idName.startsWith("171^")) {
+						dia = val;
+					} else if (idName.startsWith("172^")) {
+						mean = val;
+					}
+				}
+			}
+		}
+
+		void merge(LegacyVitalSign o) {
+			hr = valid(o.hr) ? o.hr : hr;
+			pvc = valid(o.pvc) ? o.pvc : pvc;
+			rr = valid(o.rr) ? o.rr : rr;
+			temp = valid(o.temp) ? o.temp : temp;
+			spo2 = valid(o.spo2) ? o.spo2 : spo2;
+			co2 = valid(o.co2) ? o.co2 : co2;
+			sys = valid(o.sys) ? o.sys : sys;
+			dia = valid(o.dia) ? o.dia : dia;
+			mean = valid(o.mean) ? o.mean : mean;
+		}
+
+		static boolean valid(String val) {
+			return val != null && !val.isEmpty() && !val.startsWith("-100");
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package io.hankers.mdi.mindray.t1;
+
+import org.json.JSONObject;
+
+import io.hankers.mdi.mindray.t1.Models.HL7Utils;
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import junit.framework.TestCase;
+
+public class VitalSignTest extends TestCase {
+
+	static VitalSign parse(String... obx) {
+		StringBuilder sb = new StringBuilder("MSH|^~\\&|||||||ORU^R01|204|P|2.3.1|\r");
+		for (String s : obx) {
+			sb.append(s).append('\r');
+		}
+		byte[] buf = sb.toString().getBytes();
+		return (VitalSign) HL7Utils.create(buf, 0, buf.length);
+	}
+
+	public void testParameterTable() {
+		for (int slot = 0; slot < VitalParams.COUNT; slot++) {
+			assertEquals(slot, VitalParams.slotOf(VitalParams.codeOf(slot)));
+		}
+		assertEquals(-1, VitalParams.slotOf(999));
+		assertEquals(-1, VitalParams.slotOf(-1));
+		assertEquals(-1, VitalParams.slotOf(100000));
+	}
+
+	public void testInvalidValuesAreSkipped() {
+		VitalSign vs = parse("OBX||NM|101^HR|2101|-100||||||F", "OBX||NM|102^PVC|2101|||||||F",
+				"OBX||NM|999^X|2101|5||||||F");
+		assertFalse(vs.has(VitalParams.HR));
+		assertFalse(vs.has(VitalParams.PVC));
+		assertTrue(vs.isEmpty());
+		assertNull(vs.toString());
+	}
+
+	public void testMergeAndSerialize() {
+		VitalSign vs = parse("OBX||NM|101^HR|2101|72||||||F", "OBX||NM|220^CO2|2101|35||||||F");
+		VitalSign nibp = parse("OBX||NM|170^NIBP-S|2101|120||||||F", "OBX||NM|101^HR|2101|-100||||||F",
+				"OBX||NM|200^T1|2101|36.5||||||F");
+		vs.merge(nibp);
+		assertEquals(72.0, vs.get(VitalParams.HR), 0);
+		assertEquals(120.0, vs.get(VitalParams.SYS), 0);
+		assertEquals(35.0, vs.get(VitalParams.CO2), 0);
+
+		vs._timestamp = 1000;
+		JSONObject json = new JSONObject(vs.toString());
+		assertEquals("72", json.getString("HR"));
+		assertEquals("120", json.getString("NBPS"));
+		assertEquals("36.5", json.getString("TEMP"));
+		assertFalse(json.has("CO2"));
+		assertEquals(1000, json.getLong("timestamp"));
+	}
+}
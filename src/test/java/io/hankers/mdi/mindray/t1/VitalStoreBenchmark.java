@@ -0,0 +1,76 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+
+/**
+ * Trend queries of one bed with the default retention filled: the last hour
+ * by second, the last day by minute and the last week by quarter of an hour
+ * of HR, and adding one message.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="VitalStoreBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VitalStoreBenchmark {
+	static final long HOUR = 3600 * 1000L;
+
+	VitalStore.Series _series;
+	final VitalStore.Trend _trend = new VitalStore.Trend();
+	final VitalSign _vital = VitalStoreTest.vital(0, 72, 98);
+	long _now;
+
+	@Setup
+	public void setup() {
+		VitalStore store = new VitalStore(new long[] { HOUR, 24 * HOUR, 7 * 24 * HOUR });
+		_series = store.series("bed1");
+		// a week of one message every 5 s, then the last hour every second
+		for (long t = 0; t < 7 * 24 * HOUR; t += 5000) {
+			_series.add(VitalStoreTest.vital(t, 60 + (t / 5000) % 40, 98));
+		}
+		for (long t = 7 * 24 * HOUR; t < 7 * 24 * HOUR + HOUR; t += 1000) {
+			_series.add(VitalStoreTest.vital(t, 60 + (t / 1000) % 40, 98));
+		}
+		_now = 7 * 24 * HOUR + HOUR;
+		System.out.printf("%nOne bed: %d KB%n", store.footprint() >> 10);
+	}
+
+	@Benchmark
+	public int lastHourBySecond() {
+		return _series.query(VitalParams.HR, VitalStore.RAW, _now - HOUR, _now, _trend);
+	}
+
+	@Benchmark
+	public int lastDayByMinute() {
+		return _series.query(VitalParams.HR, VitalStore.MINUTE, _now - 24 * HOUR, _now, _trend);
+	}
+
+	@Benchmark
+	public int lastWeekByQuarter() {
+		return _series.query(VitalParams.HR, VitalStore.QUARTER, _now - 7 * 24 * HOUR, _now, _trend);
+	}
+
+	@Benchmark
+	public void add() {
+		_vital._timestamp = _now;
+		_now += 1000;
+		_series.add(_vital);
+	}
+}
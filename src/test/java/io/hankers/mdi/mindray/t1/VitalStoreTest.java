@@ -0,0 +1,77 @@
+package io.hankers.mdi.mindray.t1;
+
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import junit.framework.TestCase;
+
+public class VitalStoreTest extends TestCase {
+	static final long HOUR = 3600 * 1000L;
+	// a quarter of an hour boundary
+	static final long T0 = 1699999200000L;
+
+	final VitalStore _store = new VitalStore(new long[] { HOUR, 24 * HOUR, 7 * 24 * HOUR });
+	final VitalStore.Trend _trend = new VitalStore.Trend();
+
+	static VitalSign vital(long time, double hr, double spo2) {
+		VitalSign vs = new VitalSign();
+		vs._timestamp = time;
+		vs.set(VitalParams.HR, hr);
+		vs.set(VitalParams.SPO2, spo2);
+		return vs;
+	}
+
+	public void testRawKeepsLastOfEachSecond() {
+		VitalStore.Series s = _store.series("bed1");
+		s.add(vital(T0, 70, 98));
+		s.add(vital(T0 + 400, 72, 97));
+		s.add(vital(T0 + 2000, 75, 96));
+		assertEquals(2, s.query(VitalParams.HR, VitalStore.RAW, T0, T0 + 3000, _trend));
+		assertEquals(T0, _trend.time()[0]);
+		assertEquals(72f, _trend.last()[0]);
+		assertEquals(T0 + 2000, _trend.time()[1]);
+		assertEquals(75f, _trend.avg()[1]);
+		assertEquals(0, s.query(VitalParams.TEMP, VitalStore.RAW, T0, T0 + 3000, _trend));
+	}
+
+	public void testMinuteRollup() {
+		VitalStore.Series s = _store.series("bed1");
+		for (int i = 0; i < 120; i++) {
+			s.add(vital(T0 + i * 1000L, 60 + i % 60, 95));
+		}
+		assertEquals(2, s.query(VitalParams.HR, VitalStore.MINUTE, T0, T0 + 120000, _trend));
+		assertEquals(T0, _trend.time()[0]);
+		assertEquals(60f, _trend.min()[0]);
+		assertEquals(119f, _trend.max()[0]);
+		assertEquals(89.5f, _trend.avg()[0]);
+		assertEquals(119f, _trend.last()[0]);
+		assertEquals(T0 + 60000, _trend.time()[1]);
+
+		// the quarter holds both minutes
+		assertEquals(1, s.query(VitalParams.SPO2, VitalStore.QUARTER, T0 - 15 * 60000, T0 + 15 * 60000, _trend));
+		assertEquals(95f, _trend.avg()[0]);
+	}
+
+	public void testOldBucketsAreReplaced() {
+		VitalStore.Series s = _store.series("bed1");
+		s.add(vital(T0, 70, 98));
+		// the same raw slot an hour later
+		s.add(vital(T0 + HOUR, 80, 99));
+		assertEquals(0, s.query(VitalParams.HR, VitalStore.RAW, T0, T0 + 1000, _trend));
+		assertEquals(1, s.query(VitalParams.HR, VitalStore.RAW, T0, T0 + HOUR + 1000, _trend));
+		assertEquals(80f, _trend.last()[0]);
+		// a late message for the replaced second is dropped
+		s.add(vital(T0, 50, 90));
+		assertEquals(1, s.query(VitalParams.HR, VitalStore.RAW, 0, Long.MAX_VALUE, _trend));
+		assertEquals(80f, _trend.last()[0]);
+		// still within a day
+		assertEquals(2, s.query(VitalParams.HR, VitalStore.MINUTE, 0, Long.MAX_VALUE, _trend));
+	}
+
+	public void testEvictByAge() {
+		_store.series("bed1").add(vital(T0, 70, 98));
+		_store.series("bed2").add(vital(T0 + 8 * 24 * HOUR, 70, 98));
+		_store.evict(T0 + 8 * 24 * HOUR);
+		assertNull(_store.get("bed1"));
+		assertNotNull(_store.get("bed2"));
+	}
+}
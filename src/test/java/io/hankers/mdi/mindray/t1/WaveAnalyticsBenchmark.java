@@ -0,0 +1,84 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+
+/**
+ * One second of a ward through {@link WaveAnalytics} on one thread: lead II
+ * at 250 Hz and the pleth at 60 Hz of 100 beds, each bed with its own state
+ * and a minute of its own beats. The stage keeps up with the ward while an op
+ * takes well under a second.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="WaveAnalyticsBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveAnalyticsBenchmark {
+	static final int BEDS = 100;
+	static final int SECONDS = 60;
+
+	final WaveAnalytics[] _beds = new WaveAnalytics[BEDS];
+	final Wave[][] _ecg = new Wave[BEDS][SECONDS];
+	final Wave[][] _pleth = new Wave[BEDS][SECONDS];
+	final MessagePool _pool = new MessagePool();
+	int _second;
+
+	@Setup
+	public void setup() {
+		int[] pleth = new int[60];
+		for (int i = 0; i < pleth.length; i++) {
+			pleth[i] = (int) Math.round(128 + 40 * Math.sin(2 * Math.PI * i / 60));
+		}
+		for (int bed = 0; bed < BEDS; bed++) {
+			_beds[bed] = new WaveAnalytics();
+			// 60 to 100 bpm with some variability
+			long[] beats = new long[SECONDS * 2];
+			long rr = 600 + bed * 4;
+			beats[0] = bed * 7;
+			for (int i = 1; i < beats.length; i++) {
+				beats[i] = beats[i - 1] + rr + (i % 3) * 20;
+			}
+			int[][] ecg = WaveAnalyticsTest.ecg(SECONDS, 250, beats);
+			for (int s = 0; s < SECONDS; s++) {
+				_ecg[bed][s] = WaveAnalyticsTest.wave(WaveAnalyticsTest.LEAD_II, ecg[s], 250, s * 1000L);
+				_pleth[bed][s] = WaveAnalyticsTest.wave(WaveAnalyticsTest.PLETH, pleth, 60, s * 1000L);
+			}
+		}
+	}
+
+	@Benchmark
+	public void wardSecond(Blackhole bh) {
+		int s = _second;
+		_second = (s + 1) % SECONDS;
+		for (int bed = 0; bed < BEDS; bed++) {
+			VitalSign vs = _beds[bed].process(_ecg[bed][s], s * 1000L, _pool);
+			bh.consume(vs);
+			if (vs != null) {
+				vs.release();
+			}
+			vs = _beds[bed].process(_pleth[bed][s], s * 1000L, _pool);
+			bh.consume(vs);
+			if (vs != null) {
+				vs.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.hankers.mdi.mindray.t1.Models.VitalParams;
+import io.hankers.mdi.mindray.t1.Models.VitalSign;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+import junit.framework.TestCase;
+
+public class WaveAnalyticsTest extends TestCase {
+	static final int LEAD_II = 1102;
+	static final int PLETH = 1152;
+
+	/**
+	 * One-second blocks of lead II at the rate with R-peaks at the given
+	 * millis, 12-bit on a 2048 baseline with a slow wander.
+	 */
+	static int[][] ecg(int seconds, int rate, long[] beats) {
+		int[][] blocks = new int[seconds][rate];
+		for (int s = 0; s < seconds; s++) {
+			for (int i = 0; i < rate; i++) {
+				double t = s + (double) i / rate;
+				double v = 2048 + 40 * Math.sin(2 * Math.PI * t / 3);
+				for (long beat : beats) {
+					double dt = t - beat / 1000.0;
+					if (Math.abs(dt) < 0.1) {
+						v += 600 * Math.exp(-Math.pow(dt * 60, 2));
+					}
+				}
+				blocks[s][i] = (int) v;
+			}
+		}
+		return blocks;
+	}
+
+	static Wave wave(int id, int[] samples, int rate, long millis) {
+		Wave wave = new Wave();
+		wave._values.put(id, samples);
+		wave._sSampleRate = rate;
+		wave._timestamp = millis;
+		wave._receivedMillis = millis;
+		return wave;
+	}
+
+	public void testRrIntervals() {
+		// alternating 800 and 1000 ms
+		long[] beats = new long[24];
+		for (int i = 1; i < beats.length; i++) {
+			beats[i] = beats[i - 1] + (i % 2 == 0 ? 1000 : 800);
+		}
+		beats[0] = 300;
+		for (int i = 1; i < beats.length; i++) {
+			beats[i] += 300;
+		}
+		int[][] blocks = ecg(20, 250, beats);
+		WaveAnalytics analytics = new WaveAnalytics(64);
+		VitalSign last = null;
+		for (int s = 0; s < blocks.length; s++) {
+			// the vital signs' clock, not the wave's
+			VitalSign vs = analytics.process(wave(LEAD_II, blocks[s], 250, 1000L * s + 17), 5000L + 1000L * s, null);
+			if (vs != null) {
+				assertEquals(5000L + 1000L * s, vs._timestamp);
+				last = vs.has(VitalParams.RRI) ? vs : last;
+			}
+		}
+		int[] rr = new int[64];
+		int n = analytics.rrIntervals(rr);
+		// beats in the two seconds of learning are not counted
+		assertTrue(n + " intervals", n >= 15);
+		for (int i = 0; i < n; i++) {
+			int expected = rr[i] > 900 ? 1000 : 800;
+			assertEquals(Arrays.toString(rr), expected, rr[i], 8);
+		}
+		assertEquals(200, analytics.rmssd(), 10);
+		assertEquals(analytics.lastRr(), (int) last.get(VitalParams.RRI));
+		assertEquals(200, last.get(VitalParams.RMSSD), 10);
+		assertEquals(0, analytics._flags);
+	}
+
+	public void testPleth() {
+		int[] pleth = new int[60];
+		for (int i = 0; i < pleth.length; i++) {
+			pleth[i] = (int) Math.round(100 + 5 * Math.sin(2 * Math.PI * i / 60));
+		}
+		WaveAnalytics analytics = new WaveAnalytics(8);
+		// no vital sign to stamp it with yet
+		assertNull(analytics.process(wave(PLETH, pleth, 60, 1000), -1, null));
+		VitalSign vs = analytics.process(wave(PLETH, pleth, 60, 2000), 2000, null);
+		assertEquals(10.0, vs.get(VitalParams.PI), 0.2);
+		assertFalse(vs.has(VitalParams.RRI));
+		assertFalse(vs.has(VitalParams.ARTIFACT));
+		// the same PI and no artifact
+		assertNull(analytics.process(wave(PLETH, pleth, 60, 3000), 3000, null));
+		assertNull(analytics.process(wave(1171, pleth, 60, 4000), 4000, null));
+	}
+
+	public void testFlatAndSaturated() {
+		WaveAnalytics analytics = new WaveAnalytics(8);
+		int[] flat = new int[250];
+		Arrays.fill(flat, 2048);
+		flat[10] = 2049;
+		VitalSign vs = analytics.process(wave(LEAD_II, flat, 250, 0), 0, null);
+		assertEquals(WaveAnalytics.ECG_FLAT, (int) vs.get(VitalParams.ARTIFACT));
+		assertNull(analytics.process(wave(LEAD_II, flat, 250, 1000), 1000, null));
+
+		int[] clipped = new int[60];
+		for (int i = 0; i < clipped.length; i++) {
+			clipped[i] = Math.min(255, (int) (200 + 100 * Math.sin(2 * Math.PI * i / 60)));
+		}
+		vs = analytics.process(wave(PLETH, clipped, 60, 1000), 1000, null);
+		// the ECG flag stands until the next ECG block
+		assertEquals(WaveAnalytics.ECG_FLAT | WaveAnalytics.PLETH_SATURATED, (int) vs.get(VitalParams.ARTIFACT));
+		assertFalse(vs.has(VitalParams.PI));
+
+		// cleared once
+		int[] ecg = WaveAnalyticsTest.ecg(1, 250, new long[] { 500 })[0];
+		vs = analytics.process(wave(LEAD_II, ecg, 250, 2000), 2000, null);
+		assertEquals(WaveAnalytics.PLETH_SATURATED, (int) vs.get(VitalParams.ARTIFACT));
+	}
+
+	/**
+	 * @return the payloads of a session fed seconds of vital signs and a clean
+	 *         pleth
+	 */
+	static List<String> publish(boolean analytics) throws Exception {
+		final List<String> out = Collections.synchronizedList(new ArrayList<String>());
+		PublishQueue queue = new PublishQueue(new PayloadPublisher(new PayloadSerializer.Json(),
+				new PayloadPublisher.PayloadSink() {
+					public void publish(byte[] buf, int offset, int length, boolean text) {
+						out.add(new String(buf, offset, length, StandardCharsets.UTF_8));
+					}
+				}, 0, 0), 1024, false, false);
+		System.setProperty("analytics.enabled", String.valueOf(analytics));
+		MonitorSession session;
+		try {
+			session = new MonitorSession(queue, null);
+		} finally {
+			System.clearProperty("analytics.enabled");
+		}
+		SyntheticMonitor monitor = new SyntheticMonitor(0, 10, new int[] { PLETH }, 60, 0);
+		while (monitor.next()) {
+			byte[] frame = DecodePoolTest.strip(monitor.data());
+			assertTrue(session.onFrame(frame, 0, frame.length, System.nanoTime()));
+		}
+		queue.shutdown();
+		return out;
+	}
+
+	public void testSessionPublishesOnlyChanges() throws Exception {
+		assertNull(WaveAnalytics.create());
+		List<String> off = publish(false);
+		List<String> on = publish(true);
+		// merged into the monitor's vital signs, and nothing new after the
+		// first second
+		assertEquals(off.size(), on.size());
+		int pi = 0;
+		for (String payload : on) {
+			pi += payload.contains("\"PI\"") ? 1 : 0;
+			assertFalse(payload, payload.contains("ARTIFACT"));
+		}
+		assertEquals(1, pi);
+	}
+}
@@ -0,0 +1,97 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * About one second of a 500 Hz channel per operation. The sample counts keep
+ * the old decoder on whole groups and its rate byte below 0x80, which it could
+ * not decode. Run with -prof gc: the decoder must show 0 B/op. The
+ * List&lt;Short&gt; path it replaced is kept for comparison, its 2-byte branch
+ * with getShort() since the original getInt() threw.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="WaveDecoderBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveDecoderBenchmark {
+	@Param({ "1", "2" })
+	int _sampleSize;
+
+	byte[] _encoded;
+	int[] _dst;
+
+	@Setup
+	public void setup() {
+		Random rnd = new Random(1);
+		int count = _sampleSize == 1 ? 524 : 521;
+		int[] samples = new int[count];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = rnd.nextInt(_sampleSize == 1 ? 256 : 4096);
+		}
+		_encoded = WaveDecoderTest.pack(WaveDecoderTest.wavePayload(1114, _sampleSize, count, samples));
+		_dst = new int[count];
+	}
+
+	@Benchmark
+	public int[] waveDecoder() {
+		int size = WaveDecoder.sampleSize(_encoded, 0, _encoded.length);
+		int rate = WaveDecoder.sampleRate(_encoded, 0, _encoded.length);
+		WaveDecoder.decode(_encoded, 0, _encoded.length, size, _dst, 0, rate);
+		return _dst;
+	}
+
+	@Benchmark
+	public void legacyBoxed(Blackhole bh) {
+		List<Short> decoded = legacyDecode(_encoded);
+		short[] unsignedBytes = ArrayUtils.toPrimitive(decoded.toArray(new Short[decoded.size()]));
+		byte[] tmp2 = new byte[] { (byte) unsignedBytes[5], (byte) unsignedBytes[6] };
+		int[] values = new int[ByteBuffer.wrap(tmp2).order(ByteOrder.BIG_ENDIAN).getShort()];
+		if (_sampleSize == 1) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = decoded.get(8 + i).shortValue();
+			}
+		} else {
+			for (int i = 0; i < values.length; i++) {
+				byte[] tmp = new byte[] { decoded.get(8 + i * 2).byteValue(), decoded.get(8 + i * 2 + 1).byteValue() };
+				values[i] = ByteBuffer.wrap(tmp).order(ByteOrder.BIG_ENDIAN).getShort() & 0xFFFF;
+			}
+		}
+		bh.consume(values);
+	}
+
+	static List<Short> legacyDecode(byte[] src) {
+		List<Short> ret = new ArrayList<Short>();
+		int blockCount = src.length / 8;
+		for (int i = 0; i < blockCount; i++) {
+			int endByte = src[i * 8 + 7];
+			for (int n = 0; n < 7; n++) {
+				byte b = (byte) ((endByte >> n) & 0x1);
+				ret.add((short) (b > 0 ? (src[i * 8 + n] & 0xFF) : (src[i * 8 + n] & 0x7F)));
+			}
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,126 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.Random;
+
+import io.hankers.mdi.mindray.t1.Models.HL7Utils;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+import junit.framework.TestCase;
+
+public class WaveDecoderTest extends TestCase {
+
+	/**
+	 * The monitor side of the encoding: 7 bytes with the high bit cleared, then
+	 * their high bits.
+	 */
+	static byte[] pack(int[] unpacked) {
+		int groups = (unpacked.length + 6) / 7;
+		int rem = unpacked.length % 7;
+		byte[] ret = new byte[rem == 0 ? groups * 8 : (groups - 1) * 8 + rem + 1];
+		for (int g = 0; g < groups; g++) {
+			int n = Math.min(7, unpacked.length - g * 7);
+			int hi = 0;
+			for (int i = 0; i < n; i++) {
+				int b = unpacked[g * 7 + i];
+				ret[g * 8 + i] = (byte) (b & 0x7F);
+				hi |= ((b >> 7) & 1) << i;
+			}
+			ret[g * 8 + n] = (byte) hi;
+		}
+		return ret;
+	}
+
+	static int[] wavePayload(int waveId, int sampleSize, int sampleRate, int[] samples) {
+		int[] ret = new int[8 + samples.length * sampleSize];
+		ret[2] = waveId >> 8;
+		ret[3] = waveId & 0xFF;
+		ret[4] = sampleSize;
+		ret[5] = sampleRate >> 8;
+		ret[6] = sampleRate & 0xFF;
+		for (int i = 0; i < samples.length; i++) {
+			if (sampleSize == 1) {
+				ret[8 + i] = samples[i];
+			} else {
+				ret[8 + i * 2] = samples[i] >> 8;
+				ret[8 + i * 2 + 1] = samples[i] & 0xFF;
+			}
+		}
+		return ret;
+	}
+
+	public void testLengths() {
+		assertEquals(0, WaveDecoder.unpackedLength(0));
+		assertEquals(0, WaveDecoder.unpackedLength(1));
+		assertEquals(1, WaveDecoder.unpackedLength(2));
+		assertEquals(7, WaveDecoder.unpackedLength(8));
+		assertEquals(9, WaveDecoder.unpackedLength(11));
+		for (int n = 0; n < 100; n++) {
+			assertEquals(n, WaveDecoder.unpackedLength(pack(new int[n]).length));
+		}
+	}
+
+	public void testRoundTripAllSizesAndRemainders() {
+		Random rnd = new Random(1114);
+		for (int sampleSize = 1; sampleSize <= 2; sampleSize++) {
+			for (int n = 0; n < 300; n++) {
+				int[] samples = new int[n];
+				for (int i = 0; i < n; i++) {
+					samples[i] = rnd.nextInt(sampleSize == 1 ? 256 : 65536);
+				}
+				byte[] src = pack(wavePayload(1114, sampleSize, n, samples));
+				byte[] framed = new byte[src.length + 10];
+				System.arraycopy(src, 0, framed, 5, src.length);
+				int from = 5;
+				int to = 5 + src.length;
+
+				assertEquals(1114, WaveDecoder.waveId(framed, from, to));
+				assertEquals(sampleSize, WaveDecoder.sampleSize(framed, from, to));
+				assertEquals(n, WaveDecoder.sampleRate(framed, from, to));
+				assertEquals(n, WaveDecoder.sampleCount(to - from, sampleSize));
+
+				int[] dst = new int[n + 2];
+				assertEquals(n, WaveDecoder.decode(framed, from, to, sampleSize, dst, 1, n));
+				for (int i = 0; i < n; i++) {
+					assertEquals("size " + sampleSize + " n " + n + " i " + i, samples[i], dst[i + 1]);
+				}
+				short[] shorts = new short[n];
+				assertEquals(n, WaveDecoder.decode(framed, from, to, sampleSize, shorts, 0, n));
+				for (int i = 0; i < n; i++) {
+					assertEquals(samples[i], shorts[i] & 0xFFFF);
+				}
+			}
+		}
+	}
+
+	public void testTruncatedPayload() {
+		int[] samples = new int[100];
+		byte[] src = pack(wavePayload(1151, 2, 100, samples));
+		int[] dst = new int[100];
+		// 238 encoded bytes cut to 174 unpack to 152, a header and 72 samples
+		assertEquals(238, src.length);
+		assertEquals(72, WaveDecoder.decode(src, 0, src.length - 64, 2, dst, 0, 100));
+		assertEquals(0, WaveDecoder.decode(src, 0, 4, 2, dst, 0, 100));
+	}
+
+	public void testWaveMessage() {
+		int[] samples = new int[250];
+		for (int i = 0; i < samples.length; i++) {
+			// stay clear of the frame and segment delimiters
+			samples[i] = 0x20 + i % 0x50;
+		}
+		byte[] payload = pack(wavePayload(1114, 1, 250, samples));
+		byte[] head = "MSH|^~\\&|||||||ORU^R01|157|P|2.3.1|\rZMW|".getBytes();
+		byte[] msg = new byte[head.length + payload.length + 1];
+		System.arraycopy(head, 0, msg, 0, head.length);
+		System.arraycopy(payload, 0, msg, head.length, payload.length);
+		msg[msg.length - 1] = '\r';
+
+		Wave wave = (Wave) HL7Utils.create(msg, 0, msg.length);
+		assertEquals(1114, wave._sWaveId);
+		assertEquals(250, wave._sSampleRate);
+		int[] values = wave._values.get(1114);
+		assertEquals(250, values.length);
+		for (int i = 0; i < samples.length; i++) {
+			assertEquals(samples[i], values[i]);
+		}
+	}
+}
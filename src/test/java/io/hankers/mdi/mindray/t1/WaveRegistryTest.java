@@ -0,0 +1,64 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.io.StringReader;
+
+import org.json.JSONObject;
+
+import io.hankers.mdi.mindray.t1.Models.HL7Utils;
+import io.hankers.mdi.mindray.t1.Models.Wave;
+import junit.framework.TestCase;
+
+public class WaveRegistryTest extends TestCase {
+
+	public void testDefault() {
+		WaveRegistry registry = WaveRegistry.getDefault();
+		assertEquals("aVR", registry.name(1104));
+		assertEquals("aVR", registry.name(1116));
+		assertEquals("II", registry.name(1102));
+		assertEquals("PLETH", registry.name(1152));
+		assertEquals("IBP_ART", registry.name(1171));
+		assertEquals("IBP_LVP", registry.name(1198));
+		assertEquals("GAS_DES", registry.name(1218));
+		assertEquals("SPO2B_PLETH", registry.name(1270));
+
+		WaveRegistry.Channel rmPaw = registry.get(1250);
+		assertEquals("cmH2O", rmPaw.getUnit());
+		assertEquals(2, rmPaw.getSampleSize());
+		assertEquals(50, rmPaw.getRate());
+		assertTrue(Double.isNaN(rmPaw.getScale()));
+
+		assertNull(registry.get(1100));
+		assertNull(registry.get(-1));
+		assertNull(registry.get(WaveRegistry.MAX_WAVE_ID));
+		assertEquals(0, registry.rate(5000));
+	}
+
+	public void testOverride() {
+		WaveRegistry registry = new WaveRegistry();
+		registry.load(new StringReader("# site names\n1152 SpO2 % - 1 60\n\n2000 X mV 0.005 2 500\nbad line\n"),
+				"test");
+		assertEquals("SpO2", registry.name(1152));
+		assertEquals(0.005, registry.get(2000).getScale(), 0);
+		assertEquals("mV", registry.get(2000).getUnit());
+		assertNull(registry.get(1101));
+	}
+
+	public void testIbpWavePublished() {
+		SyntheticMonitor monitor = new SyntheticMonitor(0, 1, new int[] { 1171 }, 125, 0);
+		byte[] frame = DecodePoolTest.strip(monitor.wave(1171));
+		Wave wave = (Wave) HL7Utils.create(new HL7Segment(), frame, 0, frame.length);
+		// sized for the nominal 125 Hz
+		assertEquals(125, wave._values.samples(0).length);
+		JSONObject json = new JSONObject(HL7Utils.toJson(wave));
+		assertEquals(128, json.getJSONArray("IBP_ART").length());
+	}
+
+	public void testResamplerPrepared() {
+		WaveResampler r = new WaveResampler.Fir(125);
+		r.prepare(500);
+		int[] out = r.output();
+		r.process(new int[500], 500, 500);
+		assertSame(out, r.output());
+		assertEquals(125, r.count());
+	}
+}
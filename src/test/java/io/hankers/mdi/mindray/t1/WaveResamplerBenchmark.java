@@ -0,0 +1,50 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Input samples per second on one core, one second of a 500 Hz ECG channel per
+ * invocation. Run with -prof gc: every mode must show 0 B/op.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="WaveResamplerBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveResamplerBenchmark {
+	static final int RATE = 500;
+
+	@Param({ "nearest:128", "passthrough", "fir:128", "envelope:64" })
+	String _spec;
+
+	WaveResampler _resampler;
+	int[] _block;
+
+	@Setup
+	public void setup() {
+		_resampler = WaveResampler.create(_spec);
+		_block = WaveResamplerTest.sine(RATE, RATE, 1.2, 2048, 600);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RATE)
+	public int process() {
+		return _resampler.process(_block, _block.length, RATE);
+	}
+}
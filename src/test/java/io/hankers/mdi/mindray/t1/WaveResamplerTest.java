@@ -0,0 +1,154 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class WaveResamplerTest extends TestCase {
+
+	static int[] sine(int n, int rate, double hz, int offset, int amplitude) {
+		int[] samples = new int[n];
+		for (int i = 0; i < n; i++) {
+			samples[i] = offset + (int) Math.round(amplitude * Math.sin(2 * Math.PI * hz * i / rate));
+		}
+		return samples;
+	}
+
+	static int[] slice(int[] src, int from, int to) {
+		int[] dst = new int[to - from];
+		System.arraycopy(src, from, dst, 0, dst.length);
+		return dst;
+	}
+
+	/**
+	 * Feeds the signal in random blocks and collects the output.
+	 */
+	static int[] streamed(WaveResampler r, int[] signal, int rate, Random rnd) {
+		int[] out = new int[signal.length * 2];
+		int n = 0;
+		for (int pos = 0; pos < signal.length;) {
+			int len = Math.min(signal.length - pos, 1 + rnd.nextInt(rate));
+			int count = r.process(slice(signal, pos, pos + len), len, rate);
+			System.arraycopy(r.output(), 0, out, n, count);
+			n += count;
+			pos += len;
+		}
+		return slice(out, 0, n);
+	}
+
+	public void testNearestMatchesResample128() {
+		int[] in = sine(500, 500, 3, 2048, 300);
+		WaveResampler r = WaveResampler.create("nearest:128");
+		assertEquals(128, r.process(in, in.length, 500));
+		float step = (float) (500 * 1.0 / 128);
+		for (int i = 0; i < 128; i++) {
+			assertEquals(in[(int) (i * step)], r.output()[i]);
+		}
+	}
+
+	public void testPassthrough() {
+		int[] in = sine(250, 250, 1, 100, 50);
+		WaveResampler r = WaveResampler.create("passthrough");
+		assertEquals(250, r.process(in, in.length, 250));
+		for (int i = 0; i < in.length; i++) {
+			assertEquals(in[i], r.output()[i]);
+		}
+	}
+
+	public void testFirRateAndDcGain() {
+		WaveResampler r = WaveResampler.create("fir:128");
+		int total = 0;
+		int[] dc = new int[500];
+		Arrays.fill(dc, 2048);
+		for (int s = 0; s < 4; s++) {
+			total += r.process(dc, dc.length, 500);
+			if (s > 0) {
+				for (int i = 0; i < r.count(); i++) {
+					assertEquals(2048, r.output()[i]);
+				}
+			}
+		}
+		assertEquals(512, total);
+	}
+
+	public void testFirSuppressesAliasing() {
+		// 200 Hz is above the 64 Hz Nyquist of the output and folds to 56 Hz
+		int[] in = sine(2000, 500, 200, 0, 1000);
+		WaveResampler fir = WaveResampler.create("fir:128");
+		int n = fir.process(in, in.length, 500);
+		int peak = 0;
+		for (int i = 100; i < n; i++) {
+			peak = Math.max(peak, Math.abs(fir.output()[i]));
+		}
+		assertTrue("peak " + peak, peak < 50);
+
+		WaveResampler nearest = WaveResampler.create("nearest:512");
+		nearest.process(in, in.length, 500);
+		int aliased = 0;
+		for (int i = 0; i < 512; i++) {
+			aliased = Math.max(aliased, Math.abs(nearest.output()[i]));
+		}
+		assertTrue("aliased " + aliased, aliased > 500);
+	}
+
+	/**
+	 * @return the largest output of a 1000-count sine once the filter is
+	 *         filled
+	 */
+	static int firPeak(String spec, int inRate, double hz) {
+		int[] in = sine(5 * inRate, inRate, hz, 0, 1000);
+		WaveResampler fir = WaveResampler.create(spec);
+		int n = fir.process(in, in.length, inRate);
+		int peak = 0;
+		for (int i = n / 5; i < n; i++) {
+			peak = Math.max(peak, Math.abs(fir.output()[i]));
+		}
+		return peak;
+	}
+
+	public void testFirStopbandStartsAtOutputNyquist() {
+		// just above the 64 Hz Nyquist of fir:128
+		assertTrue(firPeak("fir:128", 500, 70) < 20);
+		assertTrue(firPeak("fir:128", 500, 80) < 20);
+		// decimating by 10: mains would fold to 10 Hz
+		assertTrue(firPeak("fir:50", 500, 60) < 20);
+		assertTrue(firPeak("fir:50", 500, 30) < 20);
+		assertTrue(firPeak("fir:50", 500, 40) < 20);
+		// the passband is kept
+		assertTrue(firPeak("fir:50", 500, 10) > 900);
+		assertTrue(firPeak("fir:128", 500, 40) > 900);
+	}
+
+	public void testFirStateCarriesAcrossBlocks() {
+		int[] signal = sine(5000, 500, 7, 2048, 400);
+		WaveResampler whole = WaveResampler.create("fir:128");
+		int n = whole.process(signal, signal.length, 500);
+		int[] split = streamed(WaveResampler.create("fir:128"), signal, 500, new Random(7));
+		assertEquals(n, split.length);
+		for (int i = 0; i < n; i++) {
+			assertEquals("at " + i, whole.output()[i], split[i]);
+		}
+	}
+
+	public void testEnvelopeAcrossBlocks() {
+		int[] signal = sine(1000, 500, 5, 0, 1000);
+		int[] split = streamed(WaveResampler.create("envelope:50"), signal, 500, new Random(3));
+		assertEquals(200, split.length);
+		for (int b = 0; b < 100; b++) {
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			for (int i = b * 10; i < b * 10 + 10; i++) {
+				min = Math.min(min, signal[i]);
+				max = Math.max(max, signal[i]);
+			}
+			assertEquals(min, split[2 * b]);
+			assertEquals(max, split[2 * b + 1]);
+		}
+	}
+
+	public void testInvalidSpecFallsBack() {
+		assertTrue(WaveResampler.create("fir:x") instanceof WaveResampler.Nearest);
+		assertTrue(WaveResampler.create("cubic") instanceof WaveResampler.Nearest);
+	}
+}
@@ -0,0 +1,143 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.hankers.mdi.mindray.t1.Models.Wave;
+import junit.framework.TestCase;
+
+public class WaveRingTest extends TestCase {
+
+	/**
+	 * A block of samples counting up from the position, as 16 bits.
+	 */
+	static int[] block(long start, int count) {
+		int[] samples = new int[count];
+		for (int i = 0; i < count; i++) {
+			samples[i] = (int) ((start + i) & 0xFFFF);
+		}
+		return samples;
+	}
+
+	static void assertCounting(WaveRing.Snapshot snap) {
+		for (int i = 0; i < snap.count(); i++) {
+			assertEquals("sample " + i + " of " + snap.start(), (int) ((snap.start() + i) & 0xFFFF),
+					snap.samples()[i]);
+		}
+	}
+
+	public void testReadFromCursor() {
+		WaveRing ring = new WaveRing(250, 4);
+		WaveRing.Snapshot snap = new WaveRing.Snapshot();
+		assertEquals(0, ring.read(0, snap));
+		assertEquals(0, snap.count());
+
+		ring.append(block(0, 250), 250, 1000);
+		ring.append(block(250, 250), 250, 2000);
+		long cursor = ring.read(0, snap);
+		assertEquals(500, cursor);
+		assertEquals(500, snap.count());
+		assertEquals(0, snap.start());
+		assertEquals(1000, snap.startMillis());
+		assertCounting(snap);
+
+		ring.append(block(500, 250), 250, 3000);
+		cursor = ring.read(cursor, snap);
+		assertEquals(750, cursor);
+		assertEquals(250, snap.count());
+		assertEquals(500, snap.start());
+		assertEquals(3000, snap.startMillis());
+		assertCounting(snap);
+	}
+
+	public void testOverwrittenCursorSkipsAhead() {
+		// 4 s at 250 Hz rounds up to 1024 samples
+		WaveRing ring = new WaveRing(250, 4);
+		for (int s = 0; s < 10; s++) {
+			ring.append(block(s * 250, 250), 250, 1000L * s);
+		}
+		WaveRing.Snapshot snap = new WaveRing.Snapshot();
+		assertEquals(2500, ring.read(0, snap));
+		assertEquals(1024, snap.count());
+		assertEquals(2500 - 1024, snap.start());
+		assertCounting(snap);
+		// 1476 is 226 samples into the block of second 5
+		assertEquals(5000 + 226 * 4, snap.startMillis());
+	}
+
+	public void testReadTimeRange() {
+		WaveRing ring = new WaveRing(100, 30);
+		for (int s = 0; s < 60; s++) {
+			ring.append(block(s * 100, 100), 100, 10000L + 1000L * s);
+		}
+		WaveRing.Snapshot snap = new WaveRing.Snapshot();
+		ring.read(50000, 52500, snap);
+		assertEquals(4000, snap.start());
+		assertEquals(250, snap.count());
+		assertEquals(50000, snap.startMillis());
+		assertCounting(snap);
+
+		// older than held, clipped to the oldest
+		ring.read(0, 20000, snap);
+		assertEquals(0, snap.count());
+		ring.read(0, Long.MAX_VALUE / 1000, snap);
+		assertEquals(ring.head() - ring._capacity, snap.start());
+		assertEquals(ring._capacity, snap.count());
+		assertCounting(snap);
+	}
+
+	public void testReaderNeverSeesTornSamples() throws Exception {
+		final WaveRing ring = new WaveRing(500, 2);
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread writer = new Thread() {
+			public void run() {
+				long pos = 0;
+				int[] samples = new int[500];
+				for (int n = 0; n < 4000; n++) {
+					for (int i = 0; i < samples.length; i++) {
+						samples[i] = (int) ((pos + i) & 0xFFFF);
+					}
+					ring.append(samples, samples.length, pos * 2);
+					pos += samples.length;
+					if ((n & 15) == 0) {
+						Thread.yield();
+					}
+				}
+				done.set(true);
+			}
+		};
+		writer.start();
+		WaveRing.Snapshot snap = new WaveRing.Snapshot();
+		int reads = 0;
+		while (!done.get()) {
+			ring.read(0, snap);
+			assertCounting(snap);
+			reads++;
+			Thread.yield();
+		}
+		writer.join();
+		assertTrue(reads > 0);
+		ring.read(0, snap);
+		assertEquals(ring._capacity, snap.count());
+		assertCounting(snap);
+	}
+
+	public void testStoreKeepsEveryChannel() {
+		WaveStore store = new WaveStore(10);
+		WaveStore.Bed bed = store.bed("10.0.0.1:4601");
+		assertSame(bed, store.bed("10.0.0.1:4601"));
+		Wave wave = new Wave();
+		wave._sSampleRate = 250;
+		wave._timestamp = 1000;
+		wave._values.put(1114, block(0, 250));
+		wave._values.put(1152, block(100, 250));
+		bed.append(wave);
+
+		WaveRing.Snapshot snap = new WaveRing.Snapshot();
+		store.get("10.0.0.1:4601", 1152).read(0, snap);
+		assertEquals(250, snap.count());
+		assertEquals(100, snap.samples()[0]);
+		assertNull(store.get("10.0.0.1:4601", 1101));
+		assertEquals(2, bed.getWaveIds().size());
+		assertTrue(store.footprint() >= 2 * 4096 * 2);
+	}
+}
@@ -0,0 +1,139 @@
+package io.hankers.mdi.mindray.t1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The wave store of a 100 bed ward, 12 leads each at the given rate and 30 s
+ * held: the time to copy out the last 30 s or the last second of a random
+ * lead, and to append a second of all 12 leads of a bed. The footprint is
+ * printed at setup, the storage counted by the store and the heap grown by
+ * filling it.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench="WaveStoreBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveStoreBenchmark {
+	static final int BEDS = 100;
+	static final int LEADS = 12;
+	static final int SECONDS = 30;
+
+	@Param({ "250", "500" })
+	int _rate;
+
+	WaveStore _store;
+	WaveRing[] _rings;
+	long _now;
+
+	@State(Scope.Thread)
+	public static class Reader {
+		final WaveRing.Snapshot _snap = new WaveRing.Snapshot();
+		int _next;
+
+		WaveRing next(WaveRing[] rings) {
+			_next = (_next * 1103515245 + 12345) & 0x7FFFFFFF;
+			return rings[(_next >> 8) % rings.length];
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Writer {
+		int[] _samples;
+		int _bed;
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Runtime rt = Runtime.getRuntime();
+		System.gc();
+		long before = rt.totalMemory() - rt.freeMemory();
+		_store = new WaveStore(SECONDS);
+		int[] samples = WaveRingTest.block(0, _rate);
+		for (int s = 0; s < SECONDS; s++) {
+			for (int b = 0; b < BEDS; b++) {
+				_store.bed("bed" + b).append(wave(samples, 1000L * s));
+			}
+		}
+		_now = 1000L * SECONDS;
+		_rings = new WaveRing[BEDS * LEADS];
+		for (int i = 0; i < _rings.length; i++) {
+			_rings[i] = _store.get("bed" + i / LEADS, 1101 + i % LEADS);
+		}
+		System.gc();
+		long after = rt.totalMemory() - rt.freeMemory();
+		System.out.printf("%n%d beds x %d leads at %d Hz: %d KB in rings, heap grew %d KB%n", BEDS, LEADS, _rate,
+				_store.footprint() >> 10, (after - before) >> 10);
+	}
+
+	Models.Wave wave(int[] samples, long time) {
+		Models.Wave wave = new Models.Wave();
+		wave._sSampleRate = _rate;
+		wave._timestamp = time;
+		for (int lead = 0; lead < LEADS; lead++) {
+			wave._values.put(1101 + lead, samples);
+		}
+		return wave;
+	}
+
+	@Benchmark
+	public int readLast30s(Reader r) {
+		r.next(_rings).read(_now - SECONDS * 1000, _now, r._snap);
+		return r._snap.count();
+	}
+
+	@Benchmark
+	public long readLastSecond(Reader r) {
+		WaveRing ring = r.next(_rings);
+		return ring.read(ring.head() - _rate, r._snap);
+	}
+
+	/**
+	 * Reads while one thread keeps appending to the same ward.
+	 */
+	@Benchmark
+	@Group("contended")
+	public int contendedRead(Reader r) {
+		r.next(_rings).read(_now - SECONDS * 1000, _now, r._snap);
+		return r._snap.count();
+	}
+
+	@Benchmark
+	@Group("contended")
+	public void contendedAppend(Writer w) {
+		append(w);
+	}
+
+	@Benchmark
+	public void append12Leads(Writer w) {
+		append(w);
+	}
+
+	private void append(Writer w) {
+		if (w._samples == null) {
+			w._samples = WaveRingTest.block(0, _rate);
+		}
+		int first = w._bed * LEADS;
+		w._bed = (w._bed + 1) % BEDS;
+		for (int lead = 0; lead < LEADS; lead++) {
+			_rings[first + lead].append(w._samples, _rate, _now);
+		}
+	}
+}